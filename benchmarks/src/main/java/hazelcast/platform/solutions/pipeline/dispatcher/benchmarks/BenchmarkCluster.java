@@ -0,0 +1,75 @@
+package hazelcast.platform.solutions.pipeline.dispatcher.benchmarks;
+
+import com.hazelcast.client.HazelcastClient;
+import com.hazelcast.client.config.ClientConfig;
+import com.hazelcast.config.Config;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.jet.Job;
+import com.hazelcast.jet.core.JobStatus;
+import hazelcast.platform.solutions.pipeline.dispatcher.HazelcastUtil;
+import hazelcast.platform.solutions.pipeline.dispatcher.ReplyChannels;
+import hazelcast.platform.solutions.pipeline.dispatcher.ReplyMode;
+import hazelcast.platform.solutions.pipeline.dispatcher.sample.ExamplePipeline;
+
+/**
+ * Starts the single member cluster used by the benchmarks, and the client that the dispatchers under test use to
+ * connect to it.  The cluster is isolated (no multicast, its own cluster name) so that benchmarks running at the same
+ * time on one machine do not join each other.
+ * <p>
+ * The member uses hazelcast-enterprise, which is on the classpath of the dispatcher.  If a license key is required,
+ * provide it in the HZ_LICENSEKEY environment variable.
+ */
+public class BenchmarkCluster {
+
+    public static final String CLUSTER_NAME = "pipeline-dispatcher-benchmark";
+
+    public static HazelcastInstance startMember(){
+        Config config = new Config();
+        config.setClusterName(CLUSTER_NAME);
+        config.setProperty("hazelcast.logging.type", "none");
+        config.getNetworkConfig().getJoin().getMulticastConfig().setEnabled(false);
+        config.getNetworkConfig().getJoin().getAutoDetectionConfig().setEnabled(false);
+
+        // event journal must be enabled on the request map but is not required for the response map
+        config.getMapConfig("*_request").getEventJournalConfig().setEnabled(true);
+        config.getJetConfig().setEnabled(true);
+        HazelcastUtil.registerSerializers(config.getSerializationConfig());
+
+        String licenseKey = System.getenv("HZ_LICENSEKEY");
+        if (licenseKey != null) config.setLicenseKey(licenseKey);
+
+        return Hazelcast.newHazelcastInstance(config);
+    }
+
+    public static HazelcastInstance startClient(HazelcastInstance member){
+        ClientConfig config = new ClientConfig();
+        config.setClusterName(CLUSTER_NAME);
+        config.setProperty("hazelcast.logging.type", "none");
+        config.getNetworkConfig().addAddress(
+                member.getCluster().getLocalMember().getAddress().getHost() + ":" +
+                member.getCluster().getLocalMember().getAddress().getPort());
+        HazelcastUtil.registerSerializers(config.getSerializationConfig());
+        return HazelcastClient.newHazelcastClient(config);
+    }
+
+    /**
+     * Submits version 1 of the sample "reverse" pipeline and waits for it to start.
+     */
+    public static Job startReversePipeline(HazelcastInstance member, String requestMapName, ReplyMode replyMode){
+        Job job = member.getJet().newJob(
+                ExamplePipeline.createPipelineV1(requestMapName, ReplyChannels.responseSink(replyMode, "reverse")));
+        while(job.getStatus() != JobStatus.RUNNING){
+            if (job.getStatus().isTerminal())
+                throw new RuntimeException("The reverse pipeline failed to start: " + job.getStatus());  // THROW
+
+            try {
+                Thread.sleep(50);
+            } catch(InterruptedException x){
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for the reverse pipeline to start");  // THROW
+            }
+        }
+        return job;
+    }
+}
@@ -0,0 +1,122 @@
+package hazelcast.platform.solutions.pipeline.dispatcher.benchmarks;
+
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
+import net.sourceforge.argparse4j.inf.Namespace;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+public class BenchmarkRunner {
+    /**
+     * usage: BenchmarkRunner [-h] [--include INCLUDE] [--threads THREADS] [--output OUTPUT]
+     * <p>
+     * Runs the dispatcher benchmarks once for each thread count, with the JMH gc profiler enabled.  The JMH results
+     * for each thread count are written to OUTPUT/jmh-threads-N.json and a summary of throughput, latency
+     * percentiles and allocation per operation is printed at the end.
+     * <p>
+     * named arguments:
+     *   -h, --help             show this help message and exit
+     *   --include INCLUDE      A regular expression selecting the benchmarks to run (default: Benchmark)
+     *   --threads THREADS      A comma separated list of thread counts (default: 1,4,16)
+     *   --output OUTPUT        The directory to which results are written (default: benchmark-results)
+     * <p>
+     * Any JMH option can be used instead by running org.openjdk.jmh.Main from the same jar.
+     */
+    public static void main(String []args){
+        ArgumentParser parser = ArgumentParsers.newFor("BenchmarkRunner").build().defaultHelp(true)
+                .description("Run the dispatcher benchmarks at several thread counts");
+
+        parser.addArgument("--include").type(String.class).setDefault("Benchmark")
+                .help("A regular expression selecting the benchmarks to run");
+        parser.addArgument("--threads").type(String.class).setDefault("1,4,16")
+                .help("A comma separated list of thread counts");
+        parser.addArgument("--output").type(String.class).setDefault("benchmark-results")
+                .help("The directory to which results are written");
+
+        Namespace arguments = null;
+        try {
+            arguments = parser.parseArgs(args);
+        } catch (ArgumentParserException x){
+            parser.handleError(x);
+            System.exit(1);
+        }
+
+        File outputDir = new File(arguments.getString("output"));
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()){
+            System.out.println("Could not create the output directory " + outputDir);
+            System.exit(1);
+        }
+
+        try {
+            List<RunResult> results = new ArrayList<>();
+            for(String threads: arguments.getString("threads").split(",")){
+                int threadCount = Integer.parseInt(threads.trim());
+                Options options = new OptionsBuilder()
+                        .include(arguments.getString("include"))
+                        .threads(threadCount)
+                        .addProfiler(GCProfiler.class)
+                        .resultFormat(ResultFormatType.JSON)
+                        .result(new File(outputDir, "jmh-threads-" + threadCount + ".json").getPath())
+                        .build();
+
+                results.addAll(new Runner(options).run());
+            }
+
+            printSummary(results);
+        } catch(Exception x){
+            System.out.println("An error occurred. Program will exit.");
+            x.printStackTrace(System.out);
+            System.exit(1);
+        }
+    }
+
+    private static void printSummary(Collection<RunResult> results){
+        System.out.println();
+        System.out.printf("%-60s %7s %12s %8s %10s %10s %10s %12s%n",
+                "Benchmark", "Threads", "Mode", "Score", "p50", "p99", "p99.9", "B/op");
+        for(RunResult result: results){
+            BenchmarkParams params = result.getParams();
+            Result<?> primary = result.getPrimaryResult();
+
+            StringBuilder name = new StringBuilder(params.getBenchmark().substring(
+                    params.getBenchmark().lastIndexOf('.', params.getBenchmark().lastIndexOf('.') - 1) + 1));
+            for(String key: params.getParamsKeys()) name.append(' ').append(key).append('=').append(params.getParam(key));
+
+            String p50 = "";
+            String p99 = "";
+            String p999 = "";
+            if (params.getMode().shortLabel().equals("sample")){
+                p50 = format(primary.getStatistics().getPercentile(50.0));
+                p99 = format(primary.getStatistics().getPercentile(99.0));
+                p999 = format(primary.getStatistics().getPercentile(99.9));
+            }
+
+            // the name of this secondary result has changed between JMH versions, so match on the suffix
+            String allocation = "";
+            for(Map.Entry<String, Result> secondary: result.getSecondaryResults().entrySet()){
+                if (secondary.getKey().endsWith("gc.alloc.rate.norm")) allocation = format(secondary.getValue().getScore());
+            }
+
+            System.out.printf("%-60s %7d %12s %8s %10s %10s %10s %12s%n",
+                    name, params.getThreads(), params.getMode().shortLabel() + " " + primary.getScoreUnit(),
+                    format(primary.getScore()), p50, p99, p999, allocation);
+        }
+    }
+
+    private static String format(double value){
+        return String.format("%.2f", value);
+    }
+}
@@ -0,0 +1,46 @@
+package hazelcast.platform.solutions.pipeline.dispatcher.benchmarks;
+
+import hazelcast.platform.solutions.pipeline.dispatcher.RequestKey;
+import hazelcast.platform.solutions.pipeline.dispatcher.internal.RequestKeyFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the cost of generating request keys, as done by PipelineDispatcher.send for every request.  The sequence
+ * counter is shared by all threads, as it is in the dispatcher.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RequestKeyBenchmark {
+
+    private RequestKeyFactory requestKeyFactory;
+
+    private UUID clientId;
+
+    private AtomicLong nextSequence;
+
+    @Setup
+    public void setup(){
+        requestKeyFactory = new RequestKeyFactory();
+        clientId = requestKeyFactory.newRandomClientId();
+        nextSequence = new AtomicLong();
+    }
+
+    @Benchmark
+    public RequestKey newRequestKey(){
+        return requestKeyFactory.newRequestKey(clientId, nextSequence.getAndIncrement());
+    }
+
+    @Benchmark
+    public String requestKeyToString(){
+        // the dispatcher logs every response, so the cost of formatting a key is on the response path
+        return requestKeyFactory.newRequestKey(clientId, nextSequence.getAndIncrement()).toString();
+    }
+}
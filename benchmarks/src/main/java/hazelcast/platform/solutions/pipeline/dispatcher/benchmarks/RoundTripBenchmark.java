@@ -0,0 +1,98 @@
+package hazelcast.platform.solutions.pipeline.dispatcher.benchmarks;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.jet.Job;
+import hazelcast.platform.solutions.pipeline.dispatcher.PipelineDispatcher;
+import hazelcast.platform.solutions.pipeline.dispatcher.PipelineDispatcherSettings;
+import hazelcast.platform.solutions.pipeline.dispatcher.ReplyMode;
+import hazelcast.platform.solutions.pipeline.dispatcher.RequestRoute;
+import hazelcast.platform.solutions.pipeline.dispatcher.internal.DefaultRequestRouter;
+import hazelcast.platform.solutions.pipeline.dispatcher.internal.RequestKeyFactory;
+import hazelcast.platform.solutions.pipeline.dispatcher.metrics.NoopDispatcherMetrics;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a complete request: PipelineDispatcher.call, the sample reverse pipeline running on an embedded member,
+ * and delivery of the response back to the caller.  The dispatcher connects to the member as a client, as it does
+ * in a client-server deployment.  Each benchmark thread sends one request at a time and waits for its response, so
+ * the number of threads is the number of requests in flight.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class RoundTripBenchmark {
+
+    private static final String SERVICE_NAME = "reverse";
+
+    private static final long TIMEOUT_MS = 5000;
+
+    @Param({"SHARED_MAP", "RELIABLE_TOPIC"})
+    public ReplyMode replyMode;
+
+    @Param({"false", "true"})
+    public boolean batching;
+
+    @Param({"64", "4096"})
+    public int payloadSize;
+
+    private HazelcastInstance member;
+
+    private HazelcastInstance client;
+
+    private Job job;
+
+    private ScheduledExecutorService scheduler;
+
+    private PipelineDispatcher<String, String> dispatcher;
+
+    private String payload;
+
+    @Setup
+    public void setup(){
+        member = BenchmarkCluster.startMember();
+        job = BenchmarkCluster.startReversePipeline(
+                member, RequestRoute.requestMapName(SERVICE_NAME, null), replyMode);
+        client = BenchmarkCluster.startClient(member);
+
+        PipelineDispatcherSettings settings = new PipelineDispatcherSettings();
+        settings.setRequestTimeoutMs(TIMEOUT_MS);
+        settings.setRequestTtlMs(TIMEOUT_MS);
+        settings.setReplyMode(replyMode);
+        settings.setBatchingEnabled(batching);
+
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        dispatcher = new PipelineDispatcher<>(
+                new RequestKeyFactory(),
+                client,
+                SERVICE_NAME,
+                new DefaultRequestRouter(SERVICE_NAME, client),
+                settings,
+                scheduler,
+                NoopDispatcherMetrics.INSTANCE);
+
+        StringBuilder sb = new StringBuilder(payloadSize);
+        for(int i=0; i < payloadSize; ++i) sb.append((char) ('a' + i % 26));
+        payload = sb.toString();
+    }
+
+    @TearDown
+    public void tearDown(){
+        dispatcher.close();
+        scheduler.shutdown();
+        client.shutdown();
+        job.cancel();
+        member.shutdown();
+    }
+
+    @Benchmark
+    public String roundTrip() {
+        return dispatcher.call(payload);
+    }
+}
@@ -0,0 +1,70 @@
+package hazelcast.platform.solutions.pipeline.dispatcher.benchmarks;
+
+import com.hazelcast.core.HazelcastInstance;
+import hazelcast.platform.solutions.pipeline.dispatcher.RequestRoute;
+import hazelcast.platform.solutions.pipeline.dispatcher.internal.MultiVersionRequestRouterConfig;
+import hazelcast.platform.solutions.pipeline.dispatcher.internal.WeightedRouter;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures version selection with WeightedRouter, which the dispatcher uses, and with
+ * MultiVersionRequestRouterConfig.getVersion, for different numbers of versions.  WeightedRouter needs a
+ * HazelcastInstance to create its map proxies, so a member is started but not used while measuring.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoutingBenchmark {
+
+    @Param({"1", "2", "4", "16"})
+    public int versionCount;
+
+    private HazelcastInstance hz;
+
+    private WeightedRouter weightedRouter;
+
+    private MultiVersionRequestRouterConfig multiVersionConfig;
+
+    @Setup
+    public void setup(){
+        hz = BenchmarkCluster.startMember();
+
+        // equal weights, written in the format stored in the router_config map
+        StringBuilder json = new StringBuilder("{");
+        List<String> versions = new ArrayList<>();
+        List<Float> percentages = new ArrayList<>();
+        for(int i=0; i < versionCount; ++i){
+            if (i > 0) json.append(',');
+            json.append("\"v").append(i).append("\":1");
+            versions.add("v" + i);
+            percentages.add((float) (i + 1) / versionCount);
+        }
+        json.append('}');
+
+        weightedRouter = new WeightedRouter("reverse", json.toString(), hz);
+        multiVersionConfig = new MultiVersionRequestRouterConfig(versions, percentages);
+    }
+
+    @TearDown
+    public void tearDown(){
+        hz.shutdown();
+    }
+
+    @Benchmark
+    public RequestRoute weightedRouter(){
+        return weightedRouter.route();
+    }
+
+    @Benchmark
+    public String multiVersionConfigGetVersion(){
+        return multiVersionConfig.getVersion(ThreadLocalRandom.current().nextFloat());
+    }
+}
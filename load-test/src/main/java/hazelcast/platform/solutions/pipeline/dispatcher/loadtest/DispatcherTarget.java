@@ -0,0 +1,37 @@
+package hazelcast.platform.solutions.pipeline.dispatcher.loadtest;
+
+import hazelcast.platform.solutions.pipeline.dispatcher.DispatchException;
+import hazelcast.platform.solutions.pipeline.dispatcher.PipelineDispatcher;
+
+import java.util.concurrent.CompletionException;
+
+/**
+ * Sends requests directly to a PipelineDispatcher, without going through a web server.  The dispatcher enforces
+ * the request timeout itself.
+ */
+public class DispatcherTarget implements LoadTarget {
+
+    private final PipelineDispatcher<String, String> dispatcher;
+
+    public DispatcherTarget(PipelineDispatcher<String, String> dispatcher){
+        this.dispatcher = dispatcher;
+    }
+
+    @Override
+    public void send(String payload, Callback callback) {
+        dispatcher.sendAsync(payload).whenComplete((value, t) -> callback.completed(outcomeOf(t)));
+    }
+
+    private static Outcome outcomeOf(Throwable t){
+        if (t == null) return Outcome.SUCCESS;  // RETURN
+
+        if (t instanceof CompletionException) t = t.getCause();
+        return t instanceof DispatchException && ((DispatchException) t).getReason() == DispatchException.Reason.TIMEOUT ?
+                Outcome.TIMEOUT : Outcome.ERROR;
+    }
+
+    @Override
+    public void close() {
+        dispatcher.close();
+    }
+}
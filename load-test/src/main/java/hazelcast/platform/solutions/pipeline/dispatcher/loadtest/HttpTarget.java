@@ -0,0 +1,58 @@
+package hazelcast.platform.solutions.pipeline.dispatcher.loadtest;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Sends requests to a web service such as the "/reverse" endpoint of ExampleService.  The payload is sent as the
+ * "input" query parameter.
+ */
+public class HttpTarget implements LoadTarget {
+
+    private final String url;
+
+    private final Duration timeout;
+
+    private final HttpClient client;
+
+    public HttpTarget(String url, long timeoutMs){
+        this.url = url;
+        this.timeout = Duration.ofMillis(timeoutMs);
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(timeout)
+                .build();
+    }
+
+    @Override
+    public void send(String payload, Callback callback) {
+        HttpRequest request = HttpRequest.newBuilder(
+                URI.create(url + "?input=" + URLEncoder.encode(payload, StandardCharsets.UTF_8)))
+                .timeout(timeout)
+                .GET()
+                .build();
+
+        client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, t) -> {
+            if (t != null){
+                Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+                callback.completed(cause instanceof HttpTimeoutException ? Outcome.TIMEOUT : Outcome.ERROR);
+            } else if (response.statusCode() == 200){
+                callback.completed(Outcome.SUCCESS);
+            } else {
+                callback.completed(response.statusCode() == 408 ? Outcome.TIMEOUT : Outcome.ERROR);
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        // HttpClient has no close method before Java 21, its threads are released when it is garbage collected
+    }
+}
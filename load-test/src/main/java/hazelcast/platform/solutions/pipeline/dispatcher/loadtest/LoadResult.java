@@ -0,0 +1,140 @@
+package hazelcast.platform.solutions.pipeline.dispatcher.loadtest;
+
+import hazelcast.platform.solutions.pipeline.dispatcher.metrics.LatencyHistogram;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The latencies and outcomes recorded during the measurement phase of a load test.
+ * <p>
+ * Two latencies are recorded for every successful request.  Response time is measured from the time at which the
+ * schedule says the request should have been sent, so any delay in sending it, for example because the generator
+ * or the system under test fell behind, is included.  This corrects for coordinated omission.  Service time is
+ * measured from the time at which the request was actually sent.  The gap between the two shows queueing delay.
+ * <p>
+ * Timeouts are also recorded in the response time, at the time they were detected.  Leaving them out would hide the
+ * slowest requests from the percentiles.  Service time only contains successful requests.
+ */
+public class LoadResult {
+
+    private static final double []PERCENTILES = {50.0, 90.0, 99.0, 99.9, 99.99};
+
+    private final PayloadMix payloads;
+
+    private final LatencyHistogram responseTime;
+
+    private final LatencyHistogram serviceTime;
+
+    private final LatencyHistogram []responseTimeByPayload;
+
+    private final LongAdder sent;
+
+    private final LongAdder succeeded;
+
+    private final LongAdder errors;
+
+    private final LongAdder timeouts;
+
+    private volatile long elapsedNanos;
+
+    public LoadResult(PayloadMix payloads){
+        this.payloads = payloads;
+        this.responseTime = new LatencyHistogram();
+        this.serviceTime = new LatencyHistogram();
+        this.responseTimeByPayload = new LatencyHistogram[payloads.getCount()];
+        for(int i=0; i < responseTimeByPayload.length; ++i) responseTimeByPayload[i] = new LatencyHistogram();
+        this.sent = new LongAdder();
+        this.succeeded = new LongAdder();
+        this.errors = new LongAdder();
+        this.timeouts = new LongAdder();
+    }
+
+    void recordSent(){
+        sent.increment();
+    }
+
+    void record(int payload, LoadTarget.Outcome outcome, long intendedStartNanos, long actualStartNanos, long endNanos){
+        switch(outcome){
+            case SUCCESS:
+                succeeded.increment();
+                responseTime.record(endNanos - intendedStartNanos);
+                serviceTime.record(endNanos - actualStartNanos);
+                responseTimeByPayload[payload].record(endNanos - intendedStartNanos);
+                break;  // BREAK
+            case TIMEOUT:
+                timeouts.increment();
+                responseTime.record(endNanos - intendedStartNanos);
+                responseTimeByPayload[payload].record(endNanos - intendedStartNanos);
+                break;  // BREAK
+            default:
+                errors.increment();
+        }
+    }
+
+    void setElapsedNanos(long elapsedNanos){
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public long getSent(){
+        return sent.sum();
+    }
+
+    public long getSucceeded(){
+        return succeeded.sum();
+    }
+
+    public long getErrors(){
+        return errors.sum();
+    }
+
+    public long getTimeouts(){
+        return timeouts.sum();
+    }
+
+    /**
+     * @return the number of requests sent per second during the measurement phase
+     */
+    public double getAchievedRate(){
+        return elapsedNanos == 0 ? 0.0 : sent.sum() * 1_000_000_000.0 / elapsedNanos;
+    }
+
+    public LatencyHistogram getResponseTime(){
+        return responseTime;
+    }
+
+    public LatencyHistogram getServiceTime(){
+        return serviceTime;
+    }
+
+    /**
+     * @return response time by payload size
+     */
+    public Map<Integer, LatencyHistogram> getResponseTimeByPayloadSize(){
+        Map<Integer, LatencyHistogram> result = new LinkedHashMap<>();
+        for(int i=0; i < responseTimeByPayload.length; ++i) result.put(payloads.getSize(i), responseTimeByPayload[i]);
+        return result;
+    }
+
+    /**
+     * @return the count, mean, percentiles and maximum of a histogram in microseconds, in a form that can be
+     * written as JSON
+     */
+    public static Map<String, Object> summarize(LatencyHistogram histogram){
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("count", histogram.getCount());
+        result.put("mean", micros(Math.round(histogram.getMeanNanos())));
+        for(double p: PERCENTILES) result.put("p" + formatPercentile(p), micros(histogram.getValueAtPercentile(p)));
+        result.put("max", micros(histogram.getMaxNanos()));
+        return result;
+    }
+
+    private static double micros(long nanos){
+        return Math.round(nanos / 10.0) / 100.0;
+    }
+
+    private static String formatPercentile(double p){
+        return p == Math.floor(p) ? Integer.toString((int) p) : Double.toString(p);
+    }
+}
@@ -0,0 +1,22 @@
+package hazelcast.platform.solutions.pipeline.dispatcher.loadtest;
+
+/**
+ * Something that requests can be sent to, either a PipelineDispatcher or an HTTP endpoint.
+ */
+public interface LoadTarget extends AutoCloseable {
+
+    enum Outcome { SUCCESS, ERROR, TIMEOUT }
+
+    interface Callback {
+        void completed(Outcome outcome);
+    }
+
+    /**
+     * Sends one request.  This must not wait for the response, otherwise the load generator cannot keep to its
+     * schedule.  The callback must be called exactly once, from any thread, including when the request times out.
+     */
+    void send(String payload, Callback callback);
+
+    @Override
+    void close();
+}
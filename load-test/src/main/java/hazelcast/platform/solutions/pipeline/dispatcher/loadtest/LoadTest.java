@@ -0,0 +1,237 @@
+package hazelcast.platform.solutions.pipeline.dispatcher.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.hazelcast.core.HazelcastInstance;
+import hazelcast.platform.solutions.pipeline.dispatcher.PipelineDispatcher;
+import hazelcast.platform.solutions.pipeline.dispatcher.PipelineDispatcherFactory;
+import hazelcast.platform.solutions.pipeline.dispatcher.PipelineDispatcherSettings;
+import hazelcast.platform.solutions.pipeline.dispatcher.ReplyMode;
+import hazelcast.platform.solutions.pipeline.dispatcher.RequestRouter;
+import hazelcast.platform.solutions.pipeline.dispatcher.internal.DefaultRequestRouter;
+import hazelcast.platform.solutions.pipeline.dispatcher.internal.RequestKeyFactory;
+import hazelcast.platform.solutions.pipeline.dispatcher.internal.WeightedRouter;
+import hazelcast.platform.solutions.pipeline.dispatcher.metrics.LatencyHistogram;
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.impl.Arguments;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
+import net.sourceforge.argparse4j.inf.Namespace;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class LoadTest {
+    /**
+     * usage: LoadTest [-h] [--target {dispatcher,http}] [--url URL] [--rate RATE] [--duration DURATION]
+     *                 [--warmup WARMUP] [--payloads PAYLOADS] [--routing ROUTING] [--reply-mode REPLY_MODE]
+     *                 [--batching] [--timeout-ms TIMEOUT_MS] [--max-pending MAX_PENDING]
+     *                 [--hz-cluster-name HZ_CLUSTER_NAME] [--hz-servers HZ_SERVERS] [--output OUTPUT]
+     * <p>
+     * Sends requests at a fixed rate and reports response time percentiles, corrected for coordinated omission.
+     * <p>
+     * With --target dispatcher, an embedded cluster running the sample reverse pipelines is started and requests are
+     * sent with a PipelineDispatcher.  With --target http, requests are sent to a running web service such as
+     * ExampleService, for example one started with hazelcast.pipeline.dispatcher.embed_hazelcast=true.
+     * <p>
+     * named arguments:
+     *   -h, --help             show this help message and exit
+     *   --target               what to send requests to (default: dispatcher)
+     *   --url URL              the URL of the web service (default: http://localhost:8080/reverse)
+     *   --rate RATE            requests per second (default: 1000)
+     *   --duration DURATION    the length of the measurement phase in seconds (default: 60)
+     *   --warmup WARMUP        the length of the warm-up phase in seconds (default: 10)
+     *   --payloads PAYLOADS    payload sizes and weights, e.g. 16:8,1024:2 (default: 16)
+     *   --routing ROUTING      version weights for the reverse service, e.g. v1=9,v2=1 (default: no routing)
+     *   --reply-mode           the dispatcher reply mode (default: SHARED_MAP)
+     *   --batching             enable request batching in the dispatcher
+     *   --timeout-ms           the request timeout in milliseconds (default: 3000)
+     *   --max-pending          the maximum number of pending requests in the dispatcher (default: 10000)
+     *   --hz-cluster-name      the cluster that --routing is loaded into when the target is http (default: dev)
+     *   --hz-servers           the members that --routing is loaded into when the target is http (default: localhost:5701)
+     *   --output OUTPUT        the JSON file to which the summary is written (default: load-test-summary.json)
+     */
+    public static void main(String []args){
+        ArgumentParser parser = ArgumentParsers.newFor("LoadTest").build().defaultHelp(true)
+                .description("Send requests at a fixed rate and report latency percentiles");
+
+        parser.addArgument("--target").choices("dispatcher", "http").setDefault("dispatcher").help("what to send requests to");
+        parser.addArgument("--url").type(String.class).setDefault("http://localhost:8080/reverse").help("the URL of the web service");
+        parser.addArgument("--rate").type(Double.class).setDefault(1000.0).help("requests per second");
+        parser.addArgument("--duration").type(Integer.class).setDefault(60).help("the length of the measurement phase in seconds");
+        parser.addArgument("--warmup").type(Integer.class).setDefault(10).help("the length of the warm-up phase in seconds");
+        parser.addArgument("--payloads").type(String.class).setDefault("16").help("payload sizes and weights, e.g. 16:8,1024:2");
+        parser.addArgument("--routing").type(String.class).required(false).help("version weights for the reverse service, e.g. v1=9,v2=1");
+        parser.addArgument("--reply-mode").type(ReplyMode.class).setDefault(ReplyMode.SHARED_MAP).help("the dispatcher reply mode");
+        parser.addArgument("--batching").action(Arguments.storeTrue()).help("enable request batching in the dispatcher");
+        parser.addArgument("--timeout-ms").type(Long.class).setDefault(3000L).help("the request timeout in milliseconds");
+        parser.addArgument("--max-pending").type(Integer.class).setDefault(10000).help("the maximum number of pending requests in the dispatcher");
+        parser.addArgument("--hz-cluster-name").type(String.class).setDefault("dev").help("the cluster that --routing is loaded into when the target is http");
+        parser.addArgument("--hz-servers").type(String.class).setDefault("localhost:5701").help("the members that --routing is loaded into when the target is http");
+        parser.addArgument("--output").type(String.class).setDefault("load-test-summary.json").help("the JSON file to which the summary is written");
+
+        Namespace arguments = null;
+        try {
+            arguments = parser.parseArgs(args);
+        } catch (ArgumentParserException x){
+            parser.handleError(x);
+            System.exit(1);
+        }
+
+        try {
+            Map<String, Object> summary = run(arguments);
+
+            ObjectMapper mapper = new ObjectMapper();
+            mapper.enable(SerializationFeature.INDENT_OUTPUT);
+            mapper.writeValue(new File(arguments.getString("output")), summary);
+            System.out.println("Summary written to " + arguments.getString("output"));
+        } catch(Exception x){
+            System.out.println("An error occurred. Program will exit.");
+            x.printStackTrace(System.out);
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+
+    private static Map<String, Object> run(Namespace arguments) throws Exception {
+        String routing = arguments.getString("routing");
+        Map<String, Double> versionWeights = parseRouting(routing);
+        String routerConfig = versionWeights.isEmpty() ? null : new ObjectMapper().writeValueAsString(versionWeights);
+        PayloadMix payloads = new PayloadMix(arguments.getString("payloads"));
+        long timeoutMs = arguments.getLong("timeout_ms");
+
+        LoadResult result;
+        Map<String, LatencyHistogram> byVersion = null;
+        if (arguments.getString("target").equals("dispatcher")){
+            ReplyMode replyMode = arguments.get("reply_mode");
+            try (LoadTestCluster cluster = new LoadTestCluster(versionWeights.keySet(), replyMode)) {
+                HazelcastInstance hz = cluster.getClient();
+                RequestRouter router = routerConfig == null ?
+                        new DefaultRequestRouter(LoadTestCluster.SERVICE_NAME, hz) :
+                        new WeightedRouter(LoadTestCluster.SERVICE_NAME, routerConfig, hz);
+
+                PipelineDispatcherSettings settings = new PipelineDispatcherSettings();
+                settings.setRequestTimeoutMs(timeoutMs);
+                settings.setRequestTtlMs(timeoutMs);
+                settings.setMaxPendingRequests(arguments.getInt("max_pending"));
+                settings.setReplyMode(replyMode);
+                settings.setBatchingEnabled(arguments.getBoolean("batching"));
+
+                ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+                VersionLatencies versionLatencies = new VersionLatencies();
+                PipelineDispatcher<String, String> dispatcher = new PipelineDispatcher<>(new RequestKeyFactory(), hz,
+                        LoadTestCluster.SERVICE_NAME, router, settings, scheduler, versionLatencies);
+
+                try (DispatcherTarget target = new DispatcherTarget(dispatcher)) {
+                    // the generator does not record the warm-up, so version latencies are not recorded until after it
+                    scheduler.schedule(versionLatencies::start, arguments.getInt("warmup"), TimeUnit.SECONDS);
+                    result = newGenerator(arguments, target, payloads, timeoutMs).run();
+                } finally {
+                    scheduler.shutdownNow();
+                }
+                byVersion = versionLatencies.getHistograms();
+            }
+        } else {
+            if (routerConfig != null){
+                HazelcastInstance hz = LoadTestCluster.newClient(arguments.getString("hz_cluster_name"),
+                        arguments.getString("hz_servers"));
+                hz.getMap(PipelineDispatcherFactory.ROUTER_CONFIG_MAP).put(LoadTestCluster.SERVICE_NAME, routerConfig);
+                hz.shutdown();
+            }
+
+            try (HttpTarget target = new HttpTarget(arguments.getString("url"), timeoutMs)) {
+                result = newGenerator(arguments, target, payloads, timeoutMs).run();
+            }
+        }
+
+        printReport(result, byVersion);
+        return summarize(arguments, result, byVersion);
+    }
+
+    private static OpenLoopGenerator newGenerator(Namespace arguments, LoadTarget target, PayloadMix payloads,
+                                                  long timeoutMs){
+        return new OpenLoopGenerator(target, payloads, arguments.getDouble("rate"),
+                arguments.getInt("warmup") * 1000L, arguments.getInt("duration") * 1000L, timeoutMs * 2);
+    }
+
+    /*
+     * Parses "v1=9,v2=1" into a map of version weights.  Returns an empty map if spec is null.
+     */
+    private static Map<String, Double> parseRouting(String spec){
+        Map<String, Double> result = new LinkedHashMap<>();
+        if (spec == null) return result;  // RETURN
+
+        for(String part: spec.split(",")){
+            String []versionAndWeight = part.trim().split("=");
+            if (versionAndWeight.length != 2)
+                throw new RuntimeException("Invalid routing specification \"" + part + "\".  Expected VERSION=WEIGHT");  // THROW
+
+            result.put(versionAndWeight[0].trim(), Double.parseDouble(versionAndWeight[1].trim()));
+        }
+        return result;
+    }
+
+    private static void printReport(LoadResult result, Map<String, LatencyHistogram> byVersion){
+        System.out.println();
+        System.out.printf("Sent %d requests at %.1f/s: %d succeeded, %d errors, %d timeouts%n", result.getSent(),
+                result.getAchievedRate(), result.getSucceeded(), result.getErrors(), result.getTimeouts());
+        System.out.println();
+        System.out.printf("%-28s %10s %10s %10s %10s %10s %10s %10s%n",
+                "Latency (us)", "count", "p50", "p90", "p99", "p99.9", "p99.99", "max");
+        printRow("response time", result.getResponseTime());
+        printRow("service time", result.getServiceTime());
+        for(Map.Entry<Integer, LatencyHistogram> entry: result.getResponseTimeByPayloadSize().entrySet())
+            printRow("response time, " + entry.getKey() + " chars", entry.getValue());
+
+        if (byVersion != null){
+            for(Map.Entry<String, LatencyHistogram> entry: byVersion.entrySet())
+                printRow("service time, " + entry.getKey(), entry.getValue());
+        }
+        System.out.println();
+    }
+
+    private static void printRow(String label, LatencyHistogram histogram){
+        Map<String, Object> s = LoadResult.summarize(histogram);
+        System.out.printf("%-28s %10d %10.1f %10.1f %10.1f %10.1f %10.1f %10.1f%n", label, histogram.getCount(),
+                s.get("p50"), s.get("p90"), s.get("p99"), s.get("p99.9"), s.get("p99.99"), s.get("max"));
+    }
+
+    private static Map<String, Object> summarize(Namespace arguments, LoadResult result,
+                                                 Map<String, LatencyHistogram> byVersion){
+        Map<String, Object> settings = new LinkedHashMap<>();
+        for(String name: new String[]{"target", "url", "rate", "duration", "warmup", "payloads", "routing",
+                "reply_mode", "batching", "timeout_ms", "max_pending"}){
+            Object value = arguments.get(name);
+            settings.put(name, value instanceof Enum ? value.toString() : value);
+        }
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("settings", settings);
+        summary.put("sent", result.getSent());
+        summary.put("succeeded", result.getSucceeded());
+        summary.put("errors", result.getErrors());
+        summary.put("timeouts", result.getTimeouts());
+        summary.put("incomplete", result.getSent() - result.getSucceeded() - result.getErrors() - result.getTimeouts());
+        summary.put("achievedRate", result.getAchievedRate());
+        summary.put("responseTimeMicros", LoadResult.summarize(result.getResponseTime()));
+        summary.put("serviceTimeMicros", LoadResult.summarize(result.getServiceTime()));
+
+        Map<String, Object> byPayloadSize = new LinkedHashMap<>();
+        for(Map.Entry<Integer, LatencyHistogram> entry: result.getResponseTimeByPayloadSize().entrySet())
+            byPayloadSize.put(entry.getKey().toString(), LoadResult.summarize(entry.getValue()));
+        summary.put("responseTimeMicrosByPayloadSize", byPayloadSize);
+
+        if (byVersion != null){
+            Map<String, Object> versions = new LinkedHashMap<>();
+            for(Map.Entry<String, LatencyHistogram> entry: byVersion.entrySet())
+                versions.put(entry.getKey(), LoadResult.summarize(entry.getValue()));
+            summary.put("serviceTimeMicrosByVersion", versions);
+        }
+
+        return summary;
+    }
+}
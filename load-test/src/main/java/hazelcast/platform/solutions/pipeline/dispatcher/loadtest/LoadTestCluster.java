@@ -0,0 +1,117 @@
+package hazelcast.platform.solutions.pipeline.dispatcher.loadtest;
+
+import com.hazelcast.client.HazelcastClient;
+import com.hazelcast.client.config.ClientConfig;
+import com.hazelcast.config.Config;
+import com.hazelcast.core.Hazelcast;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.jet.Job;
+import com.hazelcast.jet.core.JobStatus;
+import com.hazelcast.jet.pipeline.Pipeline;
+import hazelcast.platform.solutions.pipeline.dispatcher.HazelcastUtil;
+import hazelcast.platform.solutions.pipeline.dispatcher.ReplyChannels;
+import hazelcast.platform.solutions.pipeline.dispatcher.ReplyMode;
+import hazelcast.platform.solutions.pipeline.dispatcher.RequestRoute;
+import hazelcast.platform.solutions.pipeline.dispatcher.sample.ExamplePipeline;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The embedded, single member cluster used when the load test drives a PipelineDispatcher directly.  The member runs
+ * the sample "reverse" pipelines: version "v2" runs ExamplePipeline.createPipelineV2 and every other version runs
+ * ExamplePipeline.createPipelineV1, as in the sample application.
+ * <p>
+ * If a license key is required, provide it in the HZ_LICENSEKEY environment variable.
+ */
+public class LoadTestCluster implements AutoCloseable {
+
+    public static final String CLUSTER_NAME = "pipeline-dispatcher-load-test";
+
+    public static final String SERVICE_NAME = "reverse";
+
+    private final HazelcastInstance member;
+
+    private final HazelcastInstance client;
+
+    private final List<Job> jobs;
+
+    /**
+     * @param versions the versions to start pipelines for, or an empty collection to start one pipeline that
+     *                 reads the unversioned request map
+     */
+    public LoadTestCluster(Collection<String> versions, ReplyMode replyMode){
+        Config config = new Config();
+        config.setClusterName(CLUSTER_NAME);
+        config.setProperty("hazelcast.logging.type", "none");
+        config.getNetworkConfig().getJoin().getMulticastConfig().setEnabled(false);
+        config.getNetworkConfig().getJoin().getAutoDetectionConfig().setEnabled(false);
+
+        // event journal must be enabled on the request map but is not required for the response map.  Requests are
+        // written with a time-to-live, the one configured here is a safety net for requests that are never consumed.
+        config.getMapConfig("*_request").setTimeToLiveSeconds(60)
+                .getEventJournalConfig().setEnabled(true).setCapacity(1_000_000);
+        config.getJetConfig().setEnabled(true);
+        HazelcastUtil.registerSerializers(config.getSerializationConfig());
+
+        String licenseKey = System.getenv("HZ_LICENSEKEY");
+        if (licenseKey != null) config.setLicenseKey(licenseKey);
+
+        member = Hazelcast.newHazelcastInstance(config);
+
+        jobs = new ArrayList<>();
+        if (versions.isEmpty()){
+            jobs.add(startPipeline(null, replyMode));
+        } else {
+            for(String version: versions) jobs.add(startPipeline(version, replyMode));
+        }
+
+        client = newClient(CLUSTER_NAME, member.getCluster().getLocalMember().getAddress().getHost() + ":" +
+                member.getCluster().getLocalMember().getAddress().getPort());
+    }
+
+    public static HazelcastInstance newClient(String clusterName, String servers){
+        ClientConfig config = new ClientConfig();
+        config.setClusterName(clusterName);
+        config.setProperty("hazelcast.logging.type", "none");
+        for(String server: servers.split(",")) config.getNetworkConfig().addAddress(server.trim());
+        HazelcastUtil.registerSerializers(config.getSerializationConfig());
+        return HazelcastClient.newHazelcastClient(config);
+    }
+
+    private Job startPipeline(String version, ReplyMode replyMode){
+        String requestMapName = RequestRoute.requestMapName(SERVICE_NAME, version);
+        Pipeline pipeline = "v2".equals(version) ?
+                ExamplePipeline.createPipelineV2(requestMapName, ReplyChannels.responseSink(replyMode, SERVICE_NAME)) :
+                ExamplePipeline.createPipelineV1(requestMapName, ReplyChannels.responseSink(replyMode, SERVICE_NAME));
+
+        Job job = member.getJet().newJob(pipeline);
+        while(job.getStatus() != JobStatus.RUNNING){
+            if (job.getStatus().isTerminal())
+                throw new RuntimeException("The pipeline for " + requestMapName + " failed to start: " + job.getStatus());  // THROW
+
+            try {
+                Thread.sleep(50);
+            } catch(InterruptedException x){
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for the pipeline to start");  // THROW
+            }
+        }
+        return job;
+    }
+
+    /**
+     * @return a client connected to the member, this is what the dispatcher under test uses
+     */
+    public HazelcastInstance getClient(){
+        return client;
+    }
+
+    @Override
+    public void close(){
+        client.shutdown();
+        for(Job job: jobs) job.cancel();
+        member.shutdown();
+    }
+}
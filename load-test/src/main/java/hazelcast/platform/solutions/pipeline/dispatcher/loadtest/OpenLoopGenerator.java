@@ -0,0 +1,92 @@
+package hazelcast.platform.solutions.pipeline.dispatcher.loadtest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends requests on a fixed schedule, regardless of how quickly responses arrive.  Request i is due at
+ * start + i / rate.  If the generator falls behind, requests are sent immediately until it catches up, so the
+ * schedule is never silently stretched.  Latency is measured from the scheduled time, see LoadResult.
+ * <p>
+ * Requests scheduled during the warm-up period are sent but not recorded.  When the schedule ends, the generator
+ * waits for outstanding requests to complete for up to the drain timeout.
+ */
+public class OpenLoopGenerator {
+    private static final Logger log = LoggerFactory.getLogger(OpenLoopGenerator.class);
+
+    private final LoadTarget target;
+
+    private final PayloadMix payloads;
+
+    private final double ratePerSecond;
+
+    private final long warmupNanos;
+
+    private final long durationNanos;
+
+    private final long drainTimeoutNanos;
+
+    private final AtomicLong outstanding;
+
+    public OpenLoopGenerator(LoadTarget target, PayloadMix payloads, double ratePerSecond, long warmupMs,
+                             long durationMs, long drainTimeoutMs){
+        if (ratePerSecond <= 0.0) throw new RuntimeException("The request rate must be positive");
+
+        this.target = target;
+        this.payloads = payloads;
+        this.ratePerSecond = ratePerSecond;
+        this.warmupNanos = TimeUnit.MILLISECONDS.toNanos(warmupMs);
+        this.durationNanos = TimeUnit.MILLISECONDS.toNanos(durationMs);
+        this.drainTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(drainTimeoutMs);
+        this.outstanding = new AtomicLong();
+    }
+
+    public LoadResult run(){
+        LoadResult result = new LoadResult(payloads);
+        double intervalNanos = 1_000_000_000.0 / ratePerSecond;
+        long start = System.nanoTime();
+        long measureStart = start + warmupNanos;
+        long end = measureStart + durationNanos;
+
+        log.info("Sending {} requests per second for {} s after a {} s warm-up", ratePerSecond,
+                TimeUnit.NANOSECONDS.toSeconds(durationNanos), TimeUnit.NANOSECONDS.toSeconds(warmupNanos));
+
+        long maxLagNanos = 0;
+        for(long i=0; ; ++i){
+            long intendedStart = start + (long) (i * intervalNanos);
+            if (intendedStart - end >= 0) break;  // BREAK
+
+            long now = System.nanoTime();
+            while (intendedStart - now > 0){
+                LockSupport.parkNanos(intendedStart - now);
+                now = System.nanoTime();
+            }
+            if (now - intendedStart > maxLagNanos) maxLagNanos = now - intendedStart;
+
+            boolean measured = intendedStart - measureStart >= 0;
+            int payload = payloads.next();
+            long actualStart = now;
+            outstanding.incrementAndGet();
+            if (measured) result.recordSent();
+            target.send(payloads.getPayload(payload), outcome -> {
+                if (measured) result.record(payload, outcome, intendedStart, actualStart, System.nanoTime());
+                outstanding.decrementAndGet();
+            });
+        }
+        result.setElapsedNanos(durationNanos);
+
+        long drainDeadline = System.nanoTime() + drainTimeoutNanos;
+        while(outstanding.get() > 0 && drainDeadline - System.nanoTime() > 0)
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+
+        if (outstanding.get() > 0) log.warn("{} requests were still outstanding at the end of the test", outstanding.get());
+        if (maxLagNanos > TimeUnit.MILLISECONDS.toNanos(10))
+            log.warn("The generator fell behind its schedule by up to {} ms", TimeUnit.NANOSECONDS.toMillis(maxLagNanos));
+
+        return result;
+    }
+}
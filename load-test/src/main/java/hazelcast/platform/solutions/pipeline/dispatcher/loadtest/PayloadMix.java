@@ -0,0 +1,62 @@
+package hazelcast.platform.solutions.pipeline.dispatcher.loadtest;
+
+import hazelcast.platform.solutions.pipeline.dispatcher.internal.AliasTable;
+
+/**
+ * A weighted choice of payload sizes, parsed from a specification like "16:8,1024:2", which means that 80% of
+ * requests carry a 16 character payload and 20% carry a 1024 character payload.  A weight of 1 may be omitted.
+ * Payloads are generated once, so choosing one does not allocate.
+ */
+public class PayloadMix {
+
+    private final int []sizes;
+
+    private final String []payloads;
+
+    private final AliasTable aliasTable;
+
+    public PayloadMix(String spec){
+        String []parts = spec.split(",");
+        sizes = new int[parts.length];
+        payloads = new String[parts.length];
+        double []weights = new double[parts.length];
+        for(int i=0; i < parts.length; ++i){
+            String []sizeAndWeight = parts[i].trim().split(":");
+            try {
+                sizes[i] = Integer.parseInt(sizeAndWeight[0].trim());
+                weights[i] = sizeAndWeight.length > 1 ? Double.parseDouble(sizeAndWeight[1].trim()) : 1.0;
+            } catch(NumberFormatException x){
+                throw new RuntimeException("Invalid payload specification \"" + parts[i] + "\".  " +
+                        "Expected SIZE or SIZE:WEIGHT");  // THROW
+            }
+            if (sizes[i] <= 0) throw new RuntimeException("Payload sizes must be positive");
+            payloads[i] = newPayload(sizes[i]);
+        }
+        aliasTable = new AliasTable(weights);
+    }
+
+    private static String newPayload(int size){
+        StringBuilder sb = new StringBuilder(size);
+        for(int i=0; i < size; ++i) sb.append((char) ('a' + i % 26));
+        return sb.toString();
+    }
+
+    /**
+     * @return the index of a randomly chosen payload
+     */
+    public int next(){
+        return aliasTable.sample();
+    }
+
+    public String getPayload(int index){
+        return payloads[index];
+    }
+
+    public int getSize(int index){
+        return sizes[index];
+    }
+
+    public int getCount(){
+        return sizes.length;
+    }
+}
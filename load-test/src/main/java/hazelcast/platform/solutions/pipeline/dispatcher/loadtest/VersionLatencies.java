@@ -0,0 +1,51 @@
+package hazelcast.platform.solutions.pipeline.dispatcher.loadtest;
+
+import hazelcast.platform.solutions.pipeline.dispatcher.metrics.LatencyHistogram;
+import hazelcast.platform.solutions.pipeline.dispatcher.metrics.NoopDispatcherMetrics;
+import hazelcast.platform.solutions.pipeline.dispatcher.metrics.ServiceMetrics;
+import hazelcast.platform.solutions.pipeline.dispatcher.metrics.VersionMetrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntSupplier;
+
+/**
+ * Collects the service time of each version from the dispatcher under test.  Only the dispatcher knows which
+ * version a request was routed to, so the load generator cannot measure this itself.  Nothing is recorded until
+ * {@link #start()} is called, which keeps the warm-up out of the results.
+ */
+public class VersionLatencies extends NoopDispatcherMetrics {
+
+    private final ConcurrentHashMap<String, LatencyHistogram> histograms;
+
+    private volatile boolean recording;
+
+    public VersionLatencies(){
+        this.histograms = new ConcurrentHashMap<>();
+    }
+
+    public void start(){
+        recording = true;
+    }
+
+    @Override
+    public ServiceMetrics forService(String serviceName, IntSupplier inFlight) {
+        return this;
+    }
+
+    @Override
+    public VersionMetrics forVersion(String version) {
+        LatencyHistogram histogram = histograms.computeIfAbsent(version, k -> new LatencyHistogram());
+        return nanos -> {
+            if (recording) histogram.record(nanos);
+        };
+    }
+
+    /**
+     * @return the service time histogram of each version, by version name
+     */
+    public Map<String, LatencyHistogram> getHistograms(){
+        return new TreeMap<>(histograms);
+    }
+}
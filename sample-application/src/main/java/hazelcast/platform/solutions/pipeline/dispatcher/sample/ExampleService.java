@@ -3,25 +3,37 @@ package hazelcast.platform.solutions.pipeline.dispatcher.sample;
 import com.hazelcast.core.HazelcastInstance;
 import com.hazelcast.jet.pipeline.Pipeline;
 import hazelcast.platform.solutions.pipeline.dispatcher.PipelineDispatcherFactory;
-import hazelcast.platform.solutions.pipeline.dispatcher.internal.MultiVersionRequestRouterConfig;
+import hazelcast.platform.solutions.pipeline.dispatcher.ReplyChannels;
+import hazelcast.platform.solutions.pipeline.dispatcher.ReplyMode;
+import hazelcast.platform.solutions.pipeline.dispatcher.RequestPriority;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.context.request.async.DeferredResult;
 
 import javax.annotation.PostConstruct;
-import java.util.Collections;
 
 @RestController
 public class ExampleService  {
     @Autowired
     PipelineDispatcherFactory pipelineDispatcherFactory;
 
+    // batch clients can pass priority=LOW so that they do not slow down interactive users
     @GetMapping("/reverse")
-    public DeferredResult<String> stringReverseService(@RequestParam String input){
-        return pipelineDispatcherFactory.<String,String>dispatcherFor("reverse").send(input);
+    public DeferredResult<String> stringReverseService(@RequestParam String input,
+            @RequestParam(defaultValue = "NORMAL") RequestPriority priority){
+        return pipelineDispatcherFactory.<String,String>dispatcherFor("reverse").send(input, priority);
+    }
+
+    // for the load balancer, 503 until the dispatchers have warmed up
+    @GetMapping("/ready")
+    public ResponseEntity<String> ready(){
+        return pipelineDispatcherFactory.isReady() ? ResponseEntity.ok("ready") :
+                ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body("warming up");
     }
 
     // the code below is used to initialize an embedded pipeline for illustration purposes
@@ -30,18 +42,21 @@ public class ExampleService  {
     @Value("${hazelcast.pipeline.dispatcher.embed_hazelcast:false}")
     boolean embedHazelcast;
 
+    @Value("${hazelcast.pipeline.dispatcher.reply_mode:SHARED_MAP}")
+    ReplyMode replyMode;
+
     @PostConstruct
     public void init(){
         if (embedHazelcast){
             HazelcastInstance hz = pipelineDispatcherFactory.getEmbeddedHazelcastInstance();
 
-            // load routing configuration
-            MultiVersionRequestRouterConfig reverseServiceConfig =
-                    new MultiVersionRequestRouterConfig(Collections.singletonList("v1"), Collections.singletonList(1.0f));
-            hz.getMap(PipelineDispatcherFactory.ROUTER_CONFIG_MAP).put("reverse", reverseServiceConfig);
+            // load routing configuration, in the format used by RoutingConfigTool
+            hz.getMap(PipelineDispatcherFactory.ROUTER_CONFIG_MAP).put("reverse", "{\"v1\":1}");
 
-            Pipeline pipelinev1 = ExamplePipeline.createPipelineV1("reverse_v1_request", "reverse_response");
-            Pipeline pipelinev2 = ExamplePipeline.createPipelineV2("reverse_v2_request", "reverse_response");
+            Pipeline pipelinev1 = ExamplePipeline.createPipelineV1("reverse_v1_request",
+                    ReplyChannels.responseSink(replyMode, "reverse"));
+            Pipeline pipelinev2 = ExamplePipeline.createPipelineV2("reverse_v2_request",
+                    ReplyChannels.responseSink(replyMode, "reverse"));
             hz.getJet().newJob(pipelinev1);
             hz.getJet().newJob(pipelinev2);
         }
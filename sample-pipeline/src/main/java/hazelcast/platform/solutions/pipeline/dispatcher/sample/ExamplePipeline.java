@@ -3,76 +3,60 @@ package hazelcast.platform.solutions.pipeline.dispatcher.sample;
 import com.hazelcast.config.Config;
 import com.hazelcast.core.Hazelcast;
 import com.hazelcast.core.HazelcastInstance;
-import com.hazelcast.jet.datamodel.Tuple2;
-import com.hazelcast.jet.pipeline.*;
-import com.hazelcast.map.IMap;
+import com.hazelcast.jet.pipeline.Pipeline;
+import com.hazelcast.jet.pipeline.Sink;
+import hazelcast.platform.solutions.pipeline.dispatcher.DispatcherPipelines;
+import hazelcast.platform.solutions.pipeline.dispatcher.HazelcastUtil;
 import hazelcast.platform.solutions.pipeline.dispatcher.PipelineDispatcherFactory;
-import hazelcast.platform.solutions.pipeline.dispatcher.internal.MultiVersionRequestRouter;
-import hazelcast.platform.solutions.pipeline.dispatcher.internal.MultiVersionRequestRouterConfig;
+import hazelcast.platform.solutions.pipeline.dispatcher.ReplyChannels;
+import hazelcast.platform.solutions.pipeline.dispatcher.ReplyMode;
+import hazelcast.platform.solutions.pipeline.dispatcher.RequestKey;
 
-import java.util.Collections;
 import java.util.Map;
 
 public class ExamplePipeline {
     public static void main(String[] args) {
-        // event journal must be enabled on the request map but is not required for the response map
+        // event journal must be enabled on the request map but is not required for the response map.  Requests are
+        // written with a time-to-live, the one configured here is a safety net for requests that are never consumed.
         Config hzConfig = new Config();
-        hzConfig.getMapConfig("*_request").getEventJournalConfig().setEnabled(true);
+        hzConfig.getMapConfig("*_request").setTimeToLiveSeconds(60).getEventJournalConfig().setEnabled(true);
+        // request ring buffers are only used by services whose routing configuration selects the RINGBUFFER transport
+        hzConfig.getRingbufferConfig("request_ring_*").setBackupCount(0).setCapacity(100000);
         hzConfig.getJetConfig().setEnabled(true);
+        HazelcastUtil.registerSerializers(hzConfig.getSerializationConfig());
 
         // this will start daemon threads - the process will not exit
         HazelcastInstance hz = Hazelcast.newHazelcastInstance(hzConfig);
         Runtime.getRuntime().addShutdownHook(new Thread(hz::shutdown));
 
         // load the routing map - initially route all requests for the "reverse" service to v1
-        MultiVersionRequestRouterConfig reverseServiceConfig =
-                new MultiVersionRequestRouterConfig(Collections.singletonList("v1"), Collections.singletonList(1.0f));
-        hz.getMap(PipelineDispatcherFactory.ROUTER_CONFIG_MAP).put("reverse", reverseServiceConfig);
+        hz.getMap(PipelineDispatcherFactory.ROUTER_CONFIG_MAP).put("reverse", "{\"v1\":1}");
+
+        // the reply mode must match the one used by the dispatchers
+        ReplyMode replyMode = ReplyMode.valueOf(
+                System.getProperty("hazelcast.pipeline.dispatcher.reply_mode", ReplyMode.SHARED_MAP.name()));
 
         // submit 2 jobs for service version 1 and 2
         hz.getJet().newJob(ExamplePipeline.createPipelineV1(
                 "reverse_v1_request",
-                "reverse_response"));
+                ReplyChannels.responseSink(replyMode, "reverse")));
         hz.getJet().newJob(ExamplePipeline.createPipelineV2(
                 "reverse_v2_request",
-                "reverse_response"));
+                ReplyChannels.responseSink(replyMode, "reverse")));
     }
 
-    static Pipeline createPipelineV1(String requestMapName, String responseMapName) {
-        Pipeline pipeline = Pipeline.create();
-
-        StreamStage<Map.Entry<String, String>> requestMapEntries =
-                pipeline.<Map.Entry<String, String>>readFrom(
-                        Sources.mapJournal(requestMapName, JournalInitialPosition.START_FROM_OLDEST))
-                        .withIngestionTimestamps();
-
-        requestMapEntries.writeTo(Sinks.logger( entry -> "Process Request: " + entry.getKey()));
-
-        StreamStage<Tuple2<String, String>> reversedStrings = requestMapEntries.map(entry -> Tuple2.tuple2(
-                entry.getKey(),
-                new StringBuilder(entry.getValue()).reverse().toString()));
-
-        reversedStrings.writeTo(Sinks.map(responseMapName));
-
-        return pipeline;
+    /*
+     * The request map name and response sink are parameters so that the benchmarks and the load test can run the
+     * same pipelines against their own clusters.  A service that is only deployed one way can use
+     * DispatcherPipelines.newServicePipeline(serviceName, version, replyMode, logic) instead.
+     */
+    public static Pipeline createPipelineV1(String requestMapName, Sink<Map.Entry<RequestKey, String>> responseSink) {
+        return DispatcherPipelines.newServicePipeline(requestMapName, responseSink,
+                DispatcherPipelines.<String, String>map(s -> new StringBuilder(s).reverse().toString(), 0));
     }
 
-    static Pipeline createPipelineV2(String requestMapName, String responseMapName) {
-        Pipeline pipeline = Pipeline.create();
-
-        StreamStage<Map.Entry<String, String>> requestMapEntries =
-                pipeline.<Map.Entry<String, String>>readFrom(
-                                Sources.mapJournal(requestMapName, JournalInitialPosition.START_FROM_OLDEST))
-                        .withIngestionTimestamps();
-
-        requestMapEntries.writeTo(Sinks.logger( entry -> "Process Request: " + entry.getKey()));
-
-        StreamStage<Tuple2<String, String>> reversedStrings = requestMapEntries.map(entry -> Tuple2.tuple2(
-                entry.getKey(),
-                entry.getValue().toUpperCase()));
-
-        reversedStrings.writeTo(Sinks.map(responseMapName));
-
-        return pipeline;
+    public static Pipeline createPipelineV2(String requestMapName, Sink<Map.Entry<RequestKey, String>> responseSink) {
+        return DispatcherPipelines.newServicePipeline(requestMapName, responseSink,
+                DispatcherPipelines.<String, String>map(String::toUpperCase, 0));
     }
 }
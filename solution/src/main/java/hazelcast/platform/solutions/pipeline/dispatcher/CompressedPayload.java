@@ -0,0 +1,164 @@
+package hazelcast.platform.solutions.pipeline.dispatcher;
+
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.DataSerializable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * A compressed request or response.  Large String and byte[] payloads, typically JSON, are stored in the request
+ * and response maps, their backups and event journals, and shipped in listener events.  Compressing them once, where
+ * they are written, reduces all of these.
+ * <p>
+ * Only String and byte[] payloads whose encoded size is at least the threshold are compressed, and only if that makes
+ * them smaller.  Everything else is passed through unchanged, so a byte[] body that the application has already
+ * serialized is stored as it is and is not encoded a second time.  The dispatcher and the request sources decompress
+ * every payload they receive, whatever the threshold of the sender, so compression can be enabled on the dispatchers
+ * and on the pipelines independently.
+ * <p>
+ * Payloads are compressed with Deflate at its fastest level, which needs no additional library on the dispatchers or
+ * the cluster members.
+ */
+public class CompressedPayload implements DataSerializable {
+
+    // the payload was a String, encoded as UTF-8 before compression
+    private boolean text;
+
+    // the size of the payload before compression
+    private int length;
+
+    private byte []data;
+
+    public CompressedPayload(){
+        // for deserialization
+    }
+
+    private CompressedPayload(boolean text, int length, byte []data){
+        this.text = text;
+        this.length = length;
+        this.data = data;
+    }
+
+    /**
+     * @param thresholdBytes the smallest payload that is compressed, 0 or less disables compression
+     * @return a CompressedPayload, or value itself if it is not compressed
+     */
+    public static Object compress(Object value, int thresholdBytes){
+        if (thresholdBytes <= 0) return value;  // RETURN
+
+        if (value instanceof byte[]){
+            byte []bytes = (byte[]) value;
+            if (bytes.length < thresholdBytes) return value;  // RETURN
+
+            byte []compressed = deflate(bytes);
+            return compressed == null ? value : new CompressedPayload(false, bytes.length, compressed);  // RETURN
+        }
+
+        if (value instanceof String){
+            String s = (String) value;
+            // a character takes at most 3 bytes, so short strings are not encoded just to measure them
+            if ((long) s.length() * 3 < thresholdBytes) return value;  // RETURN
+
+            byte []bytes = s.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length < thresholdBytes) return value;  // RETURN
+
+            byte []compressed = deflate(bytes);
+            return compressed == null ? value : new CompressedPayload(true, bytes.length, compressed);  // RETURN
+        }
+
+        return value;
+    }
+
+    /**
+     * @return the original payload if value is a CompressedPayload, otherwise value itself
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T decompress(Object value){
+        if (!(value instanceof CompressedPayload)) return (T) value;  // RETURN
+
+        CompressedPayload payload = (CompressedPayload) value;
+        byte []bytes = inflate(payload.data, payload.length);
+        return (T) (payload.text ? new String(bytes, StandardCharsets.UTF_8) : bytes);
+    }
+
+    /*
+     * Returns null if the compressed form is not smaller than the input
+     */
+    private static byte []deflate(byte []input){
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+        try {
+            deflater.setInput(input);
+            deflater.finish();
+            byte []output = new byte[input.length];
+            int size = 0;
+            while(!deflater.finished() && size < output.length)
+                size += deflater.deflate(output, size, output.length - size);
+
+            return deflater.finished() && size < input.length ? Arrays.copyOf(output, size) : null;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte []inflate(byte []input, int length){
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(input);
+            byte []output = new byte[length];
+            int size = 0;
+            while(size < length){
+                int n = inflater.inflate(output, size, length - size);
+                if (n == 0 && (inflater.finished() || inflater.needsInput()))
+                    throw new IllegalStateException("Compressed payload is truncated");  // THROW
+
+                size += n;
+            }
+            return output;
+        } catch(DataFormatException x){
+            throw new IllegalStateException("Compressed payload is corrupt", x);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    public boolean isText() {
+        return text;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    public int getCompressedLength() {
+        return data.length;
+    }
+
+    @Override
+    public void writeData(ObjectDataOutput out) throws IOException {
+        out.writeBoolean(text);
+        out.writeInt(length);
+        out.writeByteArray(data);
+    }
+
+    @Override
+    public void readData(ObjectDataInput in) throws IOException {
+        text = in.readBoolean();
+        length = in.readInt();
+        data = in.readByteArray();
+    }
+
+    @Override
+    public String toString() {
+        return "CompressedPayload{" +
+                "text=" + text +
+                ", length=" + length +
+                ", compressedLength=" + data.length +
+                '}';
+    }
+}
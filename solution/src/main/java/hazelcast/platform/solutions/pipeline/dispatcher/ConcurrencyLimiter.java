@@ -0,0 +1,41 @@
+package hazelcast.platform.solutions.pipeline.dispatcher;
+
+/**
+ * Limits the number of requests that one PipelineDispatcher has in flight.  Every successful call to
+ * {@link #tryAcquire()} must be followed by exactly one call to {@link #onSuccess(long)}, {@link #onDropped()} or
+ * {@link #onIgnore()}.  Implementations are safe for concurrent access and do not allocate.
+ */
+public interface ConcurrencyLimiter {
+
+    /**
+     * @return true if the request may be sent, false if it must be rejected
+     */
+    boolean tryAcquire();
+
+    /**
+     * A response arrived after the given round trip time.
+     */
+    void onSuccess(long rttNanos);
+
+    /**
+     * The request timed out.  Adaptive limiters treat this as a sign of overload.
+     */
+    void onDropped();
+
+    /**
+     * The request ended without telling anything about the pipeline, for example because it could not be sent.
+     */
+    void onIgnore();
+
+    /**
+     * @return the current limit
+     */
+    int getLimit();
+
+    /**
+     * @return the number of requests currently counted against the limit
+     */
+    int getInFlight();
+
+    LimiterMode getMode();
+}
@@ -0,0 +1,55 @@
+package hazelcast.platform.solutions.pipeline.dispatcher;
+
+/**
+ * The exception with which the future returned by {@link PipelineDispatcher#sendAsync(Object)} completes when a
+ * request does not receive a response.  The status is the HTTP status that the DeferredResult adapter,
+ * {@link PipelineDispatcher#send(Object)}, returns for the same failure, so other adapters can map it the same way.
+ * <p>
+ * These exceptions do not capture a stack trace.  They describe an outcome, not a programming error, and they are
+ * created at a high rate when a service is overloaded.  Instances for timeouts and rejections are shared.
+ */
+public class DispatchException extends RuntimeException {
+
+    public enum Reason {
+        /**
+         * The request was not sent because the dispatcher had too many requests in flight
+         */
+        REJECTED,
+
+        /**
+         * No response was received within the request timeout
+         */
+        TIMEOUT,
+
+        /**
+         * The request could not be written to Hazelcast
+         */
+        SEND_FAILED,
+
+        /**
+         * The caller of a streamed response did not keep up and too many chunks were waiting for it
+         */
+        OVERFLOW
+    }
+
+    private final Reason reason;
+
+    private final int status;
+
+    public DispatchException(Reason reason, int status, String message, Throwable cause){
+        super(message, cause, false, false);
+        this.reason = reason;
+        this.status = status;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+
+    /**
+     * @return the HTTP status that corresponds to this failure, e.g. 408 for a timeout
+     */
+    public int getStatus() {
+        return status;
+    }
+}
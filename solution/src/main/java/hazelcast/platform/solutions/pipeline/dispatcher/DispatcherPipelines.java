@@ -0,0 +1,217 @@
+package hazelcast.platform.solutions.pipeline.dispatcher;
+
+import com.hazelcast.function.BiFunctionEx;
+import com.hazelcast.function.FunctionEx;
+import com.hazelcast.jet.Traverser;
+import com.hazelcast.jet.datamodel.Tuple2;
+import com.hazelcast.jet.pipeline.JournalInitialPosition;
+import com.hazelcast.jet.pipeline.Pipeline;
+import com.hazelcast.jet.pipeline.ServiceFactory;
+import com.hazelcast.jet.pipeline.Sink;
+import com.hazelcast.jet.pipeline.StreamStage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Builds service pipelines.  A service pipeline reads requests from the request map, or request ring buffers, of one
+ * version of a service, applies the business logic of the service and writes each response, under the key of its
+ * request, to the reply channel of the service.
+ * <p>
+ * The business logic is given as a transform from a stage of requests to a stage of responses, to be applied with
+ * StreamStage.apply.  The map, mapAsync and mapBatchedAsync methods build such transforms from a function of the
+ * request value, so the business logic does not have to deal with request keys:
+ * <pre>
+ * Pipeline pipeline = DispatcherPipelines.newServicePipeline("reverse", "v1", ReplyMode.SHARED_MAP,
+ *         DispatcherPipelines.&lt;String, String&gt;map(s -&gt; new StringBuilder(s).reverse().toString(), 0));
+ * </pre>
+ * Requests whose deadline has passed are dropped before the business logic, see {@link RequestSources}.  Responses
+ * are matched to callers by key, so the asynchronous stages do not preserve order, which improves throughput.
+ * <p>
+ * A localParallelism of 0 or less leaves the local parallelism of the stage at the Jet default.
+ */
+public class DispatcherPipelines {
+
+    /**
+     * Creates a pipeline for one version of a service, reading requests from the start of the request map journal.
+     *
+     * @param version the version, or null if the service does not have multiple versions
+     * @param replyMode must match the reply mode of the dispatchers that send requests to this pipeline
+     */
+    public static <R,P> Pipeline newServicePipeline(String serviceName, String version, ReplyMode replyMode,
+            FunctionEx<StreamStage<Map.Entry<RequestKey, R>>, StreamStage<Map.Entry<RequestKey, P>>> logic){
+        return newServicePipeline(RequestRoute.requestMapName(serviceName, version),
+                ReplyChannels.responseSink(replyMode, serviceName), logic);
+    }
+
+    /**
+     * Creates a pipeline for one version of a service that uses the given request transport, reading requests from
+     * the oldest one available.
+     *
+     * @param transport must match the transport in the routing configuration of the service
+     * @param partitions the number of request ring buffers, only used with the RINGBUFFER transport
+     */
+    public static <R,P> Pipeline newServicePipeline(String serviceName, String version, ReplyMode replyMode,
+            RequestTransport transport, int partitions,
+            FunctionEx<StreamStage<Map.Entry<RequestKey, R>>, StreamStage<Map.Entry<RequestKey, P>>> logic){
+        if (transport != RequestTransport.RINGBUFFER)
+            return newServicePipeline(serviceName, version, replyMode, logic);  // RETURN
+
+        Pipeline pipeline = Pipeline.create();
+        RequestSources.<R>readLiveRingbufferRequests(pipeline, serviceName, version, partitions,
+                        JournalInitialPosition.START_FROM_OLDEST, 0)
+                .apply(logic)
+                .writeTo(ReplyChannels.responseSink(replyMode, serviceName));
+        return pipeline;
+    }
+
+    /**
+     * Creates a pipeline for one version of a service whose routing configuration sets "priority_lanes", reading
+     * requests of all priorities from the oldest one available.  See {@link RequestPriority}.
+     *
+     * @param weights the weight of each lane, indexed by the ordinal of its RequestPriority.  Only used with the
+     *                RINGBUFFER transport, see {@link RequestSources#readLivePriorityRingbufferRequests}.
+     */
+    public static <R,P> Pipeline newPriorityServicePipeline(String serviceName, String version, ReplyMode replyMode,
+            RequestTransport transport, int partitions, int []weights,
+            FunctionEx<StreamStage<Map.Entry<RequestKey, R>>, StreamStage<Map.Entry<RequestKey, P>>> logic){
+        Pipeline pipeline = Pipeline.create();
+        StreamStage<Map.Entry<RequestKey, R>> requests = transport == RequestTransport.RINGBUFFER ?
+                RequestSources.readLivePriorityRingbufferRequests(pipeline, serviceName, version, partitions, weights,
+                        JournalInitialPosition.START_FROM_OLDEST, 0) :
+                RequestSources.readLivePriorityRequests(pipeline, serviceName, version,
+                        JournalInitialPosition.START_FROM_OLDEST, 0);
+        requests.apply(logic).writeTo(ReplyChannels.responseSink(replyMode, serviceName));
+        return pipeline;
+    }
+
+    /**
+     * Creates a pipeline for one version of a service that streams its responses, reading requests from the start of
+     * the request map journal.  The logic is usually built with {@link #stream}.
+     */
+    public static <R,T> Pipeline newStreamingServicePipeline(String serviceName, String version, ReplyMode replyMode,
+            FunctionEx<StreamStage<Map.Entry<RequestKey, R>>,
+                    StreamStage<Map.Entry<RequestKey, ResponseChunk<T>>>> logic){
+        return newServicePipeline(RequestRoute.requestMapName(serviceName, version),
+                ReplyChannels.streamingResponseSink(replyMode, serviceName), logic);
+    }
+
+    /**
+     * Creates a pipeline that reads requests from the given request map and writes responses to the given sink.
+     */
+    public static <R,P> Pipeline newServicePipeline(String requestMapName, Sink<Map.Entry<RequestKey, P>> responseSink,
+            FunctionEx<StreamStage<Map.Entry<RequestKey, R>>, StreamStage<Map.Entry<RequestKey, P>>> logic){
+        Pipeline pipeline = Pipeline.create();
+        RequestSources.<R>readLiveRequests(pipeline, requestMapName, JournalInitialPosition.START_FROM_OLDEST)
+                .apply(logic)
+                .writeTo(responseSink);
+        return pipeline;
+    }
+
+    /**
+     * Returns business logic that computes each response from its request with a fast, non-blocking function.
+     */
+    public static <R,P> FunctionEx<StreamStage<Map.Entry<RequestKey, R>>, StreamStage<Map.Entry<RequestKey, P>>> map(
+            FunctionEx<? super R, ? extends P> fn, int localParallelism){
+        return stage -> withParallelism(
+                stage.<Map.Entry<RequestKey, P>>map(
+                        entry -> Tuple2.tuple2(entry.getKey(), fn.apply(entry.getValue()))),
+                localParallelism);
+    }
+
+    /**
+     * Returns business logic that computes each response asynchronously, using a service such as a database client
+     * that is created once per member by the service factory.
+     *
+     * @param maxConcurrentOps the largest number of calls to fn that may be in progress at the same time, per processor
+     */
+    public static <S,R,P> FunctionEx<StreamStage<Map.Entry<RequestKey, R>>, StreamStage<Map.Entry<RequestKey, P>>>
+            mapAsync(ServiceFactory<?, S> serviceFactory, int maxConcurrentOps, int localParallelism,
+                     BiFunctionEx<? super S, ? super R, ? extends CompletableFuture<P>> fn){
+        return stage -> withParallelism(
+                stage.<S, Map.Entry<RequestKey, P>>mapUsingServiceAsync(serviceFactory, maxConcurrentOps, false,
+                        (S service, Map.Entry<RequestKey, R> entry) -> fn.apply(service, entry.getValue())
+                                .<Map.Entry<RequestKey, P>>thenApply(
+                                        response -> Tuple2.tuple2(entry.getKey(), response))),
+                localParallelism);
+    }
+
+    /**
+     * Returns business logic that computes responses in batches, for backends that are much more efficient when
+     * called with many requests at once, such as model scoring.  Batches are formed from the requests that are
+     * available, so a batch is only as large as maxBatchSize under load and no request waits for a batch to fill.
+     *
+     * @param fn returns a list of responses in the same order as, and of the same size as, the list of requests
+     */
+    public static <S,R,P> FunctionEx<StreamStage<Map.Entry<RequestKey, R>>, StreamStage<Map.Entry<RequestKey, P>>>
+            mapBatchedAsync(ServiceFactory<?, S> serviceFactory, int maxBatchSize, int localParallelism,
+                            BiFunctionEx<? super S, ? super List<R>, ? extends CompletableFuture<List<P>>> fn){
+        return stage -> withParallelism(
+                stage.<S, Map.Entry<RequestKey, P>>mapUsingServiceAsyncBatched(serviceFactory, maxBatchSize,
+                        (S service, List<Map.Entry<RequestKey, R>> batch) -> {
+                            List<R> requests = new ArrayList<>(batch.size());
+                            for(Map.Entry<RequestKey, R> entry: batch) requests.add(entry.getValue());
+
+                            return fn.apply(service, requests).thenApply(responses -> {
+                                if (responses.size() != batch.size()){
+                                    throw new IllegalStateException("Expected " + batch.size() +
+                                            " responses but received " + responses.size());  // THROW
+                                }
+
+                                List<Map.Entry<RequestKey, P>> result = new ArrayList<>(batch.size());
+                                for(int i=0; i < batch.size(); ++i)
+                                    result.add(Tuple2.tuple2(batch.get(i).getKey(), responses.get(i)));
+                                return result;
+                            });
+                        }),
+                localParallelism);
+    }
+
+    /**
+     * Returns business logic that streams the response to each request as a sequence of chunks.  fn returns a
+     * Traverser over the values of the chunks, see com.hazelcast.jet.Traversers, which is consumed lazily so that a
+     * large response is never held in memory at once.  Each value becomes a chunk and a final chunk marks the end of
+     * the response.  Use the logic with {@link #newStreamingServicePipeline}.
+     */
+    public static <R,T>
+            FunctionEx<StreamStage<Map.Entry<RequestKey, R>>, StreamStage<Map.Entry<RequestKey, ResponseChunk<T>>>>
+            stream(FunctionEx<? super R, ? extends Traverser<? extends T>> fn, int localParallelism){
+        return stage -> withParallelism(
+                stage.<Map.Entry<RequestKey, ResponseChunk<T>>>flatMap(
+                        entry -> new ChunkTraverser<T>(entry.getKey(), fn.apply(entry.getValue()))),
+                localParallelism);
+    }
+
+    /*
+     * Numbers the values of a response and appends the end marker
+     */
+    private static class ChunkTraverser<T> implements Traverser<Map.Entry<RequestKey, ResponseChunk<T>>> {
+        private final RequestKey key;
+        private final Traverser<? extends T> values;
+        private int index;
+        private boolean done;
+
+        ChunkTraverser(RequestKey key, Traverser<? extends T> values){
+            this.key = key;
+            this.values = values;
+        }
+
+        @Override
+        public Map.Entry<RequestKey, ResponseChunk<T>> next() {
+            if (done) return null;  // RETURN
+
+            T value = values.next();
+            if (value == null){
+                done = true;
+                return Tuple2.tuple2(key, ResponseChunk.end(index));  // RETURN
+            }
+            return Tuple2.tuple2(key, new ResponseChunk<>(index++, value, false));
+        }
+    }
+
+    private static <T> StreamStage<T> withParallelism(StreamStage<T> stage, int localParallelism){
+        return localParallelism > 0 ? stage.setLocalParallelism(localParallelism) : stage;
+    }
+}
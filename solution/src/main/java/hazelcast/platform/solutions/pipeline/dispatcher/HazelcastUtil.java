@@ -1,20 +1,52 @@
 package hazelcast.platform.solutions.pipeline.dispatcher;
 
 import com.hazelcast.client.HazelcastClient;
+import com.hazelcast.client.config.ClientConfig;
+import com.hazelcast.config.Config;
+import com.hazelcast.config.NearCacheConfig;
+import com.hazelcast.config.SerializationConfig;
 import com.hazelcast.core.Hazelcast;
 import com.hazelcast.core.HazelcastInstance;
+import hazelcast.platform.solutions.pipeline.dispatcher.internal.RequestKeySerializer;
+import hazelcast.platform.solutions.pipeline.dispatcher.internal.ResponseCache;
 
 public class HazelcastUtil {
     /**
      * Creates an embedded or client HazelcastInstance using the default Hazelcast bootstrapping mechanisms.
      * See https://docs.hazelcast.com/hazelcast/5.2/configuration/understanding-configuration#configuration-precedence
      * for embedded configuration and https://docs.hazelcast.com/hazelcast/5.2/clients/java#configuring-java-client
-     * for client configuration.
+     * for client configuration.  The serializers used by the dispatcher are added to the loaded configuration.
      *
      * @param embedded
      * @return the HazelcastInstance
      */
     public static HazelcastInstance buildHazelcastInstance( boolean embedded){
-        return embedded ?  Hazelcast.newHazelcastInstance(): HazelcastClient.newHazelcastClient();
+        if (embedded){
+            Config config = Config.load();
+            registerSerializers(config.getSerializationConfig());
+            return Hazelcast.newHazelcastInstance(config);
+        } else {
+            ClientConfig config = ClientConfig.load();
+            registerSerializers(config.getSerializationConfig());
+            addResponseCacheNearCache(config);
+            return HazelcastClient.newHazelcastClient(config);
+        }
+    }
+
+    /*
+     * Adds a near cache for the shared response cache maps, see ResponseCache, unless the loaded configuration
+     * already has one.  A near cache for a map that is never used costs nothing.
+     */
+    private static void addResponseCacheNearCache(ClientConfig config){
+        String pattern = ResponseCache.sharedMapName("*");
+        if (!config.getNearCacheConfigMap().containsKey(pattern)) config.addNearCacheConfig(new NearCacheConfig(pattern));
+    }
+
+    /**
+     * Registers the serializers for the types exchanged between dispatchers and pipelines, such as RequestKey.
+     * Cluster members that run service pipelines should call this when building their configuration.
+     */
+    public static void registerSerializers(SerializationConfig serializationConfig){
+        serializationConfig.getCompactSerializationConfig().addSerializer(new RequestKeySerializer());
     }
 }
@@ -0,0 +1,26 @@
+package hazelcast.platform.solutions.pipeline.dispatcher;
+
+/**
+ * Controls how each PipelineDispatcher decides how many requests it may have in flight.  Requests beyond the limit
+ * are rejected immediately, before anything is written to Hazelcast.  See {@link ConcurrencyLimiter}.
+ */
+public enum LimiterMode {
+    /**
+     * The limit is fixed at the configured value.
+     */
+    STATIC,
+
+    /**
+     * Additive increase, multiplicative decrease.  The limit grows by one for each successful response while the
+     * dispatcher is using at least half of it, and is multiplied by the backoff ratio whenever a request times out or
+     * a response takes longer than the latency threshold.
+     */
+    AIMD,
+
+    /**
+     * The limit follows the ratio of the long term average round trip time to the recent one.  When latency rises
+     * above its long term level, the pipeline is queueing and the limit shrinks.  When latency is at or below that
+     * level, the limit grows by roughly its square root each window.
+     */
+    GRADIENT
+}
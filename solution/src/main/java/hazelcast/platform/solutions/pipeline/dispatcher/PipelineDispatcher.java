@@ -1,79 +1,844 @@
 package hazelcast.platform.solutions.pipeline.dispatcher;
 
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.hazelcast.config.MapConfig;
 import com.hazelcast.core.EntryEvent;
 import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.internal.serialization.Data;
+import com.hazelcast.jet.datamodel.Tuple2;
 import com.hazelcast.map.IMap;
 import com.hazelcast.map.listener.EntryAddedListener;
+import com.hazelcast.map.listener.EntryUpdatedListener;
 import com.hazelcast.query.Predicate;
 import com.hazelcast.query.Predicates;
+import com.hazelcast.ringbuffer.OverflowPolicy;
+import com.hazelcast.topic.ITopic;
+import com.hazelcast.topic.Message;
+import com.hazelcast.topic.ReliableMessageListener;
+import hazelcast.platform.solutions.pipeline.dispatcher.internal.AimdLimiter;
+import hazelcast.platform.solutions.pipeline.dispatcher.internal.BatchingEntryRemover;
+import hazelcast.platform.solutions.pipeline.dispatcher.internal.ChunkStream;
+import hazelcast.platform.solutions.pipeline.dispatcher.internal.GradientLimiter;
+import hazelcast.platform.solutions.pipeline.dispatcher.internal.HedgingPolicy;
+import hazelcast.platform.solutions.pipeline.dispatcher.internal.PendingRequest;
+import hazelcast.platform.solutions.pipeline.dispatcher.internal.PendingRequestRegistry;
+import hazelcast.platform.solutions.pipeline.dispatcher.internal.RequestCoalescer;
+import hazelcast.platform.solutions.pipeline.dispatcher.internal.RequestBatcher;
 import hazelcast.platform.solutions.pipeline.dispatcher.internal.RequestKeyFactory;
+import hazelcast.platform.solutions.pipeline.dispatcher.internal.RequestTrace;
+import hazelcast.platform.solutions.pipeline.dispatcher.internal.ResponseCache;
+import hazelcast.platform.solutions.pipeline.dispatcher.internal.StaticLimiter;
+import hazelcast.platform.solutions.pipeline.dispatcher.internal.TrafficRecorder;
+import hazelcast.platform.solutions.pipeline.dispatcher.metrics.DispatcherMetrics;
+import hazelcast.platform.solutions.pipeline.dispatcher.metrics.ServiceMetrics;
+import hazelcast.platform.solutions.pipeline.dispatcher.metrics.TraceExporter;
+import hazelcast.platform.solutions.pipeline.dispatcher.metrics.TraceStage;
+import hazelcast.platform.solutions.pipeline.dispatcher.metrics.VersionMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.context.request.async.DeferredResult;
 
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * PipelineDispatcher is designed to be a singleton scoped bean
  */
 
-public class PipelineDispatcher<R,P> implements EntryAddedListener<String,P> {
+public class PipelineDispatcher<R,P> implements EntryAddedListener<RequestKey,P>, EntryUpdatedListener<RequestKey,P> {
     private static final Logger log = LoggerFactory.getLogger(PipelineDispatcher.class);
     RequestKeyFactory requestKeyFactory;
 
-    private final String clientId;
+    private final UUID clientId;
 
-    private final RequestRouter requestRouter;
+    private final String name;
 
-    private final ConcurrentHashMap<String, DeferredResult<P>> pendingRequestMap;
+    // replaced atomically when the routing configuration changes, see setRequestRouter
+    private volatile RequestRouter requestRouter;
+
+    private final AtomicLong nextSequence;
+
+    private final PendingRequestRegistry<P> pendingRequests;
 
     private final HazelcastInstance hz;
 
     private final long requestTimeoutMs;
 
+    private final long requestTtlMs;
+
+    private final ReplyMode replyMode;
+
+    private final IMap<RequestKey, P> responseMap;
+
+    private final ITopic<Tuple2<RequestKey, P>> replyTopic;
+
+    private final UUID listenerRegistration;
+
+    // removes delivered responses from the response map, null if responses are not deleted
+    private final BatchingEntryRemover<RequestKey, P> responseRemover;
+
+    // coalesces request writes, null if batching is disabled
+    private final RequestBatcher<RequestKey, Object> requestBatcher;
+
+    private final ServiceMetrics metrics;
+
+    // admission control, every request that is registered as pending holds one permit
+    private final ConcurrencyLimiter limiter;
+
+    // the largest number of requests of each priority that may be in flight, indexed by ordinal, 0 means no limit
+    private final int []laneMaxPending;
+
+    // the number of requests of each priority that are in flight, only counted for priorities that have a limit
+    private final AtomicInteger []laneInFlight;
+
+    // caches responses of idempotent services, null if this service is not cached
+    private final ResponseCache<R, P> responseCache;
+
+    // joins identical requests that are in flight at the same time, null if this service does not coalesce requests
+    private final RequestCoalescer<R, P> coalescer;
+
+    private final long requestTimeoutNanos;
+
+    // the periodic task that times out requests
+    private final ScheduledFuture<?> timeoutTask;
+
+    // failures that do not carry any request specific information are shared
+    private final DispatchException overloaded;
+
+    private final DispatchException tooManyPending;
+
+    private final DispatchException timedOut;
+
+    private final DispatchException streamOverflow;
+
+    // the number of chunks of a streamed response that may wait for the caller, see ChunkStream
+    private final int maxBufferedChunks;
+
+    // requests of at least this size are compressed, see CompressedPayload
+    private final int compressionThresholdBytes;
+
+    // the fraction of requests that are traced, see RequestTracing
+    private final double tracingSampleRate;
+
+    // receives every traced request, may be null
+    private final TraceExporter traceExporter;
+
+    // appends a sample of the requests to the capture file, may be null
+    private final TrafficRecorder recorder;
+
+    // what the DeferredResult adapter returns when the servlet container times a request out
+    private final ResponseEntity<String> timeoutResponse;
+
+    // sends requests that have been waiting too long a second time, null if this service is not hedged
+    private final HedgingPolicy hedging;
+
+    private final ScheduledFuture<?> hedgingTask;
+
+    // the next sequence number that the hedging task will look at, only accessed by that task
+    private long hedgingCursor;
+
+    // per version metrics, looked up by version name so that they survive routing changes
+    private final ConcurrentHashMap<String, VersionMetrics> versionMetrics;
+
     public PipelineDispatcher(
             RequestKeyFactory requestKeyFactory,
             HazelcastInstance hz,
             String name,
             RequestRouter requestRouter,
-            long requestTimeoutMs){
-        this.requestTimeoutMs = requestTimeoutMs;
+            PipelineDispatcherSettings settings,
+            ScheduledExecutorService scheduler,
+            DispatcherMetrics metrics){
+        this(requestKeyFactory, hz, name, requestRouter, settings, scheduler, metrics, null, null);
+    }
+
+    /**
+     * @param traceExporter receives the stages of traced requests, may be null.  See
+     * {@link PipelineDispatcherSettings#getTracingSampleRate()}.
+     * @param recorder captures a sample of the requests, may be null.  The recorder may be shared by dispatchers and
+     * is not closed by this dispatcher.
+     */
+    public PipelineDispatcher(
+            RequestKeyFactory requestKeyFactory,
+            HazelcastInstance hz,
+            String name,
+            RequestRouter requestRouter,
+            PipelineDispatcherSettings settings,
+            ScheduledExecutorService scheduler,
+            DispatcherMetrics metrics,
+            TraceExporter traceExporter,
+            TrafficRecorder recorder){
+        this.name = name;
+        this.requestTimeoutMs = settings.getRequestTimeoutMs();
+        this.requestTtlMs = settings.getRequestTtlMs();
         this.requestKeyFactory = requestKeyFactory;
-        this.pendingRequestMap = new ConcurrentHashMap<>();
+        this.nextSequence = new AtomicLong();
+        this.pendingRequests = new PendingRequestRegistry<>(settings.getMaxPendingRequests());
+        this.metrics = metrics.forService(name, pendingRequests::getInFlightCount);
+        this.versionMetrics = new ConcurrentHashMap<>();
+        this.limiter = newLimiter(settings);
+        this.laneMaxPending = new int[RequestPriority.values().length];
+        this.laneMaxPending[RequestPriority.NORMAL.ordinal()] = settings.getPriorityNormalMaxPending();
+        this.laneMaxPending[RequestPriority.LOW.ordinal()] = settings.getPriorityLowMaxPending();
+        this.laneInFlight = new AtomicInteger[laneMaxPending.length];
+        for(int i=0; i < laneInFlight.length; ++i) laneInFlight[i] = new AtomicInteger();
+        this.responseCache = settings.getCachedServices().contains(name) ? new ResponseCache<>(hz, name, settings) : null;
+        this.coalescer = settings.getCoalescedServices().contains(name) ? new RequestCoalescer<>(hz) : null;
+        this.hedging = settings.getHedgedServices().contains(name) ?
+                new HedgingPolicy(settings.getHedgingDelayMs(), settings.getHedgingPercentile(),
+                        settings.getHedgingBudget(), settings.getMaxPendingRequests()) : null;
+        this.requestTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(requestTimeoutMs);
+        this.overloaded = new DispatchException(DispatchException.Reason.REJECTED,
+                HttpStatus.valueOf(settings.getLimiterRejectStatus()).value(), "Service is overloaded.", null);
+        this.tooManyPending = new DispatchException(DispatchException.Reason.REJECTED,
+                HttpStatus.SERVICE_UNAVAILABLE.value(), "Too many pending requests.", null);
+        this.timedOut = new DispatchException(DispatchException.Reason.TIMEOUT, HttpStatus.REQUEST_TIMEOUT.value(),
+                "Request timeout occurred.", null);
+        this.timeoutResponse = ResponseEntity.status(HttpStatus.REQUEST_TIMEOUT).body(timedOut.getMessage());
+        this.streamOverflow = new DispatchException(DispatchException.Reason.OVERFLOW,
+                HttpStatus.SERVICE_UNAVAILABLE.value(), "Too many chunks are waiting for the caller.", null);
+        this.maxBufferedChunks = settings.getStreamingMaxBufferedChunks();
+        this.compressionThresholdBytes = settings.getCompressionThresholdBytes();
+        this.tracingSampleRate = settings.getTracingSampleRate();
+        this.traceExporter = traceExporter;
+        this.recorder = recorder;
 
         this.clientId = requestKeyFactory.newRandomClientId();
         this.requestRouter = requestRouter;
         this.hz = hz;
+        this.replyMode = settings.getReplyMode();
+        this.requestBatcher = settings.isBatchingEnabled() ?
+                new RequestBatcher<>(hz, name, settings.getBatchMaxItems(), settings.getBatchMaxDelayMicros(),
+                        settings.getBatchBypassThreshold()) : null;
 
-        // add the response listener to the response map
-        IMap<String, P> responseMap = hz.getMap(name + "_response");
-        Predicate<String, P> myRequests = Predicates.like("__key", clientId + "%");
-        responseMap.addEntryListener(this, myRequests, true);
+        if (replyMode == ReplyMode.RELIABLE_TOPIC){
+            // responses are published directly to a topic that only this dispatcher listens to
+            this.responseMap = null;
+            this.responseRemover = null;
+            this.replyTopic = hz.getReliableTopic(ReplyChannels.replyTopicName(name, clientId));
+            this.listenerRegistration = replyTopic.addMessageListener(new ReplyListener());
+        } else {
+            String responseMapName = ReplyChannels.responseMapName(name);
+            if (settings.getResponseTtlSeconds() > 0) configureResponseTtl(responseMapName, settings.getResponseTtlSeconds());
+
+            // add the response listener to the response map
+            this.replyTopic = null;
+            this.responseMap = hz.getMap(responseMapName);
+            this.responseRemover = settings.isDeleteOnDelivery() ?
+                    new BatchingEntryRemover<>(responseMap, settings.getRemovalBatchSize(),
+                            settings.getRemovalFlushIntervalMs(), scheduler) : null;
+            Predicate<RequestKey, P> myRequests = Predicates.and(
+                    Predicates.equal("__key.clientIdHigh", clientId.getMostSignificantBits()),
+                    Predicates.equal("__key.clientIdLow", clientId.getLeastSignificantBits()));
+            this.listenerRegistration = responseMap.addEntryListener(this, myRequests, true);
+        }
+
+        long interval = Math.max(1, settings.getTimeoutCheckIntervalMs());
+        this.timeoutTask = scheduler.scheduleWithFixedDelay(this::expireTimedOut, interval, interval,
+                TimeUnit.MILLISECONDS);
+        this.hedgingTask = hedging == null ? null :
+                scheduler.scheduleWithFixedDelay(this::hedgeSlowRequests, 1, 1, TimeUnit.MILLISECONDS);
     }
 
+    private static ConcurrencyLimiter newLimiter(PipelineDispatcherSettings settings){
+        switch(settings.getLimiterMode()){
+            case AIMD:
+                return new AimdLimiter(settings.getLimiterLimit(), settings.getLimiterMinLimit(),
+                        settings.getLimiterMaxLimit(), settings.getLimiterBackoffRatio(),
+                        settings.getLimiterLatencyThresholdMs());
+            case GRADIENT:
+                return new GradientLimiter(settings.getLimiterLimit(), settings.getLimiterMinLimit(),
+                        settings.getLimiterMaxLimit(), settings.getLimiterBackoffRatio(),
+                        settings.getLimiterWindowMs());
+            default:
+                return new StaticLimiter(settings.getLimiterLimit());
+        }
+    }
+
+    /*
+     * Adds a dynamic map configuration with a time-to-live to the response map.  This is a safety net for
+     * responses that are never delivered, for example because the dispatcher that sent the request has stopped.
+     * The configuration that currently applies to the response map, which may come from a wildcard such as
+     * "*_response", is copied with only the time-to-live changed, and nothing is added if it already has a
+     * time-to-live.  An existing, different configuration under the exact name of the response map takes precedence.
+     * Like any dynamic configuration, it has no effect on a map that has already been created on the member.
+     */
+    private void configureResponseTtl(String responseMapName, int ttlSeconds){
+        try {
+            MapConfig current = hz.getConfig().findMapConfig(responseMapName);
+            if (current.getTimeToLiveSeconds() > 0) return;  // RETURN
+
+            hz.getConfig().addMapConfig(new MapConfig(current).setName(responseMapName)
+                    .setTimeToLiveSeconds(ttlSeconds));
+        } catch(RuntimeException x){
+            log.warn("Could not configure a time-to-live for {}.  The existing configuration will be used.",
+                    responseMapName, x);
+        }
+    }
+
+    @Override
+    public void entryAdded(EntryEvent<RequestKey, P> entryEvent) {
+        deliver(entryEvent.getKey(), entryEvent.getValue());
+    }
+
+    /*
+     * The chunks of a streamed response are written under the same key, so all chunks after the first one are updates
+     */
     @Override
-    public void entryAdded(EntryEvent<String, P> entryEvent) {
-        log.trace("Received response for {}", entryEvent.getKey());
-        DeferredResult<P> result = pendingRequestMap.get(entryEvent.getKey());
-        if (result != null){
-            log.info("RECEIVED " + entryEvent.getKey() + " : (" + entryEvent.getValue().getClass().getName() + ")");
-            result.setResult(entryEvent.getValue());
+    public void entryUpdated(EntryEvent<RequestKey, P> entryEvent) {
+        deliver(entryEvent.getKey(), entryEvent.getValue());
+    }
+
+    /*
+     * value is the response as it was written by the pipeline, possibly compressed
+     */
+    private void deliver(RequestKey key, Object value){
+        log.trace("Received response for {}", key);
+        if (value instanceof ResponseChunk){
+            deliverChunk(key, (ResponseChunk<?>) value);
+            return;  // RETURN
+        }
+
+        P response = CompressedPayload.decompress(value);
+
+        // the response is removed whether or not there is still a caller waiting for it
+        if (responseRemover != null) responseRemover.remove(key);
+
+        PendingRequest<P> pending = pendingRequests.remove(key.getSequence());
+        if (pending != null){
+            long now = System.nanoTime();
+            long rttNanos = now - pending.getStartNanos();
+            limiter.onSuccess(rttNanos);
+            requestRouter.onResponse(pending.getRoute(), rttNanos);
+            if (hedging != null && !pending.isHedge()) hedging.record(rttNanos);
+            if (pending.getCacheKey() != null) responseCache.put(pending.getCacheKey(), response);
+
+            // if the request was hedged, the first response completes it and the other one is ignored
+            if (pending.getResult().complete(response)){
+                pending.getVersionMetrics().recordLatency(now - pending.getCallerStartNanos());
+                if (pending.getTrace() != null) recordTrace(pending, key, now);
+            }
+        } else if (key.getSequence() < nextSequence.get()){
+            // the request was sent by this dispatcher but it has already timed out or failed
+            metrics.recordLateResponse();
+            log.warn("Could not find a pending request for {}", key);
         } else {
-            log.warn("Could not find a pending request for {}", entryEvent.getKey());
+            metrics.recordOrphanResponse();
+            log.warn("Could not find a pending request for {}", key);
+        }
+    }
+
+    /*
+     * Called after the result has been completed, so that the COMPLETE stage includes the callbacks of the caller.
+     * key is the key of the response, with the times stamped by the pipeline.
+     */
+    private void recordTrace(PendingRequest<P> pending, RequestKey key, long receiptNanos){
+        long []stages = pending.getTrace().stages(key, receiptNanos, System.nanoTime());
+        for(TraceStage stage: TraceStage.values()){
+            long nanos = stages[stage.ordinal()];
+            if (nanos >= 0) pending.getVersionMetrics().recordStage(stage, nanos);
+        }
+
+        if (traceExporter == null) return;  // RETURN
+
+        try {
+            traceExporter.export(name, versionName(pending.getRoute()), key, pending.getTrace().getSendMicros(),
+                    stages);
+        } catch(RuntimeException x){
+            log.warn("Could not export the trace of {}", key, x);
+        }
+    }
+
+    /*
+     * The pending request stays registered until its last chunk has arrived, so the timeout sweep ends a stream that
+     * has been idle for longer than the request timeout.
+     */
+    @SuppressWarnings("unchecked")
+    private void deliverChunk(RequestKey key, ResponseChunk<?> chunk){
+        PendingRequest<P> pending = pendingRequests.get(key.getSequence());
+        if (pending == null || pending.getStream() == null){
+            // the stream timed out or failed, only its last chunk is counted
+            if (chunk.isLast()){
+                if (responseRemover != null) responseRemover.remove(key);
+                metrics.recordLateResponse();
+                log.warn("Could not find a pending streamed response for {}", key);
+            }
+            return;  // RETURN
+        }
+
+        long now = System.nanoTime();
+        if (pending.onChunk(now)){
+            // the latency of a streamed response is the time to its first chunk
+            requestRouter.onResponse(pending.getRoute(), pending.getFirstChunkNanos());
+            pending.getVersionMetrics().recordLatency(pending.getFirstChunkNanos());
+        }
+
+        if (chunk.getValue() instanceof CompressedPayload){
+            chunk = new ResponseChunk<>(chunk.getIndex(), CompressedPayload.decompress(chunk.getValue()),
+                    chunk.isLast());
+        }
+
+        if (!pending.<Object>getStream().offer((ResponseChunk<Object>) chunk)) return;  // RETURN
+
+        // all chunks have arrived.  If the timeout sweep removed the request first, it has already been failed.
+        if (pendingRequests.remove(key.getSequence()) != pending) return;  // RETURN
+
+        if (responseRemover != null) responseRemover.remove(key);
+        limiter.onSuccess(pending.getFirstChunkNanos());
+        pending.getResult().complete(null);
+    }
+
+    /**
+     * Sends a request and returns a future that completes with its response.  This is the transport neutral core of
+     * the dispatcher, the other send methods are adapters on top of it.  The future never blocks a thread and is
+     * completed by a Hazelcast event thread, so dependent actions should be short or should run asynchronously.
+     * <p>
+     * If there is no response, the future completes exceptionally with a {@link DispatchException}.  Requests time
+     * out after the request timeout, give or take the timeout check interval.  Cancelling the future does not
+     * withdraw the request.  The request has the NORMAL priority.
+     */
+    public CompletableFuture<P> sendAsync(R request){
+        return sendAsync(request, RequestPriority.NORMAL);
+    }
+
+    /*
+     * Sends a synthetic warm-up request, see PipelineDispatcherFactory.  It is never answered from the cache, coalesced
+     * or recorded, so warm-up exercises the full round trip and does not pollute the cache or the capture.
+     */
+    CompletableFuture<P> sendWarmup(R request){
+        return dispatch(request, requestRouter.route(), RequestPriority.NORMAL, null, null);
+    }
+
+    /**
+     * Sends a request with the given priority, see {@link RequestPriority}.  A request that is coalesced with an
+     * identical request already in flight shares the lane of that request.
+     */
+    public CompletableFuture<P> sendAsync(R request, RequestPriority priority){
+        if (recorder != null) recorder.record(name, request);
+
+        RequestRoute route = requestRouter.route();
+        if (responseCache == null) return coalesceOrDispatch(request, route, priority, null);  // RETURN
+
+        // the version is chosen before the cache lookup because different versions may respond differently
+        ResponseCache.Key cacheKey = responseCache.keyFor(route, request);
+        P cached = responseCache.getLocal(cacheKey);
+        if (cached != null) return CompletableFuture.completedFuture(cached);  // RETURN
+
+        if (!responseCache.hasSharedTier()) return coalesceOrDispatch(request, route, priority, cacheKey);  // RETURN
+
+        return responseCache.getShared(cacheKey).toCompletableFuture().thenCompose(value ->
+                value != null ? CompletableFuture.completedFuture(value) :
+                        coalesceOrDispatch(request, route, priority, cacheKey));
+    }
+
+    /**
+     * Sends a request and returns a DeferredResult for use as the return value of a Spring MVC handler method.
+     * Failures are returned as a ResponseEntity with the status of the {@link DispatchException} and a short
+     * message as its body.
+     */
+    public DeferredResult<P> send(R request){
+        return send(request, RequestPriority.NORMAL);
+    }
+
+    /**
+     * Sends a request with the given priority and returns a DeferredResult, see {@link #send(Object)}.
+     */
+    public DeferredResult<P> send(R request, RequestPriority priority){
+        DeferredResult<P> result = new DeferredResult<>(requestTimeoutMs, timeoutResponse);
+        sendAsync(request, priority).whenComplete((value, t) -> {
+            if (t == null)
+                result.setResult(value);
+            else
+                result.setErrorResult(toResponseEntity(t));
+        });
+        return result;
+    }
+
+    /**
+     * Sends a request and waits for its response.  The calling thread waits without holding any monitors, so on a
+     * virtual thread this method only parks the virtual thread and does not block its carrier.
+     *
+     * @throws DispatchException if there is no response
+     */
+    public P call(R request){
+        return call(request, RequestPriority.NORMAL);
+    }
+
+    /**
+     * Sends a request with the given priority and waits for its response, see {@link #call(Object)}.
+     */
+    public P call(R request, RequestPriority priority){
+        try {
+            return sendAsync(request, priority).join();
+        } catch(CompletionException x){
+            Throwable cause = x.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;  // THROW
+            throw x;
+        }
+    }
+
+    /**
+     * Sends a request to a service whose pipeline streams its response, see {@link DispatcherPipelines#stream}, and
+     * returns a publisher of the values of the chunks.  The request is sent immediately.  The publisher accepts a
+     * single subscriber and delivers values in order and only as they are requested.  Chunks that arrive before they
+     * are requested are buffered, up to the configured maximum, beyond which the stream fails with a
+     * {@link DispatchException}.  The stream also fails if no chunk arrives for longer than the request timeout.
+     * <p>
+     * Streamed responses are never cached, coalesced or hedged.
+     */
+    public <T> Flow.Publisher<T> sendStreaming(R request){
+        if (recorder != null) recorder.record(name, request);
+
+        ChunkStream<T> stream = new ChunkStream<>(maxBufferedChunks, streamOverflow);
+        dispatch(request, requestRouter.route(), RequestPriority.NORMAL, null, stream).whenComplete((v, t) -> {
+            if (t != null) stream.fail(t);
+        });
+        return stream;
+    }
+
+    private static ResponseEntity<String> toResponseEntity(Throwable t){
+        if (t instanceof CompletionException && t.getCause() != null) t = t.getCause();
+        if (t instanceof DispatchException){
+            DispatchException x = (DispatchException) t;
+            return ResponseEntity.status(x.getStatus()).body(x.getMessage());  // RETURN
         }
+
+        log.warn("Request failed", t);
+        return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Request failed.");
     }
 
-    public DeferredResult<P> send(R  request){
-        String key = requestKeyFactory.newRequestKey(this.clientId);
-        DeferredResult<P> result = new DeferredResult<>(requestTimeoutMs);
-        result.onTimeout(() -> result.setErrorResult(
-                ResponseEntity.status(HttpStatus.REQUEST_TIMEOUT).body("Request timeout occurred.")));
-        IMap<String,R> requestMap = hz.getMap(requestRouter.getRequestMapName());
-        pendingRequestMap.put(key, result);
-        requestMap.putAsync(key, request);
-        log.trace("Sent request {}", key);
+    private CompletableFuture<P> coalesceOrDispatch(R request, RequestRoute route, RequestPriority priority,
+                                                    ResponseCache.Key cacheKey){
+        if (coalescer == null) return dispatch(request, route, priority, cacheKey, null);  // RETURN
+
+        // reuse the serialized request if the cache already produced it
+        Data data = cacheKey != null ? cacheKey.getRequest() : coalescer.toData(request);
+        return coalescer.send(data, () -> dispatch(request, route, priority, cacheKey, null));
+    }
+
+    /*
+     * Sends a request to the pipeline.  cacheKey is null if the response is not to be cached, stream is null if the
+     * response is not streamed.
+     */
+    private CompletableFuture<P> dispatch(R request, RequestRoute route, RequestPriority priority,
+                                          ResponseCache.Key cacheKey, ChunkStream<?> stream){
+        CompletableFuture<P> result = new CompletableFuture<>();
+        if (!acquireLane(priority, result)){
+            metrics.recordRejected();
+            result.completeExceptionally(overloaded);
+            return result;  // RETURN
+        }
+
+        if (!limiter.tryAcquire()){
+            metrics.recordRejected();
+            result.completeExceptionally(overloaded);
+            return result;  // RETURN
+        }
+
+        // streamed responses are not traced, their latency is the time to the first chunk
+        RequestTrace trace = stream == null && tracingSampleRate > 0 &&
+                ThreadLocalRandom.current().nextDouble() < tracingSampleRate ? new RequestTrace() : null;
+        // the sequence number is only taken once the request has been admitted
+        VersionMetrics versionMetrics = versionMetricsFor(route);
+        Object hedgeable = hedging != null && stream == null ? request : null;
+        PendingRequest<P> pending = pendingRequests.register(nextSequence, sequence -> new PendingRequest<>(sequence,
+                result, route, priority, versionMetrics, cacheKey, hedgeable, null, stream, trace));
+        if (pending == null){
+            limiter.onIgnore();
+            metrics.recordRejected();
+            result.completeExceptionally(tooManyPending);
+            return result;  // RETURN
+        }
+
+        send(route.lane(priority), pending.getSequence(), request, requestTimeoutMs, trace);
         return result;
     }
+
+    /*
+     * Takes a place in the lane of the priority, if the lane has a limit, and gives it back when the result
+     * completes.  Every path through dispatch completes the result, so the place is always given back.
+     */
+    private boolean acquireLane(RequestPriority priority, CompletableFuture<P> result){
+        int lane = priority.ordinal();
+        if (laneMaxPending[lane] <= 0) return true;  // RETURN
+
+        if (laneInFlight[lane].incrementAndGet() > laneMaxPending[lane]){
+            laneInFlight[lane].decrementAndGet();
+            return false;  // RETURN
+        }
+
+        result.whenComplete((v, t) -> laneInFlight[lane].decrementAndGet());
+        return true;
+    }
+
+    /*
+     * route is the lane to write to.  remainingMs is the time the caller will still wait for the response, it
+     * becomes the deadline of the request.  trace is null if the request is not traced.
+     */
+    private void send(RequestRoute route, long sequence, R request, long remainingMs, RequestTrace trace){
+        RequestKey key = requestKeyFactory.newRequestKey(this.clientId, sequence, remainingMs,
+                trace != null ? RequestKey.FLAG_TRACED : 0);
+        // a synchronous failure, such as a request that cannot be serialized, is handled like an asynchronous one so
+        // that the caller's future completes and the permits are given back
+        try {
+            Object payload = CompressedPayload.compress(request, compressionThresholdBytes);
+            if (route.getTransport() == RequestTransport.RINGBUFFER){
+                // a single append, nothing is stored in a map.  If the ring buffer is full, the oldest request is
+                // overwritten, so a pipeline that falls too far behind loses requests, which then time out.
+                route.<Object>getRequestRingbuffer(sequence)
+                        .addAsync(Tuple2.tuple2(key, payload), OverflowPolicy.OVERWRITE)
+                        .whenComplete((v, t) -> {
+                            if (t != null)
+                                onSendFailure(sequence, key, t);
+                            else if (trace != null)
+                                trace.onAck();
+                        });
+                log.trace("Sent request {}", key);
+                return;  // RETURN
+            }
+
+            IMap<RequestKey,Object> requestMap = route.getRequestMap();
+            if (requestBatcher != null){
+                requestBatcher.put(requestMap, key, payload, requestTtlMs, t -> onSendFailure(sequence, key, t));
+            } else {
+                requestMap.putAsync(key, payload, requestTtlMs, TimeUnit.MILLISECONDS).whenComplete((v, t) -> {
+                    if (t != null)
+                        onSendFailure(sequence, key, t);
+                    else if (trace != null)
+                        trace.onAck();
+                });
+            }
+            log.trace("Sent request {}", key);
+        } catch(RuntimeException x){
+            onSendFailure(sequence, key, x);
+        }
+    }
+
+    /*
+     * Runs every millisecond on the scheduler if this service is hedged.  Since all requests share the same hedge
+     * delay, they become due in sequence order, so the scan resumes where it stopped and stops at the first request
+     * that is not due yet.  Each request is considered once.  A request that is registered after the scan has
+     * passed its sequence number is not hedged, which is harmless.
+     */
+    private void hedgeSlowRequests(){
+        try {
+            long now = System.nanoTime();
+            long end = nextSequence.get();
+            long delayNanos = hedging.update(now, end - hedging.getHedgeCount());
+            for(; hedgingCursor < end; ++hedgingCursor){
+                PendingRequest<P> pending = pendingRequests.get(hedgingCursor);
+                // streamed responses are not hedged, the chunks of two responses cannot be merged
+                if (pending == null || pending.isHedge() || pending.getStream() != null) continue;  // CONTINUE
+
+                if (now - pending.getStartNanos() < delayNanos) break;  // BREAK
+
+                hedge(pending);
+            }
+        } catch(RuntimeException x){
+            // an exception would cancel the periodic task
+            log.warn("Error while hedging requests", x);
+        }
+    }
+
+    /*
+     * Sends a copy of the request under a new key.  The copy shares the future of the original, so whichever
+     * response arrives first completes it.  The router is asked twice for a route, which gives it a chance to send
+     * the copy to a different version.  Nothing is sent if the budget is exhausted or the limiter refuses.
+     */
+    private void hedge(PendingRequest<P> primary){
+        if (primary.getResult().isDone() || !hedging.tryAcquire()) return;  // RETURN
+
+        if (!limiter.tryAcquire()){
+            hedging.release();
+            return;  // RETURN
+        }
+
+        RequestRoute first = requestRouter.route();
+        RequestRoute route = first == primary.getRoute() ? requestRouter.route() : first;
+
+        VersionMetrics versionMetrics = versionMetricsFor(route);
+        PendingRequest<P> hedge = pendingRequests.register(nextSequence, sequence -> new PendingRequest<>(sequence,
+                primary.getResult(), route, primary.getPriority(), versionMetrics, primary.getCacheKey(), null, primary,
+                null, null));
+        if (hedge == null){
+            limiter.onIgnore();
+            hedging.release();
+            return;  // RETURN
+        }
+
+        // the hedge has the deadline of the original request
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - primary.getStartNanos());
+        metrics.recordHedge();
+        send(route.lane(primary.getPriority()), hedge.getSequence(), primary.getRequest(),
+                Math.max(1, requestTimeoutMs - elapsedMs), null);
+    }
+
+    /*
+     * Runs periodically on the scheduler.  Timing out all requests with one scan of the pending requests is much
+     * cheaper than scheduling a timer for each request.
+     */
+    private void expireTimedOut(){
+        try {
+            pendingRequests.removeInactiveSince(System.nanoTime() - requestTimeoutNanos, this::expire);
+        } catch(RuntimeException x){
+            // an exception would cancel the periodic task
+            log.warn("Error while timing out requests", x);
+        }
+    }
+
+    private void expire(PendingRequest<P> pending){
+        limiter.onDropped();
+        requestRouter.onFailure(pending.getRoute());
+
+        // the caller may already have its response from the other request of a hedged pair
+        if (pending.getResult().completeExceptionally(timedOut)) metrics.recordTimeout();
+    }
+
+    private void onSendFailure(long sequence, RequestKey key, Throwable t){
+        PendingRequest<P> pending = pendingRequests.remove(sequence);
+        if (pending != null){
+            limiter.onIgnore();
+            metrics.recordSendFailure();
+            requestRouter.onFailure(pending.getRoute());
+            log.warn("Failed to send request {}", key, t);
+
+            // a hedge that could not be sent leaves the original request to complete on its own
+            if (!pending.isHedge()){
+                pending.getResult().completeExceptionally(new DispatchException(DispatchException.Reason.SEND_FAILED,
+                        HttpStatus.INTERNAL_SERVER_ERROR.value(), "Request could not be sent.", t));
+            }
+        }
+    }
+
+    private static String versionName(RequestRoute route){
+        return route.getVersion() == null ? ServiceMetrics.DEFAULT_VERSION : route.getVersion();
+    }
+
+    private VersionMetrics versionMetricsFor(RequestRoute route){
+        String version = versionName(route);
+        VersionMetrics result = versionMetrics.get(version);
+        if (result == null) result = versionMetrics.computeIfAbsent(version, metrics::forVersion);
+        return result;
+    }
+
+    /**
+     * @return the number of requests that have been sent but have not yet completed, timed out or failed
+     */
+    public int getInFlightCount(){
+        return pendingRequests.getInFlightCount();
+    }
+
+    /**
+     * @return the age, in milliseconds, of the oldest request that is still in flight, or 0 if there are none
+     */
+    public long getOldestInFlightAgeMs(){
+        return pendingRequests.getOldestAgeMs();
+    }
+
+    /**
+     * @return the admission control state of this dispatcher, see {@link LimiterMode}
+     */
+    public ConcurrencyLimiter getLimiter(){
+        return limiter;
+    }
+
+    public RequestRouter getRequestRouter(){
+        return requestRouter;
+    }
+
+    /**
+     * Replaces the router used for subsequent requests.  Requests that are already in flight are not affected and
+     * the response listener stays registered, so changing the routing configuration is cheap.  If responses of
+     * this service are cached, the cache is invalidated.
+     */
+    public void setRequestRouter(RequestRouter requestRouter){
+        this.requestRouter = requestRouter;
+        if (responseCache != null) responseCache.invalidateAll();
+    }
+
+    /**
+     * @return the number of requests that were answered by joining an identical request in flight, 0 if this
+     * service does not coalesce requests
+     */
+    public long getCoalescedCount(){
+        return coalescer == null ? 0 : coalescer.getCoalescedCount();
+    }
+
+    /**
+     * @return the number of hedges sent, 0 if this service is not hedged
+     */
+    public long getHedgeCount(){
+        return hedging == null ? 0 : hedging.getHedgeCount();
+    }
+
+    /**
+     * @return hit, miss and eviction counts of the local response cache, or null if this service is not cached
+     */
+    public CacheStats getResponseCacheStats(){
+        return responseCache == null ? null : responseCache.getStats();
+    }
+
+    public ReplyMode getReplyMode(){
+        return replyMode;
+    }
+
+    /**
+     * Removes the response listener.  In RELIABLE_TOPIC mode the reply topic of this dispatcher is also destroyed.
+     * Requests that are still in flight will not receive a response.
+     */
+    public void close(){
+        timeoutTask.cancel(false);
+        if (hedgingTask != null) hedgingTask.cancel(false);
+        if (requestBatcher != null) requestBatcher.close();
+        if (replyMode == ReplyMode.RELIABLE_TOPIC){
+            replyTopic.removeMessageListener(listenerRegistration);
+            replyTopic.destroy();
+        } else {
+            responseMap.removeEntryListener(listenerRegistration);
+            if (responseRemover != null) responseRemover.close();
+        }
+    }
+
+    /*
+     * Receives responses from the reply topic.  Lost messages are tolerated because the affected requests will
+     * simply time out, and the listener must never terminate because it is the only way responses are received.
+     */
+    private class ReplyListener implements ReliableMessageListener<Tuple2<RequestKey, P>> {
+        @Override
+        public void onMessage(Message<Tuple2<RequestKey, P>> message) {
+            Tuple2<RequestKey, P> reply = message.getMessageObject();
+            deliver(reply.f0(), reply.f1());
+        }
+
+        @Override
+        public long retrieveInitialSequence() {
+            // start from the next published message
+            return -1;
+        }
+
+        @Override
+        public void storeSequence(long sequence) {
+        }
+
+        @Override
+        public boolean isLossTolerant() {
+            return true;
+        }
+
+        @Override
+        public boolean isTerminal(Throwable failure) {
+            log.warn("Error while receiving responses from the reply topic", failure);
+            return false;
+        }
+    }
 }
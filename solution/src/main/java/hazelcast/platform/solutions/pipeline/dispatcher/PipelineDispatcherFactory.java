@@ -6,14 +6,35 @@ import com.hazelcast.map.listener.EntryAddedListener;
 import com.hazelcast.map.listener.EntryRemovedListener;
 import com.hazelcast.map.listener.EntryUpdatedListener;
 import hazelcast.platform.solutions.pipeline.dispatcher.internal.*;
+import hazelcast.platform.solutions.pipeline.dispatcher.metrics.DispatcherMetrics;
+import hazelcast.platform.solutions.pipeline.dispatcher.metrics.MicrometerDispatcherMetrics;
+import hazelcast.platform.solutions.pipeline.dispatcher.metrics.OpenTelemetryTraceExporter;
+import hazelcast.platform.solutions.pipeline.dispatcher.metrics.SimpleDispatcherMetrics;
+import hazelcast.platform.solutions.pipeline.dispatcher.metrics.TraceExporter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationContext;
 import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
 
 @Component
 public class PipelineDispatcherFactory implements
@@ -25,6 +46,12 @@ public class PipelineDispatcherFactory implements
 
     public static final String ROUTER_CONFIG_MAP = "router_config";
 
+    // the ringbuffer to which adaptive routers append their routing decisions, see AdaptiveRouter
+    public static final String ROUTING_DECISIONS = "routing_decisions";
+
+    // the largest number of dispatchers that are created at the same time during warm-up
+    private static final int WARMUP_THREADS = 8;
+
     @Value("${hazelcast.pipeline.dispatcher.embed_hazelcast:false}")
     private boolean embedHazelcast;
 
@@ -32,46 +59,397 @@ public class PipelineDispatcherFactory implements
     @Value("${hazelcast.pipeline.dispatcher.request_timeout_ms:3000}")
     private long requestTimeoutMs;
 
+    // how often each dispatcher looks for requests that have timed out, this bounds how late a timeout can be
+    @Value("${hazelcast.pipeline.dispatcher.timeout_check_interval_ms:10}")
+    private long timeoutCheckIntervalMs;
+
+    // the maximum number of requests that each dispatcher will allow to be in flight at the same time
+    @Value("${hazelcast.pipeline.dispatcher.max_pending_requests:10000}")
+    private int maxPendingRequests;
+
+    // how responses are returned to the dispatcher, see ReplyMode
+    @Value("${hazelcast.pipeline.dispatcher.reply_mode:SHARED_MAP}")
+    private ReplyMode replyMode;
+
+    // whether responses are removed from the response map as soon as they have been delivered
+    @Value("${hazelcast.pipeline.dispatcher.delete_on_delivery:true}")
+    private boolean deleteOnDelivery;
+
+    // the time-to-live of request map entries, 0 means they do not expire, negative means use the map configuration
+    @Value("${hazelcast.pipeline.dispatcher.request_ttl_ms:${hazelcast.pipeline.dispatcher.request_timeout_ms:3000}}")
+    private long requestTtlMs;
+
+    // the time-to-live configured for response maps, 0 means the dispatcher does not configure one
+    @Value("${hazelcast.pipeline.dispatcher.response_ttl_seconds:60}")
+    private int responseTtlSeconds;
+
+    // whether request writes from concurrent callers are coalesced into bulk writes, see RequestBatcher
+    @Value("${hazelcast.pipeline.dispatcher.batching.enabled:false}")
+    private boolean batchingEnabled;
+
+    @Value("${hazelcast.pipeline.dispatcher.batching.max_items:128}")
+    private int batchMaxItems;
+
+    @Value("${hazelcast.pipeline.dispatcher.batching.max_delay_micros:200}")
+    private long batchMaxDelayMicros;
+
+    @Value("${hazelcast.pipeline.dispatcher.batching.bypass_threshold:32}")
+    private int batchBypassThreshold;
+
+    // admission control, see LimiterMode and the README
+    @Value("${hazelcast.pipeline.dispatcher.limiter.mode:STATIC}")
+    private LimiterMode limiterMode;
+
+    @Value("${hazelcast.pipeline.dispatcher.limiter.limit:${hazelcast.pipeline.dispatcher.max_pending_requests:10000}}")
+    private int limiterLimit;
+
+    @Value("${hazelcast.pipeline.dispatcher.limiter.min_limit:8}")
+    private int limiterMinLimit;
+
+    @Value("${hazelcast.pipeline.dispatcher.limiter.max_limit:${hazelcast.pipeline.dispatcher.max_pending_requests:10000}}")
+    private int limiterMaxLimit;
+
+    @Value("${hazelcast.pipeline.dispatcher.limiter.backoff_ratio:0.9}")
+    private double limiterBackoffRatio;
+
+    @Value("${hazelcast.pipeline.dispatcher.limiter.latency_threshold_ms:0}")
+    private long limiterLatencyThresholdMs;
+
+    @Value("${hazelcast.pipeline.dispatcher.limiter.window_ms:100}")
+    private long limiterWindowMs;
+
+    @Value("${hazelcast.pipeline.dispatcher.limiter.reject_status:503}")
+    private int limiterRejectStatus;
+
+    // the services whose responses are cached by the dispatcher, see ResponseCache
+    @Value("${hazelcast.pipeline.dispatcher.cache.services:}")
+    private String []cachedServices;
+
+    @Value("${hazelcast.pipeline.dispatcher.cache.max_entries:10000}")
+    private long cacheMaxEntries;
+
+    @Value("${hazelcast.pipeline.dispatcher.cache.max_bytes:0}")
+    private long cacheMaxBytes;
+
+    @Value("${hazelcast.pipeline.dispatcher.cache.ttl_seconds:60}")
+    private int cacheTtlSeconds;
+
+    @Value("${hazelcast.pipeline.dispatcher.cache.shared:false}")
+    private boolean cacheShared;
+
+    // the services for which identical requests in flight at the same time are sent only once, see RequestCoalescer
+    @Value("${hazelcast.pipeline.dispatcher.coalescing.services:}")
+    private String []coalescedServices;
+
+    // the services for which requests without a response after the hedge delay are sent again, see HedgingPolicy
+    @Value("${hazelcast.pipeline.dispatcher.hedging.services:}")
+    private String []hedgedServices;
+
+    @Value("${hazelcast.pipeline.dispatcher.hedging.delay_ms:0}")
+    private long hedgingDelayMs;
+
+    @Value("${hazelcast.pipeline.dispatcher.hedging.percentile:95}")
+    private double hedgingPercentile;
+
+    @Value("${hazelcast.pipeline.dispatcher.hedging.budget:0.05}")
+    private double hedgingBudget;
+
+    // the number of chunks of a streamed response that may wait for a slow caller before the stream fails
+    @Value("${hazelcast.pipeline.dispatcher.streaming.max_buffered_chunks:256}")
+    private int streamingMaxBufferedChunks;
+
+    // String and byte[] requests of at least this many bytes are compressed, 0 disables compression
+    @Value("${hazelcast.pipeline.dispatcher.compression.threshold_bytes:0}")
+    private int compressionThresholdBytes;
+
+    // the fraction of requests whose latency is broken down into stages, see RequestTracing
+    @Value("${hazelcast.pipeline.dispatcher.tracing.sample_rate:0}")
+    private double tracingSampleRate;
+
+    // the largest number of requests of a priority that each dispatcher allows in flight, 0 means no limit, so that
+    // bulk requests cannot take all of the limiter's permits from HIGH priority requests, see RequestPriority
+    @Value("${hazelcast.pipeline.dispatcher.priority.normal_max_pending:0}")
+    private int priorityNormalMaxPending;
+
+    @Value("${hazelcast.pipeline.dispatcher.priority.low_max_pending:0}")
+    private int priorityLowMaxPending;
+
+    // whether dispatchers are created, and optionally exercised, at startup, see warmUp
+    @Value("${hazelcast.pipeline.dispatcher.warmup.enabled:false}")
+    private boolean warmupEnabled;
+
+    // the services to warm up, all of the services in the router_config map if none are given
+    @Value("${hazelcast.pipeline.dispatcher.warmup.services:}")
+    private String []warmupServices;
+
+    // the number of synthetic requests sent, one after the other, to each service, see WarmupRequests
+    @Value("${hazelcast.pipeline.dispatcher.warmup.round_trips:100}")
+    private int warmupRoundTrips;
+
+    // how long warm-up may take before the factory reports that it is ready anyway
+    @Value("${hazelcast.pipeline.dispatcher.warmup.timeout_ms:30000}")
+    private long warmupTimeoutMs;
+
+    // the file to which a sample of the requests is appended, for replay with TrafficReplayTool, empty disables capture
+    @Value("${hazelcast.pipeline.dispatcher.capture.file:}")
+    private String captureFile;
+
+    @Value("${hazelcast.pipeline.dispatcher.capture.sample_rate:0.01}")
+    private double captureSampleRate;
+
+    // the size at which the capture file stops growing
+    @Value("${hazelcast.pipeline.dispatcher.capture.max_bytes:1073741824}")
+    private long captureMaxBytes;
+
     public <R,P> PipelineDispatcher<R,P> dispatcherFor(String name){
-        PipelineDispatcher<R,P> result = dispatcherMap.computeIfAbsent(name, k -> {
-            String routerConfig = getRouterConfigFor(k);
-            RequestRouter rr;
-            if (routerConfig != null){
-                // currently, the only type of router supported is the MultiVersionRequestRouter, so we assume here
-                // that any entry in the ROUTER_CONFIG_MAP map is a MultiVersionRequestRouterConfig instance
-                rr = new WeightedRouter(k, routerConfig);
-            } else {
-                rr = new DefaultRequestRouter(k);
-            }
-            return new PipelineDispatcher<R,P>(
+        // once a dispatcher exists, looking it up does not lock
+        PipelineDispatcher<R,P> result = dispatcherMap.get(name);
+        if (result != null) return result;  // RETURN
+
+        result = dispatcherMap.computeIfAbsent(name, k ->
+            new PipelineDispatcher<R,P>(
                     this.requestKeyFactory,
                     hazelcastInstance,
                     name,
-                    rr,
-                    3000);
-        });
-        //TODO it seems like requestTimeoutMs is not getting populated so for now it is hard-coded
-
+                    newRouter(k, getRouterConfigFor(k)),
+                    settings,
+                    scheduler,
+                    metrics,
+                    traceExporter,
+                    recorder));
 
         return result;
     }
 
+    private RequestRouter newRouter(String name, String config){
+        return newRouter(name, config, hazelcastInstance);
+    }
+
+    /*
+     * config may be null, in which case the default router is returned.  Also used by TrafficReplayTool.
+     */
+    static RequestRouter newRouter(String name, String config, HazelcastInstance hazelcastInstance){
+        // a configuration with a "policy" is for an AdaptiveRouter, one that only selects a transport is for a
+        // service without versions and any other configuration is a WeightedRouter configuration
+        if (config == null)
+            return new DefaultRequestRouter(name, hazelcastInstance);
+        else if (AdaptiveRouterConfig.isAdaptive(config))
+            return new AdaptiveRouter(name, AdaptiveRouterConfig.parse(config), hazelcastInstance,
+                    TransportConfig.parse(config));
+        else if (TransportConfig.isTransportOnly(config))
+            return new DefaultRequestRouter(name, hazelcastInstance, TransportConfig.parse(config));
+        else
+            return new WeightedRouter(name, config, hazelcastInstance);
+    }
+
     private ConcurrentHashMap<String, PipelineDispatcher> dispatcherMap;
 
     private RequestKeyFactory requestKeyFactory;
 
     private HazelcastInstance hazelcastInstance;
 
+    private PipelineDispatcherSettings settings;
+
+    // used for background work such as request timeouts and batched removal of delivered responses
+    private ScheduledExecutorService scheduler;
+
+    private DispatcherMetrics metrics;
+
+    // receives traced requests, null if tracing is disabled or there is nothing to export to
+    private TraceExporter traceExporter;
+
+    // captures a sample of the requests of all dispatchers, null if capture is disabled
+    private TrafficRecorder recorder;
+
+    // false until warm-up has finished
+    private volatile boolean ready;
+
+    @Autowired
+    private ApplicationContext applicationContext;
+
     @PostConstruct
     public void initialize() {
         this.dispatcherMap = new ConcurrentHashMap<>();
 
+        this.settings = new PipelineDispatcherSettings();
+        settings.setRequestTimeoutMs(requestTimeoutMs);
+        settings.setTimeoutCheckIntervalMs(timeoutCheckIntervalMs);
+        settings.setMaxPendingRequests(maxPendingRequests);
+        settings.setReplyMode(replyMode);
+        settings.setDeleteOnDelivery(deleteOnDelivery);
+        settings.setRequestTtlMs(requestTtlMs);
+        settings.setResponseTtlSeconds(responseTtlSeconds);
+        settings.setBatchingEnabled(batchingEnabled);
+        settings.setBatchMaxItems(batchMaxItems);
+        settings.setBatchMaxDelayMicros(batchMaxDelayMicros);
+        settings.setBatchBypassThreshold(batchBypassThreshold);
+        settings.setLimiterMode(limiterMode);
+        settings.setLimiterLimit(limiterLimit);
+        settings.setLimiterMinLimit(limiterMinLimit);
+        settings.setLimiterMaxLimit(limiterMaxLimit);
+        settings.setLimiterBackoffRatio(limiterBackoffRatio);
+        settings.setLimiterLatencyThresholdMs(limiterLatencyThresholdMs);
+        settings.setLimiterWindowMs(limiterWindowMs);
+        settings.setLimiterRejectStatus(limiterRejectStatus);
+        settings.setCachedServices(toSet(cachedServices));
+        settings.setCacheMaxEntries(cacheMaxEntries);
+        settings.setCacheMaxBytes(cacheMaxBytes);
+        settings.setCacheTtlSeconds(cacheTtlSeconds);
+        settings.setCacheShared(cacheShared);
+        settings.setCoalescedServices(toSet(coalescedServices));
+        settings.setHedgedServices(toSet(hedgedServices));
+        settings.setHedgingDelayMs(hedgingDelayMs);
+        settings.setHedgingPercentile(hedgingPercentile);
+        settings.setHedgingBudget(hedgingBudget);
+        settings.setStreamingMaxBufferedChunks(streamingMaxBufferedChunks);
+        settings.setCompressionThresholdBytes(compressionThresholdBytes);
+        settings.setTracingSampleRate(tracingSampleRate);
+        settings.setPriorityNormalMaxPending(priorityNormalMaxPending);
+        settings.setPriorityLowMaxPending(priorityLowMaxPending);
+        log.info("Initializing with " + settings);
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "pipeline-dispatcher-scheduler");
+            t.setDaemon(true);
+            return t;
+        });
+
         this.requestKeyFactory = new RequestKeyFactory();
 
+        this.metrics = selectMetrics();
+        log.info("Recording metrics with " + metrics.getClass().getSimpleName());
+
+        this.traceExporter = tracingSampleRate > 0 ? selectTraceExporter() : null;
+        if (traceExporter != null) log.info("Exporting traces with " + traceExporter.getClass().getSimpleName());
+
         // create the hazelcast instance
         this.hazelcastInstance = HazelcastUtil.buildHazelcastInstance(embedHazelcast);
 
+        if (!captureFile.isEmpty()){
+            try {
+                this.recorder = new TrafficRecorder(hazelcastInstance, captureFile, captureSampleRate, captureMaxBytes);
+            } catch(IOException x){
+                throw new RuntimeException("Could not open the capture file " + captureFile, x);
+            }
+            log.info("Capturing " + captureSampleRate + " of requests to " + captureFile);
+        }
+
         hazelcastInstance.getMap(ROUTER_CONFIG_MAP).addEntryListener(this, true);
+
+        if (warmupEnabled){
+            Thread warmup = new Thread(this::warmUp, "pipeline-dispatcher-warmup");
+            warmup.setDaemon(true);
+            warmup.start();
+        } else {
+            ready = true;
+        }
+    }
+
+    /*
+     * Creating a dispatcher reads its routing configuration, creates proxies and registers a cluster listener, all
+     * of which are remote calls.  Doing that for every service before traffic arrives keeps the first requests after
+     * a deploy from stalling, and keeps concurrent callers of dispatcherFor from waiting for each other.  Dispatchers
+     * are created in parallel.  If there is a WarmupRequests bean, each service then receives a number of synthetic
+     * requests, one after the other, so that the code paths are compiled and the connections to the members that
+     * own the request and response partitions are established.  Failures are logged and do not stop the warm-up.
+     */
+    private void warmUp(){
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(WARMUP_THREADS, r -> {
+            Thread t = new Thread(r, "pipeline-dispatcher-warmup-worker");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            Set<String> services = toSet(warmupServices);
+            if (services.isEmpty()) services = hazelcastInstance.<String,String>getMap(ROUTER_CONFIG_MAP).keySet();
+
+            WarmupRequests requests = applicationContext.getBeanProvider(WarmupRequests.class).getIfAvailable();
+            List<CompletableFuture<Object>> results = new ArrayList<>(services.size());
+            for(String name: services){
+                results.add(CompletableFuture.supplyAsync(() -> this.<Object,Object>dispatcherFor(name), pool)
+                        .thenCompose(dispatcher -> sendWarmupRequests(name, dispatcher, requests))
+                        .exceptionally(t -> {
+                            log.warn("Could not warm up \"" + name + "\"", t);
+                            return null;
+                        }));
+            }
+
+            CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).get(warmupTimeoutMs,
+                    TimeUnit.MILLISECONDS);
+            log.info("Warmed up " + services.size() + " services in " +
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+        } catch(TimeoutException x){
+            log.warn("Warm-up did not finish within " + warmupTimeoutMs + " ms, reporting ready anyway");
+        } catch(InterruptedException x){
+            Thread.currentThread().interrupt();
+        } catch(ExecutionException | RuntimeException x){
+            log.warn("Warm-up failed, reporting ready anyway", x);
+        } finally {
+            pool.shutdown();
+            ready = true;
+        }
+    }
+
+    private CompletableFuture<Object> sendWarmupRequests(String name, PipelineDispatcher<Object,Object> dispatcher,
+                                                         WarmupRequests requests){
+        Object request = requests == null ? null : requests.requestFor(name);
+        CompletableFuture<Object> result = CompletableFuture.completedFuture(null);
+        if (request == null) return result;  // RETURN
+
+        for(int i=0; i < warmupRoundTrips; ++i) result = result.thenCompose(v -> dispatcher.sendWarmup(request));
+        return result;
+    }
+
+    /**
+     * Reports whether the dispatchers are ready for traffic.  Use it in a readiness check so that a load balancer
+     * only sends traffic to an instance once it has warmed up.
+     *
+     * @return true once warm-up has finished, or has timed out, and always true if warm-up is disabled
+     */
+    public boolean isReady(){
+        return ready;
+    }
+
+    /*
+     * Uses a DispatcherMetrics bean if the application provides one, then Micrometer if it is available.  Micrometer
+     * is optional, so MicrometerDispatcherMetrics must not be loaded unless the MeterRegistry class is present.
+     */
+    private DispatcherMetrics selectMetrics(){
+        DispatcherMetrics result = applicationContext.getBeanProvider(DispatcherMetrics.class).getIfAvailable();
+        if (result != null) return result;  // RETURN
+
+        if (ClassUtils.isPresent(MicrometerDispatcherMetrics.MICROMETER_REGISTRY_CLASS, getClass().getClassLoader())){
+            result = MicrometerSupport.newMetrics(applicationContext);
+            if (result != null) return result;  // RETURN
+        }
+
+        return new SimpleDispatcherMetrics();
+    }
+
+    /*
+     * Uses a TraceExporter bean if the application provides one, then OpenTelemetry if it is available.  Like
+     * Micrometer, OpenTelemetry is optional.
+     */
+    private TraceExporter selectTraceExporter(){
+        TraceExporter result = applicationContext.getBeanProvider(TraceExporter.class).getIfAvailable();
+        if (result != null) return result;  // RETURN
+
+        if (ClassUtils.isPresent(OpenTelemetryTraceExporter.OPENTELEMETRY_CLASS, getClass().getClassLoader()))
+            return new OpenTelemetryTraceExporter();  // RETURN
+
+        return null;
+    }
+
+    /**
+     * @return the metrics used by all dispatchers created by this factory
+     */
+    public DispatcherMetrics getMetrics(){
+        return metrics;
+    }
+
+    private static Set<String> toSet(String []names){
+        return Arrays.stream(names).map(String::trim).filter(name -> !name.isEmpty()).collect(Collectors.toSet());
     }
 
     /**
@@ -90,6 +468,9 @@ public class PipelineDispatcherFactory implements
 
     @PreDestroy
     public void close(){
+        for (PipelineDispatcher dispatcher: dispatcherMap.values()) dispatcher.close();
+        if (recorder != null) recorder.close();
+        scheduler.shutdown();
         hazelcastInstance.shutdown();
     }
 
@@ -111,18 +492,42 @@ public class PipelineDispatcherFactory implements
         handleRemove(name);
     }
 
-    private <R,P> void handleAddUpdate(String name, String config){
-        // currently, only the WeightedRouter is supported
-        RequestRouter rr =  new WeightedRouter(name, config);
-        dispatcherMap.put(name,
-                new PipelineDispatcher<R,P>(this.requestKeyFactory, hazelcastInstance, name, rr, requestTimeoutMs));
-
+    private void handleAddUpdate(String name, String config){
         log.info("Received routing update for \"" + name + "\" : " + config);
+        updateRouter(name, config);
     }
 
-    private <R,P> void handleRemove(String name){
-        RequestRouter rr = new DefaultRequestRouter(name);
-        dispatcherMap.put(name, new PipelineDispatcher<R,P>(this.requestKeyFactory, hazelcastInstance, name, rr, requestTimeoutMs));
+    private void handleRemove(String name){
+        updateRouter(name, null);
         log.info("Set routing policy for \"" + name + "\" to default.");
     }
+
+    /*
+     * Swaps the router of an existing dispatcher.  If there is no dispatcher for the service yet, there is nothing
+     * to do because dispatcherFor reads the current configuration when it creates one.  computeIfPresent waits for a
+     * concurrent dispatcherFor call to finish creating the dispatcher, so an update cannot be lost.  The router is
+     * only built if there is a dispatcher, because building one can have side effects, such as the "configured"
+     * decision that an AdaptiveRouter publishes.
+     */
+    private void updateRouter(String name, String config){
+        dispatcherMap.computeIfPresent(name, (k, dispatcher) -> {
+            try {
+                dispatcher.setRequestRouter(newRouter(k, config));
+            } catch(RuntimeException x){
+                log.error("Ignoring invalid routing update for \"" + name + "\" : " + config, x);
+            }
+            return dispatcher;
+        });
+    }
+
+    /*
+     * Isolates the references to Micrometer types so they are only resolved when Micrometer is on the classpath.
+     */
+    private static class MicrometerSupport {
+        static DispatcherMetrics newMetrics(ApplicationContext context){
+            io.micrometer.core.instrument.MeterRegistry registry =
+                    context.getBeanProvider(io.micrometer.core.instrument.MeterRegistry.class).getIfAvailable();
+            return registry == null ? null : new MicrometerDispatcherMetrics(registry);
+        }
+    }
 }
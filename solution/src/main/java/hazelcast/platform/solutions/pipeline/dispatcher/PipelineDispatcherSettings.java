@@ -0,0 +1,431 @@
+package hazelcast.platform.solutions.pipeline.dispatcher;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Settings shared by all of the PipelineDispatchers created by one PipelineDispatcherFactory.  The factory populates
+ * these from the Spring Environment.  See README.md for a description of each property.
+ */
+public class PipelineDispatcherSettings {
+
+    private long requestTimeoutMs = 3000;
+
+    private int maxPendingRequests = 10000;
+
+    private ReplyMode replyMode = ReplyMode.SHARED_MAP;
+
+    private boolean deleteOnDelivery = true;
+
+    private long requestTtlMs = 3000;
+
+    private int responseTtlSeconds = 60;
+
+    private int removalBatchSize = 256;
+
+    private long removalFlushIntervalMs = 10;
+
+    private boolean batchingEnabled = false;
+
+    private int batchMaxItems = 128;
+
+    private long batchMaxDelayMicros = 200;
+
+    private int batchBypassThreshold = 32;
+
+    private LimiterMode limiterMode = LimiterMode.STATIC;
+
+    private int limiterLimit = 10000;
+
+    private int limiterMinLimit = 8;
+
+    private int limiterMaxLimit = 10000;
+
+    private double limiterBackoffRatio = 0.9;
+
+    private long limiterLatencyThresholdMs = 0;
+
+    private long limiterWindowMs = 100;
+
+    private int limiterRejectStatus = 503;
+
+    // the names of the services whose responses are cached, see ResponseCache
+    private Set<String> cachedServices = Collections.emptySet();
+
+    private long cacheMaxEntries = 10000;
+
+    private long cacheMaxBytes = 0;
+
+    private int cacheTtlSeconds = 60;
+
+    private boolean cacheShared = false;
+
+    // the names of the services that coalesce identical requests, see RequestCoalescer
+    private Set<String> coalescedServices = Collections.emptySet();
+
+    // how often each dispatcher times out requests, see PipelineDispatcher.sendAsync
+    private long timeoutCheckIntervalMs = 10;
+
+    // the names of the services whose slow requests are sent a second time, see HedgingPolicy
+    private Set<String> hedgedServices = Collections.emptySet();
+
+    private long hedgingDelayMs = 0;
+
+    private double hedgingPercentile = 95.0;
+
+    private double hedgingBudget = 0.05;
+
+    // the number of chunks of a streamed response that may wait for a slow caller, see ChunkStream
+    private int streamingMaxBufferedChunks = 256;
+
+    // String and byte[] requests of at least this size are compressed, 0 disables compression, see CompressedPayload
+    private int compressionThresholdBytes = 0;
+
+    // the fraction of requests that are traced, see RequestTracing
+    private double tracingSampleRate = 0.0;
+
+    // the largest number of NORMAL and LOW priority requests in flight, 0 means no limit, see RequestPriority
+    private int priorityNormalMaxPending = 0;
+
+    private int priorityLowMaxPending = 0;
+
+    public long getRequestTimeoutMs() {
+        return requestTimeoutMs;
+    }
+
+    public void setRequestTimeoutMs(long requestTimeoutMs) {
+        this.requestTimeoutMs = requestTimeoutMs;
+    }
+
+    public int getMaxPendingRequests() {
+        return maxPendingRequests;
+    }
+
+    public void setMaxPendingRequests(int maxPendingRequests) {
+        this.maxPendingRequests = maxPendingRequests;
+    }
+
+    public ReplyMode getReplyMode() {
+        return replyMode;
+    }
+
+    public void setReplyMode(ReplyMode replyMode) {
+        this.replyMode = replyMode;
+    }
+
+    public boolean isDeleteOnDelivery() {
+        return deleteOnDelivery;
+    }
+
+    public void setDeleteOnDelivery(boolean deleteOnDelivery) {
+        this.deleteOnDelivery = deleteOnDelivery;
+    }
+
+    /**
+     * @return the time-to-live applied to each request map entry, 0 means that entries do not expire
+     */
+    public long getRequestTtlMs() {
+        return requestTtlMs;
+    }
+
+    public void setRequestTtlMs(long requestTtlMs) {
+        this.requestTtlMs = requestTtlMs;
+    }
+
+    /**
+     * @return the time-to-live configured for the response map, 0 means that the dispatcher does not configure one
+     */
+    public int getResponseTtlSeconds() {
+        return responseTtlSeconds;
+    }
+
+    public void setResponseTtlSeconds(int responseTtlSeconds) {
+        this.responseTtlSeconds = responseTtlSeconds;
+    }
+
+    public int getRemovalBatchSize() {
+        return removalBatchSize;
+    }
+
+    public void setRemovalBatchSize(int removalBatchSize) {
+        this.removalBatchSize = removalBatchSize;
+    }
+
+    public long getRemovalFlushIntervalMs() {
+        return removalFlushIntervalMs;
+    }
+
+    public void setRemovalFlushIntervalMs(long removalFlushIntervalMs) {
+        this.removalFlushIntervalMs = removalFlushIntervalMs;
+    }
+
+    public boolean isBatchingEnabled() {
+        return batchingEnabled;
+    }
+
+    public void setBatchingEnabled(boolean batchingEnabled) {
+        this.batchingEnabled = batchingEnabled;
+    }
+
+    public int getBatchMaxItems() {
+        return batchMaxItems;
+    }
+
+    public void setBatchMaxItems(int batchMaxItems) {
+        this.batchMaxItems = batchMaxItems;
+    }
+
+    public long getBatchMaxDelayMicros() {
+        return batchMaxDelayMicros;
+    }
+
+    public void setBatchMaxDelayMicros(long batchMaxDelayMicros) {
+        this.batchMaxDelayMicros = batchMaxDelayMicros;
+    }
+
+    /**
+     * @return the number of unacknowledged request writes below which requests are sent immediately, bypassing
+     * the batch
+     */
+    public int getBatchBypassThreshold() {
+        return batchBypassThreshold;
+    }
+
+    public void setBatchBypassThreshold(int batchBypassThreshold) {
+        this.batchBypassThreshold = batchBypassThreshold;
+    }
+
+    public LimiterMode getLimiterMode() {
+        return limiterMode;
+    }
+
+    public void setLimiterMode(LimiterMode limiterMode) {
+        this.limiterMode = limiterMode;
+    }
+
+    public int getLimiterLimit() {
+        return limiterLimit;
+    }
+
+    public void setLimiterLimit(int limiterLimit) {
+        this.limiterLimit = limiterLimit;
+    }
+
+    public int getLimiterMinLimit() {
+        return limiterMinLimit;
+    }
+
+    public void setLimiterMinLimit(int limiterMinLimit) {
+        this.limiterMinLimit = limiterMinLimit;
+    }
+
+    public int getLimiterMaxLimit() {
+        return limiterMaxLimit;
+    }
+
+    public void setLimiterMaxLimit(int limiterMaxLimit) {
+        this.limiterMaxLimit = limiterMaxLimit;
+    }
+
+    public double getLimiterBackoffRatio() {
+        return limiterBackoffRatio;
+    }
+
+    public void setLimiterBackoffRatio(double limiterBackoffRatio) {
+        this.limiterBackoffRatio = limiterBackoffRatio;
+    }
+
+    public long getLimiterLatencyThresholdMs() {
+        return limiterLatencyThresholdMs;
+    }
+
+    public void setLimiterLatencyThresholdMs(long limiterLatencyThresholdMs) {
+        this.limiterLatencyThresholdMs = limiterLatencyThresholdMs;
+    }
+
+    public long getLimiterWindowMs() {
+        return limiterWindowMs;
+    }
+
+    public void setLimiterWindowMs(long limiterWindowMs) {
+        this.limiterWindowMs = limiterWindowMs;
+    }
+
+    public int getLimiterRejectStatus() {
+        return limiterRejectStatus;
+    }
+
+    public void setLimiterRejectStatus(int limiterRejectStatus) {
+        this.limiterRejectStatus = limiterRejectStatus;
+    }
+
+    public Set<String> getCachedServices() {
+        return cachedServices;
+    }
+
+    public void setCachedServices(Set<String> cachedServices) {
+        this.cachedServices = cachedServices;
+    }
+
+    public long getCacheMaxEntries() {
+        return cacheMaxEntries;
+    }
+
+    public void setCacheMaxEntries(long cacheMaxEntries) {
+        this.cacheMaxEntries = cacheMaxEntries;
+    }
+
+    public long getCacheMaxBytes() {
+        return cacheMaxBytes;
+    }
+
+    public void setCacheMaxBytes(long cacheMaxBytes) {
+        this.cacheMaxBytes = cacheMaxBytes;
+    }
+
+    public int getCacheTtlSeconds() {
+        return cacheTtlSeconds;
+    }
+
+    public void setCacheTtlSeconds(int cacheTtlSeconds) {
+        this.cacheTtlSeconds = cacheTtlSeconds;
+    }
+
+    public boolean isCacheShared() {
+        return cacheShared;
+    }
+
+    public void setCacheShared(boolean cacheShared) {
+        this.cacheShared = cacheShared;
+    }
+
+    public Set<String> getCoalescedServices() {
+        return coalescedServices;
+    }
+
+    public void setCoalescedServices(Set<String> coalescedServices) {
+        this.coalescedServices = coalescedServices;
+    }
+
+    public long getTimeoutCheckIntervalMs() {
+        return timeoutCheckIntervalMs;
+    }
+
+    public void setTimeoutCheckIntervalMs(long timeoutCheckIntervalMs) {
+        this.timeoutCheckIntervalMs = timeoutCheckIntervalMs;
+    }
+
+    public Set<String> getHedgedServices() {
+        return hedgedServices;
+    }
+
+    public void setHedgedServices(Set<String> hedgedServices) {
+        this.hedgedServices = hedgedServices;
+    }
+
+    public long getHedgingDelayMs() {
+        return hedgingDelayMs;
+    }
+
+    public void setHedgingDelayMs(long hedgingDelayMs) {
+        this.hedgingDelayMs = hedgingDelayMs;
+    }
+
+    public double getHedgingPercentile() {
+        return hedgingPercentile;
+    }
+
+    public void setHedgingPercentile(double hedgingPercentile) {
+        this.hedgingPercentile = hedgingPercentile;
+    }
+
+    public double getHedgingBudget() {
+        return hedgingBudget;
+    }
+
+    public void setHedgingBudget(double hedgingBudget) {
+        this.hedgingBudget = hedgingBudget;
+    }
+
+    public int getStreamingMaxBufferedChunks() {
+        return streamingMaxBufferedChunks;
+    }
+
+    public void setStreamingMaxBufferedChunks(int streamingMaxBufferedChunks) {
+        this.streamingMaxBufferedChunks = streamingMaxBufferedChunks;
+    }
+
+    public int getCompressionThresholdBytes() {
+        return compressionThresholdBytes;
+    }
+
+    public void setCompressionThresholdBytes(int compressionThresholdBytes) {
+        this.compressionThresholdBytes = compressionThresholdBytes;
+    }
+
+    public double getTracingSampleRate() {
+        return tracingSampleRate;
+    }
+
+    public void setTracingSampleRate(double tracingSampleRate) {
+        this.tracingSampleRate = tracingSampleRate;
+    }
+
+    public int getPriorityNormalMaxPending() {
+        return priorityNormalMaxPending;
+    }
+
+    public void setPriorityNormalMaxPending(int priorityNormalMaxPending) {
+        this.priorityNormalMaxPending = priorityNormalMaxPending;
+    }
+
+    public int getPriorityLowMaxPending() {
+        return priorityLowMaxPending;
+    }
+
+    public void setPriorityLowMaxPending(int priorityLowMaxPending) {
+        this.priorityLowMaxPending = priorityLowMaxPending;
+    }
+
+    @Override
+    public String toString() {
+        return "PipelineDispatcherSettings{" +
+                "requestTimeoutMs=" + requestTimeoutMs +
+                ", maxPendingRequests=" + maxPendingRequests +
+                ", replyMode=" + replyMode +
+                ", deleteOnDelivery=" + deleteOnDelivery +
+                ", requestTtlMs=" + requestTtlMs +
+                ", responseTtlSeconds=" + responseTtlSeconds +
+                ", removalBatchSize=" + removalBatchSize +
+                ", removalFlushIntervalMs=" + removalFlushIntervalMs +
+                ", batchingEnabled=" + batchingEnabled +
+                ", batchMaxItems=" + batchMaxItems +
+                ", batchMaxDelayMicros=" + batchMaxDelayMicros +
+                ", batchBypassThreshold=" + batchBypassThreshold +
+                ", limiterMode=" + limiterMode +
+                ", limiterLimit=" + limiterLimit +
+                ", limiterMinLimit=" + limiterMinLimit +
+                ", limiterMaxLimit=" + limiterMaxLimit +
+                ", limiterBackoffRatio=" + limiterBackoffRatio +
+                ", limiterLatencyThresholdMs=" + limiterLatencyThresholdMs +
+                ", limiterWindowMs=" + limiterWindowMs +
+                ", limiterRejectStatus=" + limiterRejectStatus +
+                ", cachedServices=" + cachedServices +
+                ", cacheMaxEntries=" + cacheMaxEntries +
+                ", cacheMaxBytes=" + cacheMaxBytes +
+                ", cacheTtlSeconds=" + cacheTtlSeconds +
+                ", cacheShared=" + cacheShared +
+                ", coalescedServices=" + coalescedServices +
+                ", timeoutCheckIntervalMs=" + timeoutCheckIntervalMs +
+                ", hedgedServices=" + hedgedServices +
+                ", hedgingDelayMs=" + hedgingDelayMs +
+                ", hedgingPercentile=" + hedgingPercentile +
+                ", hedgingBudget=" + hedgingBudget +
+                ", streamingMaxBufferedChunks=" + streamingMaxBufferedChunks +
+                ", compressionThresholdBytes=" + compressionThresholdBytes +
+                ", tracingSampleRate=" + tracingSampleRate +
+                ", priorityNormalMaxPending=" + priorityNormalMaxPending +
+                ", priorityLowMaxPending=" + priorityLowMaxPending +
+                '}';
+    }
+}
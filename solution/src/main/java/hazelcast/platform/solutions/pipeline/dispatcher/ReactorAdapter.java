@@ -0,0 +1,44 @@
+package hazelcast.platform.solutions.pipeline.dispatcher;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.adapter.JdkFlowAdapter;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Adapts {@link PipelineDispatcher#sendAsync(Object)} and {@link PipelineDispatcher#sendStreaming(Object)} to Project
+ * Reactor, for use in Spring WebFlux handlers.
+ * <p>
+ * Reactor is an optional dependency.  This class must only be loaded if Reactor is on the classpath.
+ */
+public final class ReactorAdapter {
+
+    private ReactorAdapter(){
+    }
+
+    /**
+     * Returns a Mono that sends the request when it is subscribed to and emits the response.  Like any Mono, it
+     * sends nothing unless it is subscribed to, and it sends the request again each time it is subscribed to.
+     * <p>
+     * A {@link DispatchException} is mapped to a ResponseStatusException with the same status, so WebFlux responds
+     * to failures with the same status codes as {@link PipelineDispatcher#send(Object)}.
+     */
+    public static <R,P> Mono<P> send(PipelineDispatcher<R,P> dispatcher, R request){
+        return Mono.fromFuture(() -> dispatcher.sendAsync(request))
+                .onErrorMap(DispatchException.class,
+                        x -> new ResponseStatusException(HttpStatus.valueOf(x.getStatus()), x.getMessage(), x));
+    }
+
+    /**
+     * Returns a Flux that sends the request to a service that streams its response when it is subscribed to, and
+     * emits the values of the chunks.  Demand from the subscriber is passed on, so WebFlux only receives values as
+     * fast as it can write them, and a subscriber that falls too far behind fails with the overflow error.  Errors are
+     * mapped as in {@link #send}.
+     */
+    public static <R,T> Flux<T> stream(PipelineDispatcher<R,?> dispatcher, R request){
+        return Flux.defer(() -> JdkFlowAdapter.flowPublisherToFlux(dispatcher.<T>sendStreaming(request)))
+                .onErrorMap(DispatchException.class,
+                        x -> new ResponseStatusException(HttpStatus.valueOf(x.getStatus()), x.getMessage(), x));
+    }
+}
@@ -0,0 +1,274 @@
+package hazelcast.platform.solutions.pipeline.dispatcher;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.jet.core.Processor;
+import com.hazelcast.jet.core.metrics.Metric;
+import com.hazelcast.jet.core.metrics.Metrics;
+import com.hazelcast.jet.datamodel.Tuple2;
+import com.hazelcast.jet.pipeline.Sink;
+import com.hazelcast.jet.pipeline.SinkBuilder;
+import com.hazelcast.jet.pipeline.Sinks;
+import com.hazelcast.logging.ILogger;
+import com.hazelcast.map.IMap;
+import com.hazelcast.topic.ITopic;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Utilities used by service pipelines to return responses to the dispatcher that sent the request.
+ */
+public class ReplyChannels {
+
+    /**
+     * The name of the Jet user metric that counts replies that could not be published in RELIABLE_TOPIC mode.
+     */
+    public static final String FAILED_REPLIES_METRIC = "failedReplies";
+
+    /**
+     * The name of the Jet user metric that counts replies that were not published in RELIABLE_TOPIC mode because the
+     * deadline of their request had passed.
+     */
+    public static final String LATE_REPLIES_METRIC = "lateReplies";
+
+    /**
+     * The name of the Jet user metric that counts chunks of streamed responses that could not be written to the
+     * response map in SHARED_MAP mode.
+     */
+    public static final String FAILED_CHUNKS_METRIC = "failedChunks";
+
+    /**
+     * @return the name of the map that receives responses for the given service in SHARED_MAP mode
+     */
+    public static String responseMapName(String serviceName){
+        return serviceName + "_response";
+    }
+
+    /**
+     * @return the name of the reliable topic that receives responses for one dispatcher in RELIABLE_TOPIC mode
+     */
+    public static String replyTopicName(String serviceName, UUID clientId){
+        return serviceName + "_reply_" + clientId;
+    }
+
+    /**
+     * Returns a Sink that delivers responses according to the given reply mode.  The key of each entry must be the
+     * key of the originating request and the value is the response.  The keys of traced requests are stamped with
+     * the time at which the response was written, see {@link RequestTracing}.
+     *
+     * @param replyMode must match the reply mode of the dispatchers that send requests to this pipeline
+     * @param serviceName the name of the service, e.g. "reverse"
+     */
+    public static <P> Sink<Map.Entry<RequestKey, P>> responseSink(ReplyMode replyMode, String serviceName){
+        return responseSink(replyMode, serviceName, 0);
+    }
+
+    /**
+     * Returns a Sink that delivers responses according to the given reply mode and compresses responses of at least
+     * compressionThresholdBytes, see {@link CompressedPayload}.  The dispatcher decompresses them whatever its own
+     * configuration.
+     *
+     * @param compressionThresholdBytes 0 or less disables compression
+     */
+    public static <P> Sink<Map.Entry<RequestKey, P>> responseSink(ReplyMode replyMode, String serviceName,
+                                                                 int compressionThresholdBytes){
+        if (replyMode == ReplyMode.RELIABLE_TOPIC)
+            return replyTopicSink(serviceName, compressionThresholdBytes);
+        else
+            return Sinks.<Map.Entry<RequestKey, P>, RequestKey, Object>map(responseMapName(serviceName),
+                    entry -> RequestTracing.emitted(entry.getKey()),
+                    entry -> CompressedPayload.compress(entry.getValue(), compressionThresholdBytes));
+    }
+
+    /**
+     * Returns a Sink for the chunks of streamed responses, see {@link DispatcherPipelines#stream}.  In SHARED_MAP
+     * mode, each chunk is written to the response map with its own set call, under the key of the request.  Sinks.map
+     * is not used because it merges writes to the same key.  Each processor has at most a fixed number of writes
+     * outstanding and waits for one to complete before it starts another, so a slow cluster slows the pipeline down.
+     * Failed writes are counted in the "failedChunks" Jet user metric.  In RELIABLE_TOPIC mode, each chunk is
+     * published to the reply topic of the dispatcher.
+     */
+    public static <T> Sink<Map.Entry<RequestKey, ResponseChunk<T>>> streamingResponseSink(ReplyMode replyMode,
+                                                                                      String serviceName){
+        return streamingResponseSink(replyMode, serviceName, 0);
+    }
+
+    /**
+     * Returns a Sink for the chunks of streamed responses that compresses the value of each chunk of at least
+     * compressionThresholdBytes, see {@link CompressedPayload}.
+     *
+     * @param compressionThresholdBytes 0 or less disables compression
+     */
+    public static <T> Sink<Map.Entry<RequestKey, ResponseChunk<T>>> streamingResponseSink(ReplyMode replyMode,
+            String serviceName, int compressionThresholdBytes){
+        if (replyMode == ReplyMode.RELIABLE_TOPIC)
+            return replyTopicSink(serviceName, compressionThresholdBytes);  // RETURN
+
+        String responseMapName = responseMapName(serviceName);
+        return SinkBuilder.sinkBuilder("chunkMapSink(" + responseMapName + ")",
+                        ctx -> new ChunkWriter<T>(ctx, responseMapName, compressionThresholdBytes))
+                .<Map.Entry<RequestKey, ResponseChunk<T>>>receiveFn(ChunkWriter::write)
+                .destroyFn(ChunkWriter::awaitOutstanding)
+                .build();
+    }
+
+    /**
+     * Returns a Sink that publishes each response to the reply topic of the dispatcher that sent the request.  The
+     * client id of the dispatcher is taken from the request key.
+     */
+    public static <P> Sink<Map.Entry<RequestKey, P>> replyTopicSink(String serviceName){
+        return replyTopicSink(serviceName, 0);
+    }
+
+    /**
+     * Returns a Sink that publishes each response to the reply topic of the dispatcher that sent the request and
+     * compresses responses of at least compressionThresholdBytes, see {@link CompressedPayload}.
+     *
+     * @param compressionThresholdBytes 0 or less disables compression
+     */
+    public static <P> Sink<Map.Entry<RequestKey, P>> replyTopicSink(String serviceName, int compressionThresholdBytes){
+        return SinkBuilder.sinkBuilder("replyTopicSink(" + serviceName + ")",
+                        ctx -> new ReplyPublisher<P>(ctx, serviceName, compressionThresholdBytes))
+                .<Map.Entry<RequestKey, P>>receiveFn(ReplyPublisher::publish)
+                .build();
+    }
+
+    /*
+     * The chunks of a streamed response carry positions that the dispatcher needs before decompressing, so only the
+     * value inside a chunk is compressed
+     */
+    private static Object compressResponse(Object response, int compressionThresholdBytes){
+        if (!(response instanceof ResponseChunk))
+            return CompressedPayload.compress(response, compressionThresholdBytes);  // RETURN
+
+        ResponseChunk<?> chunk = (ResponseChunk<?>) response;
+        Object value = CompressedPayload.compress(chunk.getValue(), compressionThresholdBytes);
+        return value == chunk.getValue() ? chunk : new ResponseChunk<>(chunk.getIndex(), value, chunk.isLast());
+    }
+
+    /*
+     * Writes chunks to the response map.  A write that fails leaves a gap in its stream, which the dispatcher reports
+     * when the stream times out, so failures are only logged, at most once per LOG_INTERVAL_MS, and counted in the
+     * "failedChunks" Jet user metric.  SinkBuilder sinks are not cooperative, so write may block while
+     * MAX_OUTSTANDING writes are in progress.
+     */
+    private static class ChunkWriter<T> {
+        private static final int MAX_OUTSTANDING = 1024;
+
+        private static final long AWAIT_TIMEOUT_MS = 5_000;
+
+        private static final long LOG_INTERVAL_MS = 10_000;
+
+        private final IMap<RequestKey, Object> map;
+        private final ILogger logger;
+        private final int compressionThresholdBytes;
+        private final Semaphore outstanding;
+        private Metric failedChunks;
+        private volatile long lastLogMillis;
+
+        ChunkWriter(Processor.Context context, String responseMapName, int compressionThresholdBytes){
+            this.map = context.hazelcastInstance().getMap(responseMapName);
+            this.logger = context.logger();
+            this.compressionThresholdBytes = compressionThresholdBytes;
+            this.outstanding = new Semaphore(MAX_OUTSTANDING);
+        }
+
+        void write(Map.Entry<RequestKey, ResponseChunk<T>> chunk) throws InterruptedException {
+            // created on the processor thread, incremented from completion callbacks
+            if (failedChunks == null) failedChunks = Metrics.threadSafeMetric(FAILED_CHUNKS_METRIC);
+
+            outstanding.acquire();
+            map.setAsync(chunk.getKey(), compressResponse(chunk.getValue(), compressionThresholdBytes))
+                    .whenComplete((v, t) -> {
+                        outstanding.release();
+                        if (t != null) onFailure(t);
+                    });
+        }
+
+        // called when the job completes, gives the last writes a chance to finish without holding up a cancellation
+        void awaitOutstanding() throws InterruptedException {
+            if (outstanding.tryAcquire(MAX_OUTSTANDING, AWAIT_TIMEOUT_MS, TimeUnit.MILLISECONDS))
+                outstanding.release(MAX_OUTSTANDING);
+        }
+
+        private void onFailure(Throwable t){
+            failedChunks.increment();
+            long now = System.currentTimeMillis();
+            if (now - lastLogMillis < LOG_INTERVAL_MS) return;  // RETURN
+
+            lastLogMillis = now;
+            logger.warning("Could not write a response chunk to " + map.getName(), t);
+        }
+    }
+
+    /*
+     * Replies to a request whose deadline has passed are not published.  The dispatcher has already timed the request
+     * out and may have closed, and publishing to the topic of a closed dispatcher would re-create its ring buffer,
+     * which nothing would destroy.  Failed publishes are logged, at most once per LOG_INTERVAL_MS, and counted in the
+     * "failedReplies" Jet user metric.
+     */
+    private static class ReplyPublisher<P> {
+        // the number of topic proxies kept, the least recently used ones are dropped first
+        private static final int MAX_TOPICS = 256;
+
+        // tolerates clock differences between the dispatcher and the member
+        private static final long LATE_REPLY_GRACE_MS = 1000;
+
+        private static final long LOG_INTERVAL_MS = 10_000;
+
+        private final HazelcastInstance hz;
+        private final ILogger logger;
+        private final String serviceName;
+        private final int compressionThresholdBytes;
+        private final Map<UUID, ITopic<Tuple2<RequestKey, Object>>> topics;
+        private Metric failedReplies;
+        private Metric lateReplies;
+        private volatile long lastLogMillis;
+
+        ReplyPublisher(Processor.Context context, String serviceName, int compressionThresholdBytes){
+            this.hz = context.hazelcastInstance();
+            this.logger = context.logger();
+            this.serviceName = serviceName;
+            this.compressionThresholdBytes = compressionThresholdBytes;
+            this.topics = new LinkedHashMap<>(16, 0.75f, true){
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<UUID, ITopic<Tuple2<RequestKey, Object>>> eldest) {
+                    return size() > MAX_TOPICS;
+                }
+            };
+        }
+
+        void publish(Map.Entry<RequestKey, P> response){
+            if (failedReplies == null){
+                // created on the processor thread, incremented from completion callbacks
+                failedReplies = Metrics.threadSafeMetric(FAILED_REPLIES_METRIC);
+                lateReplies = Metrics.metric(LATE_REPLIES_METRIC);
+            }
+
+            if (response.getKey().isExpired(System.currentTimeMillis() - LATE_REPLY_GRACE_MS)){
+                lateReplies.increment();
+                return;  // RETURN
+            }
+
+            UUID clientId = response.getKey().getClientId();
+            ITopic<Tuple2<RequestKey, Object>> topic = topics.computeIfAbsent(clientId,
+                    k -> hz.getReliableTopic(replyTopicName(serviceName, k)));
+            topic.publishAsync(Tuple2.tuple2(RequestTracing.emitted(response.getKey()),
+                    compressResponse(response.getValue(), compressionThresholdBytes))).whenComplete((v, t) -> {
+                if (t != null) onFailure(topic, t);
+            });
+        }
+
+        private void onFailure(ITopic<?> topic, Throwable t){
+            failedReplies.increment();
+            long now = System.currentTimeMillis();
+            if (now - lastLogMillis < LOG_INTERVAL_MS) return;  // RETURN
+
+            lastLogMillis = now;
+            logger.warning("Could not publish a reply to " + topic.getName(), t);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package hazelcast.platform.solutions.pipeline.dispatcher;
+
+/**
+ * Controls how responses travel from a pipeline back to the dispatcher that sent the request.
+ * <p>
+ * The pipeline must write its responses using the matching mode.  See
+ * {@link ReplyChannels#responseSink(ReplyMode, String)}.
+ */
+public enum ReplyMode {
+    /**
+     * All dispatchers share the SERVICE_NAME_response map.  Each dispatcher registers a listener with a predicate
+     * on its client id, so the cluster evaluates one predicate per registered dispatcher for every response.
+     */
+    SHARED_MAP,
+
+    /**
+     * Each dispatcher instance has its own reliable topic, named SERVICE_NAME_reply_CLIENT_ID.  The pipeline
+     * publishes each response directly to the topic of the dispatcher that sent the request, so no predicate
+     * is evaluated.
+     */
+    RELIABLE_TOPIC
+}
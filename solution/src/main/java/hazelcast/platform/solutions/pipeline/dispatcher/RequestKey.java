@@ -0,0 +1,182 @@
+package hazelcast.platform.solutions.pipeline.dispatcher;
+
+import java.util.UUID;
+
+/**
+ * The key of every request and of the corresponding response.  It identifies the dispatcher that sent the request,
+ * using the 2 halves of its UUID client id, and the request itself, using a sequence number that is unique for that
+ * dispatcher.  It also carries request metadata so that pipelines can inspect it without deserializing the request.
+ * <p>
+ * RequestKey is a fixed width type which is serialized with Hazelcast Compact serialization.  See
+ * {@link hazelcast.platform.solutions.pipeline.dispatcher.internal.RequestKeySerializer}.  By {@link #equals}, two
+ * keys are equal if they have the same client id and sequence number, whatever their metadata.  IMap compares keys in
+ * serialized form, which includes the metadata, so a key with different metadata is a different map entry.
+ * <p>
+ * Pipelines write the response under the key of the request, or under a copy with updated metadata, such as the one
+ * returned by {@link RequestTracing#emitted}.  The dispatcher matches responses to requests by client id and sequence
+ * number, and removes a delivered response using the key it was written under.
+ */
+public class RequestKey {
+
+    public static final String TYPE_NAME = RequestKey.class.getName();
+
+    /**
+     * Set in the flags of a request that was sampled for tracing, see {@link RequestTracing}.
+     */
+    public static final int FLAG_TRACED = 1;
+
+    private long clientIdHigh;
+
+    private long clientIdLow;
+
+    private long sequence;
+
+    // metadata
+    private int flags;
+
+    private long timestamp;
+
+    private long deadline;
+
+    // traced requests only, stamped by the pipeline, see RequestTracing
+    private long ingestMicros;
+
+    private long emitMicros;
+
+    public RequestKey(){
+        // used by zero configuration Compact serialization, if the serializer has not been registered
+    }
+
+    public RequestKey(long clientIdHigh, long clientIdLow, long sequence, int flags, long timestamp){
+        this(clientIdHigh, clientIdLow, sequence, flags, timestamp, 0);
+    }
+
+    /**
+     * @param deadline see {@link #getDeadline()}
+     */
+    public RequestKey(long clientIdHigh, long clientIdLow, long sequence, int flags, long timestamp, long deadline){
+        this(clientIdHigh, clientIdLow, sequence, flags, timestamp, deadline, 0, 0);
+    }
+
+    /**
+     * @param ingestMicros see {@link #getIngestMicros()}
+     * @param emitMicros see {@link #getEmitMicros()}
+     */
+    public RequestKey(long clientIdHigh, long clientIdLow, long sequence, int flags, long timestamp, long deadline,
+                      long ingestMicros, long emitMicros){
+        this.clientIdHigh = clientIdHigh;
+        this.clientIdLow = clientIdLow;
+        this.sequence = sequence;
+        this.flags = flags;
+        this.timestamp = timestamp;
+        this.deadline = deadline;
+        this.ingestMicros = ingestMicros;
+        this.emitMicros = emitMicros;
+    }
+
+    public long getClientIdHigh() {
+        return clientIdHigh;
+    }
+
+    public long getClientIdLow() {
+        return clientIdLow;
+    }
+
+    /**
+     * @return the client id of the dispatcher that sent the request
+     */
+    public UUID getClientId(){
+        return new UUID(clientIdHigh, clientIdLow);
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return flags describing the request, currently only {@link #FLAG_TRACED}
+     */
+    public int getFlags() {
+        return flags;
+    }
+
+    /**
+     * @return the time at which the request was sent, in milliseconds since the epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return the time after which the caller no longer waits for the response, in milliseconds since the epoch,
+     * or 0 if there is no deadline
+     */
+    public long getDeadline() {
+        return deadline;
+    }
+
+    /**
+     * @return true if the request was sampled for tracing
+     */
+    public boolean isTraced() {
+        return (flags & FLAG_TRACED) != 0;
+    }
+
+    /**
+     * @return the time at which the pipeline read a traced request, in microseconds since the epoch, or 0
+     */
+    public long getIngestMicros() {
+        return ingestMicros;
+    }
+
+    /**
+     * @return the time at which the pipeline wrote the response to a traced request, in microseconds since the
+     * epoch, or 0
+     */
+    public long getEmitMicros() {
+        return emitMicros;
+    }
+
+    /**
+     * @return a copy of this key with the given ingest time
+     */
+    public RequestKey withIngestMicros(long micros) {
+        return new RequestKey(clientIdHigh, clientIdLow, sequence, flags, timestamp, deadline, micros, emitMicros);
+    }
+
+    /**
+     * @return a copy of this key with the given emit time
+     */
+    public RequestKey withEmitMicros(long micros) {
+        return new RequestKey(clientIdHigh, clientIdLow, sequence, flags, timestamp, deadline, ingestMicros, micros);
+    }
+
+    /**
+     * @param nowMillis the current time in milliseconds since the epoch
+     * @return true if the request has a deadline and it is before the given time
+     */
+    public boolean isExpired(long nowMillis) {
+        return deadline != 0 && deadline < nowMillis;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        RequestKey that = (RequestKey) o;
+        return sequence == that.sequence && clientIdLow == that.clientIdLow && clientIdHigh == that.clientIdHigh;
+    }
+
+    @Override
+    public int hashCode() {
+        long h = sequence * 31 + clientIdLow;
+        h = h * 31 + clientIdHigh;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    @Override
+    public String toString() {
+        return getClientId() + "|" + sequence;
+    }
+}
@@ -0,0 +1,39 @@
+package hazelcast.platform.solutions.pipeline.dispatcher;
+
+/**
+ * The priority class of a request, given when it is sent.  If the routing configuration of a service sets
+ * "priority_lanes", each priority has its own request map, or request ring buffers, so that a backlog of bulk requests
+ * does not delay latency critical ones.  Otherwise all priorities share the request map of the service version.
+ * Either way, the dispatcher can limit the number of requests of each priority that are in flight, see the
+ * priority properties of PipelineDispatcherFactory.
+ * <p>
+ * The pipeline must read all of the lanes, see {@link RequestSources#readLivePriorityRequests} and
+ * {@link RequestSources#readLivePriorityRingbufferRequests}.
+ */
+public enum RequestPriority {
+    /**
+     * Latency critical requests, such as those of interactive users.  Written to SERVICE_NAME_VERSION_high_request
+     * or request_ring_SERVICE_NAME_VERSION_high_N.
+     */
+    HIGH,
+
+    /**
+     * The priority of requests sent without one.  Written to the request map or ring buffers of the service version,
+     * so services without priority lanes are not affected.
+     */
+    NORMAL,
+
+    /**
+     * Bulk requests that can wait, such as those of batch clients.  Written to SERVICE_NAME_VERSION_low_request or
+     * request_ring_SERVICE_NAME_VERSION_low_N.
+     */
+    LOW;
+
+    /**
+     * @return the name that is inserted into the names of the request map and ring buffers of this lane, null for
+     * NORMAL
+     */
+    public String laneName(){
+        return this == NORMAL ? null : name().toLowerCase();
+    }
+}
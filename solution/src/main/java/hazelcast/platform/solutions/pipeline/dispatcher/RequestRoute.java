@@ -0,0 +1,192 @@
+package hazelcast.platform.solutions.pipeline.dispatcher;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.map.IMap;
+import com.hazelcast.ringbuffer.Ringbuffer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One possible destination for a request: a version of a service and the request map, or request ring buffers, that
+ * the version reads from.  Routes are created when a RequestRouter is configured, so names and proxies are computed
+ * once and not on every request.
+ * <p>
+ * If the service has priority lanes, the route of the NORMAL priority holds the routes of the other priorities, see
+ * {@link #lane(RequestPriority)}.  Routers only ever return NORMAL routes.
+ */
+public class RequestRoute {
+
+    private final String version;
+
+    private final String requestMapName;
+
+    private final RequestTransport transport;
+
+    private final RequestPriority priority;
+
+    // the route of each priority, indexed by ordinal, null if the service does not have priority lanes
+    private final RequestRoute []lanes;
+
+    // null unless the transport is MAP
+    private final IMap<RequestKey, Object> requestMap;
+
+    // null unless the transport is RINGBUFFER
+    private final List<Ringbuffer<Map.Entry<RequestKey, Object>>> ringbuffers;
+
+    /**
+     * @param serviceName the name of the service, e.g. "reverse"
+     * @param version the version of the service, or null if the service does not have multiple versions
+     */
+    public RequestRoute(HazelcastInstance hz, String serviceName, String version){
+        this(hz, serviceName, version, RequestTransport.MAP, 0);
+    }
+
+    /**
+     * @param partitions the number of request ring buffers, only used if the transport is RINGBUFFER
+     */
+    public RequestRoute(HazelcastInstance hz, String serviceName, String version, RequestTransport transport,
+                        int partitions){
+        this(hz, serviceName, version, transport, partitions, false);
+    }
+
+    /**
+     * @param priorityLanes whether requests of each priority have their own request map or ring buffers
+     */
+    public RequestRoute(HazelcastInstance hz, String serviceName, String version, RequestTransport transport,
+                        int partitions, boolean priorityLanes){
+        this(hz, serviceName, version, transport, partitions, RequestPriority.NORMAL,
+                priorityLanes ? new RequestRoute[RequestPriority.values().length] : null);
+        if (lanes == null) return;  // RETURN
+
+        for(RequestPriority p: RequestPriority.values()){
+            lanes[p.ordinal()] = p == RequestPriority.NORMAL ? this :
+                    new RequestRoute(hz, serviceName, version, transport, partitions, p, null);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private RequestRoute(HazelcastInstance hz, String serviceName, String version, RequestTransport transport,
+                         int partitions, RequestPriority priority, RequestRoute []lanes){
+        this.version = version;
+        this.requestMapName = requestMapName(serviceName, version, priority);
+        this.transport = transport;
+        this.priority = priority;
+        this.lanes = lanes;
+        if (transport == RequestTransport.RINGBUFFER){
+            if (partitions <= 0){
+                throw new RuntimeException("The number of request ring buffers must be positive");  // THROW
+            }
+
+            this.requestMap = null;
+            this.ringbuffers = new ArrayList<>(partitions);
+            for(int i=0; i < partitions; ++i)
+                ringbuffers.add(hz.getRingbuffer(requestRingbufferName(serviceName, version, priority, i)));
+        } else {
+            this.requestMap = hz.getMap(requestMapName);
+            this.ringbuffers = null;
+        }
+    }
+
+    /**
+     * @return the name of the request map for the given service and version, version may be null
+     */
+    public static String requestMapName(String serviceName, String version){
+        return version == null ? serviceName + "_request" : serviceName + "_" + version + "_request";
+    }
+
+    /**
+     * @return the name of the request map of the given priority lane, version may be null.  The names of all lanes end
+     * with "_request", so the map configuration of the request maps applies to them.
+     */
+    public static String requestMapName(String serviceName, String version, RequestPriority priority){
+        return requestMapName(serviceName, laneVersion(version, priority));
+    }
+
+    /**
+     * @return the name of a request ring buffer for the given service and version, version may be null.  The names
+     * share a prefix so that a single wildcard ring buffer configuration, "request_ring_*", matches all of them.
+     */
+    public static String requestRingbufferName(String serviceName, String version, int partition){
+        return version == null ? "request_ring_" + serviceName + "_" + partition :
+                "request_ring_" + serviceName + "_" + version + "_" + partition;
+    }
+
+    /**
+     * @return the name of a request ring buffer of the given priority lane, version may be null
+     */
+    public static String requestRingbufferName(String serviceName, String version, RequestPriority priority,
+                                               int partition){
+        return requestRingbufferName(serviceName, laneVersion(version, priority), partition);
+    }
+
+    private static String laneVersion(String version, RequestPriority priority){
+        String lane = priority.laneName();
+        if (lane == null) return version;  // RETURN
+
+        return version == null ? lane : version + "_" + lane;
+    }
+
+    /**
+     * Called for every request, so it does not allocate.
+     *
+     * @return the route for requests of the given priority, which is this route if the service does not have
+     * priority lanes
+     */
+    public RequestRoute lane(RequestPriority priority){
+        return lanes == null ? this : lanes[priority.ordinal()];
+    }
+
+    public boolean hasPriorityLanes(){
+        return lanes != null;
+    }
+
+    public RequestPriority getPriority() {
+        return priority;
+    }
+
+    /**
+     * @return the version, or null if the service does not have multiple versions
+     */
+    public String getVersion() {
+        return version;
+    }
+
+    public String getRequestMapName() {
+        return requestMapName;
+    }
+
+    public RequestTransport getTransport() {
+        return transport;
+    }
+
+    /**
+     * @return the request map, null if the transport is not MAP
+     */
+    @SuppressWarnings("unchecked")
+    public <R> IMap<RequestKey, R> getRequestMap() {
+        return (IMap<RequestKey, R>) (IMap<RequestKey, ?>) requestMap;
+    }
+
+    /**
+     * Requests are spread over the ring buffers by sequence number, so consecutive requests of one dispatcher go to
+     * different partitions.
+     *
+     * @return the request ring buffer for the request with the given sequence number, null if the transport is not
+     * RINGBUFFER
+     */
+    @SuppressWarnings("unchecked")
+    public <R> Ringbuffer<Map.Entry<RequestKey, R>> getRequestRingbuffer(long sequence) {
+        if (ringbuffers == null) return null;  // RETURN
+
+        return (Ringbuffer<Map.Entry<RequestKey, R>>) (Ringbuffer<?>)
+                ringbuffers.get((int) Math.floorMod(sequence, (long) ringbuffers.size()));
+    }
+
+    @Override
+    public String toString() {
+        String result = transport == RequestTransport.RINGBUFFER ? requestMapName + " (ringbuffer)" : requestMapName;
+        return lanes == null ? result : result + " (priority lanes)";
+    }
+}
@@ -5,9 +5,31 @@ package hazelcast.platform.solutions.pipeline.dispatcher;
  * This abstraction enables the possibility of sending to different maps and therefore different service implementation
  * Pipelines, based on configuration.
  * <p>
- * Note that "getRequestMapName" should be called every time a request is dispatched since it is possible that
- * consecutive requests are routed to different versions.
+ * Note that "route" should be called every time a request is dispatched since it is possible that
+ * consecutive requests are routed to different versions.  Implementations should do any expensive work, such as
+ * computing map names or creating map proxies, when they are constructed so that "route" is cheap.
+ * <p>
+ * The dispatcher reports the outcome of every request to the router that is current when the outcome is known.
+ * Routers that adapt to the behavior of each version override onResponse and onFailure.  Outcomes may be reported
+ * for routes created by a previous router, which should be ignored.
  */
 public interface RequestRouter{
-    String getRequestMapName();
+    RequestRoute route();
+
+    default String getRequestMapName(){
+        return route().getRequestMapName();
+    }
+
+    /**
+     * Called when a request sent to the given route receives a response.  This is called on the thread that delivers
+     * the response and must be cheap.
+     */
+    default void onResponse(RequestRoute route, long latencyNanos){
+    }
+
+    /**
+     * Called when a request sent to the given route times out or could not be sent.
+     */
+    default void onFailure(RequestRoute route){
+    }
 }
@@ -0,0 +1,184 @@
+package hazelcast.platform.solutions.pipeline.dispatcher;
+
+import com.hazelcast.function.FunctionEx;
+import com.hazelcast.jet.Util;
+import com.hazelcast.jet.core.metrics.Metrics;
+import com.hazelcast.jet.datamodel.Tuple2;
+import com.hazelcast.jet.pipeline.JournalInitialPosition;
+import com.hazelcast.jet.pipeline.Pipeline;
+import com.hazelcast.jet.pipeline.SourceBuilder;
+import com.hazelcast.jet.pipeline.Sources;
+import com.hazelcast.jet.pipeline.StreamSource;
+import com.hazelcast.jet.pipeline.StreamStage;
+import hazelcast.platform.solutions.pipeline.dispatcher.internal.RingbufferRequestReader;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Utilities used by service pipelines to read the requests sent by dispatchers.  See also {@link ReplyChannels}.
+ * <p>
+ * The source must match the {@link RequestTransport} of the service: readLiveRequests for MAP and
+ * readLiveRingbufferRequests for RINGBUFFER.  Services whose routing configuration sets "priority_lanes" use
+ * readLivePriorityRequests or readLivePriorityRingbufferRequests instead, which read the lanes of all priorities, see
+ * {@link RequestPriority}.
+ * <p>
+ * Each request carries the deadline of the caller that sent it, see {@link RequestKey#getDeadline()}.  Once the
+ * deadline has passed, no one is waiting for the response, so processing the request only adds load.  The stages
+ * returned by this class drop such requests before they reach the business logic of the pipeline and count them in
+ * the "expiredRequests" Jet user metric, which is reported with the job metrics.
+ * <p>
+ * Deadlines are compared with the clock of the cluster member, so the clocks of dispatchers and members should be
+ * synchronized.  A grace period can be given to tolerate clock differences.
+ * <p>
+ * Requests that the dispatcher compressed are decompressed by the source, see {@link CompressedPayload}, so the
+ * business logic always receives the request that was sent.  The keys of traced requests are stamped with the time
+ * at which they were read, see {@link RequestTracing}.
+ */
+public class RequestSources {
+
+    /**
+     * The name of the Jet user metric that counts dropped requests.
+     */
+    public static final String EXPIRED_REQUESTS_METRIC = "expiredRequests";
+
+    /**
+     * Reads requests from the event journal of the request map and drops the ones whose deadline has passed.  The
+     * event journal must be enabled on the request map.
+     */
+    public static <R> StreamStage<Map.Entry<RequestKey, R>> readLiveRequests(
+            Pipeline pipeline, String requestMapName, JournalInitialPosition initialPosition){
+        return readLiveRequests(pipeline, requestMapName, initialPosition, 0);
+    }
+
+    /**
+     * Reads requests from the event journal of the request map and drops the ones whose deadline passed more than
+     * graceMs milliseconds ago.  The event journal must be enabled on the request map.
+     */
+    public static <R> StreamStage<Map.Entry<RequestKey, R>> readLiveRequests(
+            Pipeline pipeline, String requestMapName, JournalInitialPosition initialPosition, long graceMs){
+        return pipeline.readFrom(Sources.<Map.Entry<RequestKey, R>, RequestKey, Object>mapJournal(requestMapName,
+                        initialPosition,
+                        event -> Tuple2.tuple2(RequestTracing.ingested(event.getKey()),
+                                CompressedPayload.<R>decompress(event.getNewValue())),
+                        Util.mapPutEvents()))
+                .withIngestionTimestamps()
+                .apply(dropExpired(graceMs));
+    }
+
+    /**
+     * Reads requests from the request ring buffers of a service version and drops the ones whose deadline passed more
+     * than graceMs milliseconds ago.  Use it for services whose routing configuration selects the RINGBUFFER
+     * transport.
+     *
+     * @param version the version, or null if the service does not have multiple versions
+     * @param partitions the number of request ring buffers, must match the "partitions" of the routing configuration
+     */
+    public static <R> StreamStage<Map.Entry<RequestKey, R>> readLiveRingbufferRequests(
+            Pipeline pipeline, String serviceName, String version, int partitions,
+            JournalInitialPosition initialPosition, long graceMs){
+        return pipeline.readFrom(RequestSources.<R>ringbufferRequestSource(serviceName, version, partitions,
+                        initialPosition))
+                .withIngestionTimestamps()
+                .apply(dropExpired(graceMs));
+    }
+
+    /**
+     * Returns a fault tolerant source of the requests in the request ring buffers of a service version.  Each member
+     * runs one processor and the ring buffers are divided among them, so there should be at least as many ring
+     * buffers as members.  Requests that were overwritten before they were read are counted in the "lostRequests" Jet
+     * user metric.
+     */
+    public static <R> StreamSource<Map.Entry<RequestKey, R>> ringbufferRequestSource(
+            String serviceName, String version, int partitions, JournalInitialPosition initialPosition){
+        String name = "ringbufferRequestSource(" + RequestRoute.requestMapName(serviceName, version) + ")";
+        return SourceBuilder.stream(name, context ->
+                        new RingbufferRequestReader<R>(context, serviceName, version, partitions, initialPosition))
+                .<Map.Entry<RequestKey, R>>fillBufferFn(RingbufferRequestReader::fill)
+                .<HashMap<Integer, Long>>createSnapshotFn(RingbufferRequestReader::snapshot)
+                .restoreSnapshotFn(RingbufferRequestReader::restore)
+                .distributed(1)
+                .build();
+    }
+
+    /**
+     * Reads requests from the event journals of the request maps of all priority lanes of a service version and drops
+     * the ones whose deadline passed more than graceMs milliseconds ago.  Each lane has its own journal and its own
+     * source, so a backlog of LOW priority requests does not delay the reading of HIGH priority ones, and the lanes
+     * share the business logic equally.  Use the RINGBUFFER transport to weight the lanes.
+     *
+     * @param version the version, or null if the service does not have multiple versions
+     */
+    public static <R> StreamStage<Map.Entry<RequestKey, R>> readLivePriorityRequests(
+            Pipeline pipeline, String serviceName, String version, JournalInitialPosition initialPosition,
+            long graceMs){
+        StreamStage<Map.Entry<RequestKey, R>> result = null;
+        for(RequestPriority priority: RequestPriority.values()){
+            StreamStage<Map.Entry<RequestKey, R>> lane = readLiveRequests(pipeline,
+                    RequestRoute.requestMapName(serviceName, version, priority), initialPosition, graceMs);
+            result = result == null ? lane : result.merge(lane);
+        }
+        return result;
+    }
+
+    /**
+     * Reads requests from the request ring buffers of all priority lanes of a service version and drops the ones whose
+     * deadline passed more than graceMs milliseconds ago.  When the pipeline cannot keep up, each lane receives a
+     * share of its throughput in proportion to its weight.  A lane without requests waiting gives its share to the
+     * others.  For example, with weights {8, 4, 1} a flood of LOW priority requests takes at most 1/13th of the
+     * throughput from HIGH and NORMAL priority requests.  Requests of a lane that falls behind wait in its ring
+     * buffers, where the oldest ones are eventually overwritten, so the ring buffers of the LOW lane should be large.
+     *
+     * @param partitions the number of request ring buffers per lane, must match the "partitions" of the routing
+     *                   configuration
+     * @param weights the weight of each lane, indexed by the ordinal of its RequestPriority, all positive
+     */
+    public static <R> StreamStage<Map.Entry<RequestKey, R>> readLivePriorityRingbufferRequests(
+            Pipeline pipeline, String serviceName, String version, int partitions, int []weights,
+            JournalInitialPosition initialPosition, long graceMs){
+        return pipeline.readFrom(RequestSources.<R>priorityRingbufferRequestSource(serviceName, version, partitions,
+                        weights, initialPosition))
+                .withIngestionTimestamps()
+                .apply(dropExpired(graceMs));
+    }
+
+    /**
+     * Returns a fault tolerant source of the requests in the request ring buffers of all priority lanes of a service
+     * version, see {@link #readLivePriorityRingbufferRequests}.
+     */
+    public static <R> StreamSource<Map.Entry<RequestKey, R>> priorityRingbufferRequestSource(
+            String serviceName, String version, int partitions, int []weights,
+            JournalInitialPosition initialPosition){
+        RequestPriority []priorities = RequestPriority.values();
+        if (weights.length != priorities.length)
+            throw new IllegalArgumentException("Expected " + priorities.length + " weights");  // THROW
+
+        for(int weight: weights)
+            if (weight <= 0) throw new IllegalArgumentException("Weights must be positive");  // THROW
+
+        int []laneWeights = weights.clone();
+        String name = "priorityRingbufferRequestSource(" + RequestRoute.requestMapName(serviceName, version) + ")";
+        return SourceBuilder.stream(name, context ->
+                        new RingbufferRequestReader<R>(context, serviceName, version, partitions, initialPosition,
+                                priorities, laneWeights))
+                .<Map.Entry<RequestKey, R>>fillBufferFn(RingbufferRequestReader::fill)
+                .<HashMap<Integer, Long>>createSnapshotFn(RingbufferRequestReader::snapshot)
+                .restoreSnapshotFn(RingbufferRequestReader::restore)
+                .distributed(1)
+                .build();
+    }
+
+    /**
+     * Returns a transform that drops requests whose deadline passed more than graceMs milliseconds ago.  Use it with
+     * StreamStage.apply in pipelines that read requests some other way.
+     */
+    public static <R> FunctionEx<StreamStage<Map.Entry<RequestKey, R>>, StreamStage<Map.Entry<RequestKey, R>>>
+            dropExpired(long graceMs){
+        return stage -> stage.filter(entry -> {
+            if (!entry.getKey().isExpired(System.currentTimeMillis() - graceMs)) return true;  // RETURN
+
+            Metrics.metric(EXPIRED_REQUESTS_METRIC).increment();
+            return false;
+        }).setName("dropExpiredRequests");
+    }
+}
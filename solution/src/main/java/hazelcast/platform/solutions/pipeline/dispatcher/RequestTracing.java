@@ -0,0 +1,42 @@
+package hazelcast.platform.solutions.pipeline.dispatcher;
+
+import java.time.Instant;
+
+/**
+ * Utilities used by service pipelines to stamp traced requests.  A dispatcher with a tracing sample rate marks a
+ * fraction of its requests with {@link RequestKey#FLAG_TRACED}.  The request sources stamp the key of a traced
+ * request with the time at which the pipeline read it and the response sinks stamp it with the time at which the
+ * response was written.  The key travels with the response, so the dispatcher can break the latency of the request
+ * down into stages, see {@link hazelcast.platform.solutions.pipeline.dispatcher.metrics.TraceStage}.
+ * <p>
+ * The sources of {@link RequestSources} and the sinks of {@link ReplyChannels} stamp keys already.  Pipelines that
+ * read requests or write responses some other way can use the methods of this class.  Keys that are not traced are
+ * returned unchanged, so the cost for other requests is one test of the flags.
+ * <p>
+ * Times are taken from the clock of the cluster member, so the stages that span the dispatcher and the member are
+ * only as accurate as the synchronization of their clocks.
+ */
+public class RequestTracing {
+
+    /**
+     * @return the current time in microseconds since the epoch
+     */
+    public static long currentTimeMicros(){
+        Instant now = Instant.now();
+        return now.getEpochSecond() * 1_000_000L + now.getNano() / 1_000;
+    }
+
+    /**
+     * @return the key stamped with the current time as its ingest time if it is traced, otherwise the key itself
+     */
+    public static RequestKey ingested(RequestKey key){
+        return key.isTraced() ? key.withIngestMicros(currentTimeMicros()) : key;
+    }
+
+    /**
+     * @return the key stamped with the current time as its emit time if it is traced, otherwise the key itself
+     */
+    public static RequestKey emitted(RequestKey key){
+        return key.isTraced() ? key.withEmitMicros(currentTimeMicros()) : key;
+    }
+}
@@ -0,0 +1,22 @@
+package hazelcast.platform.solutions.pipeline.dispatcher;
+
+/**
+ * Controls how requests travel from the dispatcher to the pipeline of a service version.  It is selected per service
+ * with the "transport" field of the routing configuration.
+ * <p>
+ * The pipeline must read its requests using the matching transport.  See {@link RequestSources}.
+ */
+public enum RequestTransport {
+    /**
+     * Each request is put into the SERVICE_NAME_VERSION_request map and the pipeline reads it from the event journal
+     * of that map.  Each request costs a map entry, its backup and a journal event.
+     */
+    MAP,
+
+    /**
+     * Each request is appended to one of the "partitions" ring buffers of the service version, named
+     * request_ring_SERVICE_NAME_VERSION_N, and the pipeline reads the ring buffers directly.  Each request costs one
+     * append.  Nothing is stored in a map and, with the sample configuration, nothing is backed up.
+     */
+    RINGBUFFER
+}
@@ -0,0 +1,80 @@
+package hazelcast.platform.solutions.pipeline.dispatcher;
+
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.DataSerializable;
+
+import java.io.IOException;
+
+/**
+ * One part of a streamed response.  A pipeline that streams its response writes a sequence of chunks, numbered from
+ * 0, under the key of the request.  The last chunk is marked and may or may not carry a value.  Chunks may arrive at
+ * the dispatcher out of order, the dispatcher puts them back in order using their indexes.
+ * <p>
+ * See {@link DispatcherPipelines#stream} and {@link PipelineDispatcher#sendStreaming(Object)}.
+ */
+public class ResponseChunk<T> implements DataSerializable {
+
+    private int index;
+
+    private boolean last;
+
+    private T value;
+
+    public ResponseChunk(){
+        // for deserialization
+    }
+
+    /**
+     * @param value may be null only if this is the last chunk
+     */
+    public ResponseChunk(int index, T value, boolean last){
+        this.index = index;
+        this.value = value;
+        this.last = last;
+    }
+
+    /**
+     * @return a chunk that ends the stream without a value
+     */
+    public static <T> ResponseChunk<T> end(int index){
+        return new ResponseChunk<>(index, null, true);
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public boolean isLast() {
+        return last;
+    }
+
+    /**
+     * @return the value, null for a last chunk without a value
+     */
+    public T getValue() {
+        return value;
+    }
+
+    @Override
+    public void writeData(ObjectDataOutput out) throws IOException {
+        out.writeInt(index);
+        out.writeBoolean(last);
+        out.writeObject(value);
+    }
+
+    @Override
+    public void readData(ObjectDataInput in) throws IOException {
+        index = in.readInt();
+        last = in.readBoolean();
+        value = in.readObject();
+    }
+
+    @Override
+    public String toString() {
+        return "ResponseChunk{" +
+                "index=" + index +
+                ", last=" + last +
+                '}';
+    }
+}
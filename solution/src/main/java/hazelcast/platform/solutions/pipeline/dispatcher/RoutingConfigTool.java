@@ -5,12 +5,14 @@ import com.fasterxml.jackson.databind.SerializationFeature;
 import com.hazelcast.client.HazelcastClient;
 import com.hazelcast.core.HazelcastInstance;
 import com.hazelcast.map.IMap;
+import com.hazelcast.ringbuffer.Ringbuffer;
 import net.sourceforge.argparse4j.ArgumentParsers;
 import net.sourceforge.argparse4j.inf.ArgumentParser;
 import net.sourceforge.argparse4j.inf.ArgumentParserException;
 import net.sourceforge.argparse4j.inf.Namespace;
 
 import java.io.File;
+import java.io.PrintStream;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -18,17 +20,19 @@ public class RoutingConfigTool {
     /**
      * usage: RoutingConfigTool [-h]
      *                            [--output OUTPUT]
-     *                            [--input INPUT] {dump,load}
+     *                            [--input INPUT] {dump,load,decisions}
      * <p>
      * Inspect and maintain routing configuration
      * <p>
      * positional arguments:
-     *   {dump,load}            specifies the desired action
+     *   {dump,load,decisions}  specifies the desired action.  "decisions" prints the routing decisions made by
+     *                          adaptive routers, oldest first, as one JSON object per line
      * <p>
      * named arguments:
      *   -h, --help             show this help message and exit
      *   --input INPUT          The JSON file containing the control data to load
-     *   --output OUTPUT        The JSON file to which control data will be dumped
+     *   --output OUTPUT        The JSON file to which control data will be dumped.  For "decisions", the file
+     *                          to write instead of standard output
      * <p>
      *   Sample File Format
      *   {
@@ -47,7 +51,7 @@ public class RoutingConfigTool {
         ArgumentParser parser = ArgumentParsers.newFor("RoutingConfigTool").build().defaultHelp(true)
                 .description("Inspect and maintain routing configuration");
 
-        parser.addArgument("action").choices("dump", "load").required(true).help("specifies the desired action");
+        parser.addArgument("action").choices("dump", "load", "decisions").required(true).help("specifies the desired action");
         parser.addArgument("--input").type(String.class).required(false).help("The JSON file containing the control data to load");
         parser.addArgument("--output").type(String.class).required(false).help("The JSON file to which control data will be dumped");
 
@@ -82,7 +86,19 @@ public class RoutingConfigTool {
 
             IMap<String, String> remoteConfigMap = hz.getMap(PipelineDispatcherFactory.ROUTER_CONFIG_MAP);
 
-            if (action.equals("load")) {
+            if (action.equals("decisions")) {
+                Ringbuffer<String> decisions = hz.getRingbuffer(PipelineDispatcherFactory.ROUTING_DECISIONS);
+                PrintStream out = outputFileName == null ? System.out : new PrintStream(new File(outputFileName));
+                long count = 0;
+                for(long seq = decisions.headSequence(); seq <= decisions.tailSequence(); ++seq){
+                    out.println(decisions.readOne(seq));
+                    ++count;
+                }
+                if (outputFileName != null){
+                    out.close();
+                    System.out.println("Wrote " + count + " routing decisions to " + outputFileName);
+                }
+            } else if (action.equals("load")) {
                 Map<String, Map<String, String>> configMap = mapper.readValue(new File(inputFileName), Map.class);
 
                 for (Map.Entry<String,Map<String,String>> entry: configMap.entrySet()){
@@ -0,0 +1,87 @@
+package hazelcast.platform.solutions.pipeline.dispatcher;
+
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+
+/**
+ * Adapts {@link PipelineDispatcher#sendStreaming(Object)} to server-sent events, for use in Spring MVC handlers.
+ * <p>
+ * Spring MVC is an optional dependency.  This class must only be loaded if spring-webmvc is on the classpath.
+ */
+public final class SseAdapter {
+
+    private SseAdapter(){
+    }
+
+    /**
+     * Sends a request to a service whose pipeline streams its response and returns an SseEmitter, for use as the
+     * return value of a Spring MVC handler method, that sends each value as a server-sent event.  Writing to a slow
+     * client blocks, so values are written by the given executor, one at a time, and the next value is only requested
+     * once the previous one has been written.  A client that does not keep up causes the stream to overflow.
+     *
+     * @param writer runs the blocking writes, for example the application's task executor
+     */
+    public static <R> SseEmitter send(PipelineDispatcher<R,?> dispatcher, R request, Executor writer){
+        // a stream may last longer than the request timeout, the dispatcher ends streams that stop making progress
+        SseEmitter emitter = new SseEmitter(0L);
+        dispatcher.<Object>sendStreaming(request).subscribe(new SseWriter(emitter, writer));
+        return emitter;
+    }
+
+    /*
+     * Writes the values of a streamed response to an SseEmitter.  Every signal is chained to the previous one on the
+     * writer executor, so writes happen in order and completion follows the last write.
+     */
+    private static class SseWriter implements Flow.Subscriber<Object> {
+        private final SseEmitter emitter;
+        private final Executor writer;
+        private CompletableFuture<Void> tail;
+        private Flow.Subscription subscription;
+
+        SseWriter(SseEmitter emitter, Executor writer){
+            this.emitter = emitter;
+            this.writer = writer;
+            this.tail = CompletableFuture.completedFuture(null);
+        }
+
+        private synchronized void then(Runnable action){
+            tail = tail.thenRunAsync(action, writer);
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            // the client can close the connection at any time
+            emitter.onCompletion(subscription::cancel);
+            emitter.onTimeout(subscription::cancel);
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(Object value) {
+            then(() -> {
+                try {
+                    emitter.send(value);
+                    subscription.request(1);
+                } catch(IOException | RuntimeException x){
+                    subscription.cancel();
+                    emitter.completeWithError(x);
+                }
+            });
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            then(() -> emitter.completeWithError(t));
+        }
+
+        @Override
+        public void onComplete() {
+            then(emitter::complete);
+        }
+    }
+}
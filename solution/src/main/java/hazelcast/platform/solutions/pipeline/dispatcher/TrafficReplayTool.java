@@ -0,0 +1,258 @@
+package hazelcast.platform.solutions.pipeline.dispatcher;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.hazelcast.client.HazelcastClient;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.internal.serialization.Data;
+import com.hazelcast.internal.serialization.SerializationService;
+import com.hazelcast.internal.serialization.impl.HeapData;
+import com.hazelcast.spi.impl.SerializationServiceSupport;
+import hazelcast.platform.solutions.pipeline.dispatcher.internal.CaptureFileReader;
+import hazelcast.platform.solutions.pipeline.dispatcher.internal.RequestKeyFactory;
+import hazelcast.platform.solutions.pipeline.dispatcher.metrics.LatencyHistogram;
+import hazelcast.platform.solutions.pipeline.dispatcher.metrics.SimpleDispatcherMetrics;
+import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
+import net.sourceforge.argparse4j.inf.Namespace;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+public class TrafficReplayTool {
+    /**
+     * usage: TrafficReplayTool [-h] --input INPUT [--speed SPEED]
+     *                            [--max-in-flight MAX_IN_FLIGHT]
+     *                            [--services SERVICES [SERVICES ...]]
+     *                            [--timeout-ms TIMEOUT_MS]
+     *                            [--reply-mode {SHARED_MAP,RELIABLE_TOPIC}]
+     *                            [--output OUTPUT]
+     * <p>
+     * Replay traffic captured by the dispatcher against the cluster and report throughput and latency per version
+     * <p>
+     * named arguments:
+     *   -h, --help             show this help message and exit
+     *   --input INPUT          The capture file to replay, see the hazelcast.pipeline.dispatcher.capture properties
+     *   --speed SPEED          A multiple of the captured rate, or "max" to send as fast as --max-in-flight allows
+     *   --max-in-flight MAX_IN_FLIGHT
+     *                          The largest number of requests that may wait for a response at the same time
+     *   --services SERVICES    Only replay the requests of these services
+     *   --timeout-ms TIMEOUT_MS
+     *                          The request timeout
+     *   --reply-mode {SHARED_MAP,RELIABLE_TOPIC}
+     *                          Must match the reply mode of the service pipelines
+     *   --output OUTPUT        A JSON file to which the results will also be written
+     * <p>
+     * Requests are routed with the routing configuration in the router_config map, so a capture taken from the
+     * current version can be replayed against a candidate by loading a configuration that sends all traffic to it.
+     * Requests are deserialized before they are sent, so the classes of the requests should be on the classpath.  A
+     * request that cannot be deserialized is sent in its serialized form, which only works with the MAP transport
+     * because the RINGBUFFER transport wraps the request in an envelope that cannot hold serialized data.  The
+     * classes of the responses are needed if the response maps have an in-memory format other than BINARY.
+     */
+    public static void main(String []args){
+        ArgumentParser parser = ArgumentParsers.newFor("TrafficReplayTool").build().defaultHelp(true)
+                .description("Replay captured traffic and report throughput and latency per version");
+
+        parser.addArgument("--input").type(String.class).required(true).help("The capture file to replay");
+        parser.addArgument("--speed").type(String.class).setDefault("1")
+                .help("A multiple of the captured rate, or \"max\"");
+        parser.addArgument("--max-in-flight").type(Integer.class).setDefault(1000)
+                .help("The largest number of requests in flight");
+        parser.addArgument("--services").nargs("+").required(false).help("Only replay the requests of these services");
+        parser.addArgument("--timeout-ms").type(Long.class).setDefault(3000L).help("The request timeout");
+        parser.addArgument("--reply-mode").type(ReplyMode.class).setDefault(ReplyMode.SHARED_MAP)
+                .help("Must match the service pipelines");
+        parser.addArgument("--output").type(String.class).required(false)
+                .help("A JSON file to which the results will be written");
+
+        Namespace arguments = null;
+        try {
+            arguments = parser.parseArgs(args);
+        } catch (ArgumentParserException x){
+            parser.handleError(x);
+            System.exit(1);
+        }
+
+        String inputFileName = arguments.getString("input");
+        String outputFileName = arguments.getString("output");
+        int maxInFlight = arguments.getInt("max_in_flight");
+        List<String> serviceList = arguments.getList("services");
+        Set<String> services = serviceList == null ? null : new HashSet<>(serviceList);
+
+        // 0 means do not pace
+        double speed = 0;
+        String speedArg = arguments.getString("speed");
+        if (!speedArg.equalsIgnoreCase("max")){
+            try {
+                speed = Double.parseDouble(speedArg);
+            } catch(NumberFormatException x){
+                speed = -1;
+            }
+            if (speed <= 0){
+                System.out.println("--speed must be a positive number or \"max\".");
+                System.exit(1);
+            }
+        }
+
+        PipelineDispatcherSettings settings = new PipelineDispatcherSettings();
+        settings.setRequestTimeoutMs(arguments.getLong("timeout_ms"));
+        settings.setRequestTtlMs(arguments.getLong("timeout_ms"));
+        settings.setMaxPendingRequests(maxInFlight);
+        settings.setLimiterLimit(maxInFlight);
+        settings.setLimiterMaxLimit(maxInFlight);
+        settings.setReplyMode(arguments.get("reply_mode"));
+
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "replay-scheduler");
+            t.setDaemon(true);
+            return t;
+        });
+
+        try (CaptureFileReader reader = new CaptureFileReader(inputFileName)){
+            HazelcastInstance hz = HazelcastClient.newHazelcastClient();
+            System.out.println("Connected");
+
+            SerializationService serializationService = ((SerializationServiceSupport) hz).getSerializationService();
+            RequestKeyFactory requestKeyFactory = new RequestKeyFactory();
+            SimpleDispatcherMetrics metrics = new SimpleDispatcherMetrics();
+            Map<String, PipelineDispatcher<Object,Object>> dispatchers = new HashMap<>();
+            Map<String, AtomicLong> sent = new TreeMap<>();
+            Semaphore inFlight = new Semaphore(maxInFlight);
+
+            long firstMicros = -1;
+            long startNanos = System.nanoTime();
+            CaptureFileReader.CapturedRequest captured;
+            while((captured = reader.next()) != null){
+                String serviceName = captured.getServiceName();
+                if (services != null && !services.contains(serviceName)) continue;  // CONTINUE
+
+                if (speed > 0){
+                    if (firstMicros < 0) firstMicros = captured.getTimeMicros();
+                    long dueNanos = startNanos +
+                            (long) ((captured.getTimeMicros() - firstMicros) * 1000 / speed);
+                    long waitNanos;
+                    while((waitNanos = dueNanos - System.nanoTime()) > 0) LockSupport.parkNanos(waitNanos);
+                }
+
+                PipelineDispatcher<Object,Object> dispatcher = dispatchers.computeIfAbsent(serviceName, name ->
+                        new PipelineDispatcher<>(requestKeyFactory, hz, name,
+                                PipelineDispatcherFactory.newRouter(name,
+                                        hz.<String,String>getMap(PipelineDispatcherFactory.ROUTER_CONFIG_MAP).get(name),
+                                        hz),
+                                settings, scheduler, metrics));
+
+                inFlight.acquire();
+                sent.computeIfAbsent(serviceName, k -> new AtomicLong()).incrementAndGet();
+                // failures are recorded by the dispatcher metrics
+                dispatcher.sendAsync(toRequest(serializationService, captured.getRequest())).whenComplete((v, t) -> inFlight.release());
+            }
+
+            if (!inFlight.tryAcquire(maxInFlight, 2 * settings.getRequestTimeoutMs(), TimeUnit.MILLISECONDS))
+                System.out.println("Some requests did not complete");
+
+            double seconds = Math.max(1, System.nanoTime() - startNanos) / 1e9;
+            Map<String, Object> results = report(metrics, sent, seconds);
+            if (outputFileName != null){
+                ObjectMapper mapper = new ObjectMapper();
+                mapper.enable(SerializationFeature.INDENT_OUTPUT);
+                mapper.writeValue(new File(outputFileName), results);
+                System.out.println("Wrote results to " + outputFileName);
+            }
+
+            for(PipelineDispatcher<Object,Object> dispatcher: dispatchers.values()) dispatcher.close();
+            scheduler.shutdown();
+            hz.shutdown();
+        } catch(Exception rx){
+            System.out.println("An error occurred. Program will exit.");
+            rx.printStackTrace(System.out);
+            System.exit(1);
+        }
+    }
+
+    /*
+     * Falls back to the serialized form if the class of the request is not available
+     */
+    private static Object toRequest(SerializationService serializationService, byte []bytes){
+        Data data = new HeapData(bytes);
+        try {
+            return serializationService.toObject(data);
+        } catch(RuntimeException x){
+            return data;
+        }
+    }
+
+    /*
+     * Prints the results and returns them for the JSON output
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> report(SimpleDispatcherMetrics metrics, Map<String, AtomicLong> sent,
+                                              double seconds){
+        Map<String, Object> results = new LinkedHashMap<>();
+        Map<String, Object> serviceResults = new LinkedHashMap<>();
+        results.put("durationSeconds", seconds);
+        results.put("services", serviceResults);
+
+        System.out.printf("Replayed for %.1f s%n", seconds);
+        System.out.printf("%-20s %10s %10s %10s %10s%n", "service", "sent", "timeouts", "rejected", "failures");
+        Map<String, SimpleDispatcherMetrics.Service> serviceMetrics = metrics.getServices();
+        for(Map.Entry<String, AtomicLong> entry: sent.entrySet()){
+            SimpleDispatcherMetrics.Service service = serviceMetrics.get(entry.getKey());
+            Map<String, Object> serviceResult = new LinkedHashMap<>();
+            serviceResult.put("sent", entry.getValue().get());
+            serviceResult.put("timeouts", service == null ? 0 : service.getTimeouts());
+            serviceResult.put("rejected", service == null ? 0 : service.getRejected());
+            serviceResult.put("sendFailures", service == null ? 0 : service.getSendFailures());
+            System.out.printf("%-20s %10d %10d %10d %10d%n", entry.getKey(), serviceResult.get("sent"),
+                    serviceResult.get("timeouts"), serviceResult.get("rejected"), serviceResult.get("sendFailures"));
+
+            Map<String, Object> versionResults = new LinkedHashMap<>();
+            if (service != null){
+                for(Map.Entry<String, LatencyHistogram> version: service.getVersionLatencies().entrySet())
+                    versionResults.put(version.getKey(), toResult(version.getValue(), seconds));
+            }
+            serviceResult.put("versions", versionResults);
+            serviceResults.put(entry.getKey(), serviceResult);
+        }
+
+        System.out.println();
+        System.out.printf("%-20s %-12s %10s %10s %10s %10s %10s %10s %10s%n", "service", "version", "count",
+                "req/s", "p50 us", "p90 us", "p99 us", "p99.9 us", "max us");
+        for(Map.Entry<String, Object> entry: serviceResults.entrySet()){
+            Map<String, Map<String, Object>> versions =
+                    (Map<String, Map<String, Object>>) ((Map<String, Object>) entry.getValue()).get("versions");
+            for(Map.Entry<String, Map<String, Object>> version: versions.entrySet()){
+                Map<String, Object> v = version.getValue();
+                System.out.printf("%-20s %-12s %10d %10.1f %10d %10d %10d %10d %10d%n", entry.getKey(),
+                        version.getKey(), v.get("count"), v.get("throughput"), v.get("p50Micros"), v.get("p90Micros"),
+                        v.get("p99Micros"), v.get("p999Micros"), v.get("maxMicros"));
+            }
+        }
+        return results;
+    }
+
+    private static Map<String, Object> toResult(LatencyHistogram latency, double seconds){
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("count", latency.getCount());
+        result.put("throughput", latency.getCount() / seconds);
+        result.put("p50Micros", latency.getValueAtPercentile(50.0) / 1000);
+        result.put("p90Micros", latency.getValueAtPercentile(90.0) / 1000);
+        result.put("p99Micros", latency.getValueAtPercentile(99.0) / 1000);
+        result.put("p999Micros", latency.getValueAtPercentile(99.9) / 1000);
+        result.put("maxMicros", latency.getMaxNanos() / 1000);
+        return result;
+    }
+}
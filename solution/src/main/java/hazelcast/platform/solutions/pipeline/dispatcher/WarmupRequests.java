@@ -0,0 +1,17 @@
+package hazelcast.platform.solutions.pipeline.dispatcher;
+
+/**
+ * Supplies the synthetic requests that are sent during startup warm-up, see the warm-up properties of
+ * PipelineDispatcherFactory.  The factory uses a WarmupRequests bean from the application context if there is one.
+ * Without one, warm-up creates the dispatchers but does not send any requests.
+ */
+public interface WarmupRequests {
+
+    /**
+     * Called once for each service that is warmed up.  The request is sent several times, so it should not have side
+     * effects.
+     *
+     * @return a request that the pipeline of the service can process, or null to skip the round trips for the service
+     */
+    Object requestFor(String serviceName);
+}
@@ -0,0 +1,358 @@
+package hazelcast.platform.solutions.pipeline.dispatcher.internal;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.ringbuffer.OverflowPolicy;
+import com.hazelcast.ringbuffer.Ringbuffer;
+import hazelcast.platform.solutions.pipeline.dispatcher.PipelineDispatcherFactory;
+import hazelcast.platform.solutions.pipeline.dispatcher.RequestRoute;
+import hazelcast.platform.solutions.pipeline.dispatcher.RequestRouter;
+import hazelcast.platform.solutions.pipeline.dispatcher.metrics.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A router that shifts traffic between versions based on the latency and failure rate that this dispatcher observes
+ * for each of them.  See AdaptiveRouterConfig for the policies and their bounds.
+ * <p>
+ * Each version's responses are recorded in a ring of "windows" histograms, one per evaluation interval, so the
+ * statistics cover the last windows * interval_ms.  Recording does not allocate.  Once per interval, the first
+ * response or failure reported after the interval has passed re-evaluates the shares of all versions.  Routing itself
+ * samples an AliasTable that is only rebuilt when the shares change.
+ * <p>
+ * Every change of the shares is logged and appended, as JSON, to the routing_decisions ringbuffer so that routing
+ * decisions can be audited, see {@link PipelineDispatcherFactory#ROUTING_DECISIONS}.
+ */
+public class AdaptiveRouter implements RequestRouter {
+    private static final Logger log = LoggerFactory.getLogger(AdaptiveRouter.class);
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    // LEAST_LATENCY only moves to another version if it is at least this much faster, to avoid flapping
+    private static final double SWITCH_RATIO = 0.9;
+
+    // GUARDRAIL takes this many intervals to restore the share of a version that has recovered
+    private static final int RECOVERY_STEPS = 10;
+
+    private final String serviceName;
+
+    private final String instanceId;
+
+    private final AdaptiveRouterConfig config;
+
+    private final String []versions;
+
+    private final RequestRoute []routes;
+
+    private final LatencyHistogram [][]latencies;
+
+    private final LongAdder [][]failures;
+
+    private final double []targetShares;
+
+    // only modified by evaluate, which is synchronized
+    private final double []shares;
+
+    private final int baseline;
+
+    private int best;
+
+    private final long intervalNanos;
+
+    private final AtomicLong nextEvaluation;
+
+    // the window currently being recorded into
+    private volatile int window;
+
+    private volatile AliasTable aliasTable;
+
+    private volatile String lastDecision;
+
+    private final Ringbuffer<String> decisions;
+
+    public AdaptiveRouter(String serviceName, AdaptiveRouterConfig config, HazelcastInstance hz){
+        this(serviceName, config, hz, TransportConfig.DEFAULT);
+    }
+
+    public AdaptiveRouter(String serviceName, AdaptiveRouterConfig config, HazelcastInstance hz,
+                          TransportConfig transport){
+        config.check();
+        this.serviceName = serviceName;
+        this.instanceId = hz.getLocalEndpoint().getUuid().toString();
+        this.config = config;
+        this.decisions = hz.getRingbuffer(PipelineDispatcherFactory.ROUTING_DECISIONS);
+
+        int n = config.getWeights().size();
+        this.versions = config.getWeights().keySet().toArray(new String[0]);
+        this.routes = new RequestRoute[n];
+        this.latencies = new LatencyHistogram[n][config.getWindows()];
+        this.failures = new LongAdder[n][config.getWindows()];
+        for(int i=0; i < n; ++i){
+            routes[i] = transport.newRoute(hz, serviceName, versions[i]);
+            for(int w=0; w < config.getWindows(); ++w){
+                latencies[i][w] = new LatencyHistogram();
+                failures[i][w] = new LongAdder();
+            }
+        }
+
+        this.targetShares = new double[n];
+        this.shares = new double[n];
+        if (config.getPolicy() == AdaptiveRouterConfig.Policy.GUARDRAIL){
+            double total = config.getWeights().values().stream().mapToDouble(Double::doubleValue).sum();
+            for(int i=0; i < n; ++i) targetShares[i] = config.getWeights().get(versions[i]) / total;
+            this.baseline = Arrays.asList(versions).indexOf(config.getBaseline());
+            System.arraycopy(targetShares, 0, shares, 0, n);
+        } else {
+            // the first version listed is preferred until there is evidence that another one is faster
+            this.baseline = -1;
+            this.best = 0;
+            setLeastLatencyShares();
+        }
+
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(config.getIntervalMs());
+        this.nextEvaluation = new AtomicLong(System.nanoTime() + intervalNanos);
+        this.aliasTable = new AliasTable(shares);
+        publish("configured", null);
+    }
+
+    @Override
+    public RequestRoute route() {
+        return routes.length == 1 ? routes[0] : routes[aliasTable.sample()];
+    }
+
+    @Override
+    public void onResponse(RequestRoute route, long latencyNanos) {
+        int i = indexOf(route);
+        if (i < 0) return;  // RETURN
+
+        latencies[i][window].record(latencyNanos);
+        maybeEvaluate();
+    }
+
+    @Override
+    public void onFailure(RequestRoute route) {
+        int i = indexOf(route);
+        if (i < 0) return;  // RETURN
+
+        failures[i][window].increment();
+        maybeEvaluate();
+    }
+
+    /**
+     * @return the share of traffic currently routed to each version, by version name
+     */
+    public synchronized Map<String, Double> getShares(){
+        Map<String, Double> result = new LinkedHashMap<>();
+        for(int i=0; i < versions.length; ++i) result.put(versions[i], shares[i]);
+        return result;
+    }
+
+    /**
+     * @return the most recent routing decision, as JSON
+     */
+    public String getLastDecision(){
+        return lastDecision;
+    }
+
+    public AdaptiveRouterConfig getConfig(){
+        return config;
+    }
+
+    /*
+     * Routes are compared by identity.  Outcomes of requests routed by a previous router are not found.
+     */
+    private int indexOf(RequestRoute route){
+        for(int i=0; i < routes.length; ++i) if (routes[i] == route) return i;  // RETURN
+
+        return -1;
+    }
+
+    private void maybeEvaluate(){
+        long next = nextEvaluation.get();
+        if (System.nanoTime() - next < 0 || !nextEvaluation.compareAndSet(next, next + intervalNanos)) return;  // RETURN
+
+        // if no traffic arrived for a while, do not evaluate repeatedly to catch up
+        if (System.nanoTime() - nextEvaluation.get() > 0) nextEvaluation.set(System.nanoTime() + intervalNanos);
+
+        try {
+            evaluate();
+        } catch(RuntimeException x){
+            log.warn("Error while evaluating the routing of {}", serviceName, x);
+        }
+    }
+
+    private synchronized void evaluate(){
+        Sample []samples = new Sample[routes.length];
+        for(int i=0; i < routes.length; ++i) samples[i] = sample(i);
+
+        // start a new window, it replaces the oldest one
+        int next = (window + 1) % config.getWindows();
+        for(int i=0; i < routes.length; ++i){
+            latencies[i][next].reset();
+            failures[i][next].reset();
+        }
+        window = next;
+
+        double []previous = shares.clone();
+        List<String> reasons = new ArrayList<>();
+        if (config.getPolicy() == AdaptiveRouterConfig.Policy.GUARDRAIL)
+            evaluateGuardrails(samples, reasons);
+        else
+            evaluateLeastLatency(samples, reasons);
+
+        if (!Arrays.equals(previous, shares)){
+            aliasTable = new AliasTable(shares);
+            publish(String.join("; ", reasons), samples);
+        }
+    }
+
+    private Sample sample(int i){
+        LatencyHistogram merged = new LatencyHistogram();
+        long failed = 0;
+        for(int w=0; w < config.getWindows(); ++w){
+            merged.add(latencies[i][w]);
+            failed += failures[i][w].sum();
+        }
+        return new Sample(merged.getCount(), failed, merged.getValueAtPercentile(config.getPercentile()));
+    }
+
+    private void evaluateGuardrails(Sample []samples, List<String> reasons){
+        Sample base = samples[baseline];
+        double others = 0.0;
+        for(int i=0; i < routes.length; ++i){
+            if (i == baseline) continue;  // CONTINUE
+
+            Sample s = samples[i];
+            if (s.total() >= config.getMinSamples()){
+                String violation = violation(s, base);
+                if (violation != null){
+                    double floor = Math.min(config.getMinShare(), targetShares[i]);
+                    double backedOff = Math.max(floor, shares[i] / 2);
+                    if (backedOff < shares[i]) reasons.add(versions[i] + " backed off, " + violation);
+                    shares[i] = backedOff;
+                } else if (shares[i] < targetShares[i]){
+                    shares[i] = Math.min(targetShares[i], shares[i] + targetShares[i] / RECOVERY_STEPS);
+                    reasons.add(versions[i] + " within guardrails, restoring share");
+                }
+            }
+            others += shares[i];
+        }
+        shares[baseline] = Math.max(0.0, 1.0 - others);
+    }
+
+    /*
+     * Returns a description of the guardrail that the sample violates, or null if it violates none.
+     */
+    private String violation(Sample s, Sample base){
+        if (s.errorRate() > config.getMaxErrorRate())
+            return String.format("error rate %.4f > %.4f", s.errorRate(), config.getMaxErrorRate());  // RETURN
+
+        if (base.total() >= config.getMinSamples() && base.latencyNanos > 0 &&
+                s.latencyNanos > config.getMaxLatencyRatio() * base.latencyNanos){
+            return String.format("p%s %.3f ms > %.2f x baseline %.3f ms", config.getPercentile(),
+                    s.latencyNanos / 1e6, config.getMaxLatencyRatio(), base.latencyNanos / 1e6);  // RETURN
+        }
+        return null;
+    }
+
+    private void evaluateLeastLatency(Sample []samples, List<String> reasons){
+        int fastest = -1;
+        for(int i=0; i < routes.length; ++i){
+            Sample s = samples[i];
+            if (s.total() < config.getMinSamples() || s.errorRate() > config.getMaxErrorRate()) continue;  // CONTINUE
+
+            if (fastest < 0 || s.latencyNanos < samples[fastest].latencyNanos) fastest = i;
+        }
+        if (fastest < 0 || fastest == best) return;  // RETURN
+
+        Sample current = samples[best];
+        boolean bestUnhealthy = current.total() >= config.getMinSamples() && current.errorRate() > config.getMaxErrorRate();
+        if (bestUnhealthy){
+            reasons.add(String.format("%s error rate %.4f > %.4f, switching to %s", versions[best],
+                    current.errorRate(), config.getMaxErrorRate(), versions[fastest]));
+        } else if (current.total() >= config.getMinSamples() &&
+                samples[fastest].latencyNanos < SWITCH_RATIO * current.latencyNanos){
+            reasons.add(String.format("%s p%s %.3f ms is faster than %s %.3f ms", versions[fastest],
+                    config.getPercentile(), samples[fastest].latencyNanos / 1e6, versions[best],
+                    current.latencyNanos / 1e6));
+        } else {
+            return;  // RETURN
+        }
+
+        best = fastest;
+        setLeastLatencyShares();
+    }
+
+    private void setLeastLatencyShares(){
+        for(int i=0; i < routes.length; ++i) shares[i] = config.getMinShare();
+        shares[best] = 1.0 - config.getMinShare() * (routes.length - 1);
+    }
+
+    /*
+     * Records a change of the shares.  samples is null for the initial decision.
+     */
+    private void publish(String reason, Sample []samples){
+        Map<String, Object> decision = new LinkedHashMap<>();
+        decision.put("time", Instant.now().toString());
+        decision.put("service", serviceName);
+        decision.put("instance", instanceId);
+        decision.put("policy", config.getPolicy().name());
+        decision.put("reason", reason);
+        Map<String, Object> byVersion = new LinkedHashMap<>();
+        for(int i=0; i < versions.length; ++i){
+            Map<String, Object> version = new LinkedHashMap<>();
+            version.put("share", shares[i]);
+            if (samples != null){
+                version.put("samples", samples[i].count);
+                version.put("failures", samples[i].failures);
+                version.put("latency_ms", samples[i].latencyNanos / 1e6);
+            }
+            byVersion.put(versions[i], version);
+        }
+        decision.put("versions", byVersion);
+
+        String json;
+        try {
+            json = MAPPER.writeValueAsString(decision);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException(e);   // THROW
+        }
+
+        lastDecision = json;
+        log.info("Routing decision for \"" + serviceName + "\" : " + json);
+        decisions.addAsync(json, OverflowPolicy.OVERWRITE).whenComplete((seq, t) -> {
+            if (t != null) log.warn("Could not record a routing decision for {}", serviceName, t);
+        });
+    }
+
+    private static class Sample {
+        final long count;
+        final long failures;
+        final long latencyNanos;
+
+        Sample(long count, long failures, long latencyNanos){
+            this.count = count;
+            this.failures = failures;
+            this.latencyNanos = latencyNanos;
+        }
+
+        long total(){
+            return count + failures;
+        }
+
+        double errorRate(){
+            return total() == 0 ? 0.0 : (double) failures / total();
+        }
+    }
+}
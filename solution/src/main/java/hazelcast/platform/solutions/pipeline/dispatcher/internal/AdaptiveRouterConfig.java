@@ -0,0 +1,203 @@
+package hazelcast.platform.solutions.pipeline.dispatcher.internal;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The routing configuration of an AdaptiveRouter.  It is stored in the router_config map as JSON, like the
+ * configuration of a WeightedRouter, and is recognized by its "policy" field.  For example:
+ * <pre>
+ * {
+ *   "policy": "GUARDRAIL",
+ *   "baseline": "v1",
+ *   "weights": {"v1": 9, "v2": 1},
+ *   "max_latency_ratio": 1.5,
+ *   "max_error_rate": 0.01,
+ *   "min_share": 0.01
+ * }
+ * </pre>
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class AdaptiveRouterConfig {
+
+    public enum Policy {
+        /**
+         * Versions other than the baseline receive their configured share of traffic while they stay within the
+         * guardrails.  A version that exceeds them is backed off to the minimum share, the rest goes to the baseline.
+         */
+        GUARDRAIL,
+
+        /**
+         * The healthy version with the lowest latency receives all traffic except for the minimum share, which every
+         * other version receives so that its latency continues to be measured.
+         */
+        LEAST_LATENCY
+    }
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @JsonProperty("policy")
+    private Policy policy;
+
+    // the target weight of each version, in the order given.  For LEAST_LATENCY only the version names are used.
+    @JsonProperty("weights")
+    private LinkedHashMap<String, Double> weights;
+
+    // GUARDRAIL only, the version that others are compared with and that takes the traffic they give up
+    @JsonProperty("baseline")
+    private String baseline;
+
+    @JsonProperty("percentile")
+    private double percentile = 99.0;
+
+    @JsonProperty("max_latency_ratio")
+    private double maxLatencyRatio = 1.5;
+
+    @JsonProperty("max_error_rate")
+    private double maxErrorRate = 0.01;
+
+    @JsonProperty("min_share")
+    private double minShare = 0.01;
+
+    @JsonProperty("interval_ms")
+    private long intervalMs = 1000;
+
+    @JsonProperty("windows")
+    private int windows = 10;
+
+    @JsonProperty("min_samples")
+    private int minSamples = 100;
+
+    /**
+     * @return true if the JSON routing configuration is for an AdaptiveRouter rather than a WeightedRouter
+     */
+    public static boolean isAdaptive(String json){
+        try {
+            JsonNode node = MAPPER.readTree(json);
+            return node.isObject() && node.has("policy");
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException(e);   // THROW
+        }
+    }
+
+    public static AdaptiveRouterConfig parse(String json){
+        AdaptiveRouterConfig result;
+        try {
+            result = MAPPER.readValue(json, AdaptiveRouterConfig.class);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException(e);   // THROW
+        }
+        result.check();
+        return result;
+    }
+
+    /*
+     * Throws a RuntimeException if all checks are not passed;
+     */
+    public void check(){
+        if (policy == null){
+            throw new RuntimeException("Error while creating AdaptiveRouter configuration.  " +
+                    "policy must be one of GUARDRAIL or LEAST_LATENCY");
+        }
+
+        if (weights == null || weights.isEmpty() || weights.size() > 16){
+            throw new RuntimeException("Error while creating AdaptiveRouter configuration.  " +
+                    "weights must name between 1 and 16 versions");
+        }
+
+        for(Map.Entry<String, Double> entry: weights.entrySet()){
+            if (entry.getValue() == null || entry.getValue() < 0.0){
+                throw new RuntimeException("Error while creating AdaptiveRouter configuration.  " +
+                        "The weight of " + entry.getKey() + " must be a non-negative number");
+            }
+        }
+
+        if (policy == Policy.GUARDRAIL){
+            if (baseline == null || !weights.containsKey(baseline)){
+                throw new RuntimeException("Error while creating AdaptiveRouter configuration.  " +
+                        "A GUARDRAIL policy requires a baseline that is one of the versions in weights");
+            }
+            if (weights.values().stream().mapToDouble(Double::doubleValue).sum() <= 0.0){
+                throw new RuntimeException("Error while creating AdaptiveRouter configuration.  " +
+                        "At least one weight must be positive");
+            }
+        }
+
+        if (minShare < 0.0 || minShare * (weights.size() - 1) >= 1.0){
+            throw new RuntimeException("Error while creating AdaptiveRouter configuration.  " +
+                    "min_share must be at least 0 and the minimum shares of all versions must add up to less than 1");
+        }
+
+        if (percentile <= 0.0 || percentile > 100.0 || maxLatencyRatio < 1.0 || maxErrorRate < 0.0){
+            throw new RuntimeException("Error while creating AdaptiveRouter configuration.  " +
+                    "percentile must be in (0,100], max_latency_ratio at least 1 and max_error_rate at least 0");
+        }
+
+        if (intervalMs <= 0 || windows <= 0 || minSamples <= 0){
+            throw new RuntimeException("Error while creating AdaptiveRouter configuration.  " +
+                    "interval_ms, windows and min_samples must be positive");
+        }
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    public Map<String, Double> getWeights() {
+        return weights;
+    }
+
+    public String getBaseline() {
+        return baseline;
+    }
+
+    public double getPercentile() {
+        return percentile;
+    }
+
+    public double getMaxLatencyRatio() {
+        return maxLatencyRatio;
+    }
+
+    public double getMaxErrorRate() {
+        return maxErrorRate;
+    }
+
+    public double getMinShare() {
+        return minShare;
+    }
+
+    public long getIntervalMs() {
+        return intervalMs;
+    }
+
+    public int getWindows() {
+        return windows;
+    }
+
+    public int getMinSamples() {
+        return minSamples;
+    }
+
+    @Override
+    public String toString() {
+        return "AdaptiveRouterConfig{" +
+                "policy=" + policy +
+                ", weights=" + weights +
+                ", baseline=" + baseline +
+                ", percentile=" + percentile +
+                ", maxLatencyRatio=" + maxLatencyRatio +
+                ", maxErrorRate=" + maxErrorRate +
+                ", minShare=" + minShare +
+                ", intervalMs=" + intervalMs +
+                ", windows=" + windows +
+                ", minSamples=" + minSamples +
+                '}';
+    }
+}
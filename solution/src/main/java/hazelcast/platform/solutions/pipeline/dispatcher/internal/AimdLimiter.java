@@ -0,0 +1,58 @@
+package hazelcast.platform.solutions.pipeline.dispatcher.internal;
+
+import hazelcast.platform.solutions.pipeline.dispatcher.LimiterMode;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An additive increase, multiplicative decrease limiter.  See {@link LimiterMode#AIMD}.
+ */
+public class AimdLimiter extends StaticLimiter {
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final double backoffRatio;
+
+    private final long latencyThresholdNanos;
+
+    /**
+     * @param latencyThresholdMs responses slower than this are treated like timeouts, 0 to only react to timeouts
+     */
+    public AimdLimiter(int initialLimit, int minLimit, int maxLimit, double backoffRatio, long latencyThresholdMs){
+        super(Math.max(minLimit, Math.min(maxLimit, initialLimit)));
+        if (minLimit <= 0 || maxLimit < minLimit)
+            throw new RuntimeException("The concurrency limiter requires 0 < min limit <= max limit");  // THROW
+
+        if (backoffRatio <= 0.0 || backoffRatio >= 1.0)
+            throw new RuntimeException("The concurrency limiter backoff ratio must be in (0.0, 1.0)");  // THROW
+
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.latencyThresholdNanos = TimeUnit.MILLISECONDS.toNanos(latencyThresholdMs);
+    }
+
+    @Override
+    protected void onSample(long rttNanos, boolean dropped, int inFlight) {
+        if (dropped || (latencyThresholdNanos > 0 && rttNanos > latencyThresholdNanos)){
+            // a decrease must not be lost to a concurrent increase
+            while(true){
+                int current = limit.get();
+                int next = Math.max(minLimit, (int) (current * backoffRatio));
+                if (next == current || limit.compareAndSet(current, next)) return;  // RETURN
+            }
+        }
+
+        // only grow while the limit is actually being used, otherwise it grows without bound at low load.  Losing a
+        // race here only means that one increment is skipped.
+        int current = limit.get();
+        if (inFlight * 2 >= current && current < maxLimit) limit.compareAndSet(current, current + 1);
+    }
+
+    @Override
+    public LimiterMode getMode() {
+        return LimiterMode.AIMD;
+    }
+}
@@ -0,0 +1,79 @@
+package hazelcast.platform.solutions.pipeline.dispatcher.internal;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Samples an index from a discrete probability distribution in constant time, using Vose's alias method.
+ * The table is built once from a list of weights.  Sampling draws a single random double from ThreadLocalRandom
+ * and does not allocate, so it can be used concurrently from any number of threads without contention.
+ */
+public class AliasTable {
+
+    private final double []probability;
+
+    private final int []alias;
+
+    /**
+     * @param weights non-negative weights, at least one of which must be positive.  The weights do not need to
+     *                add up to any particular value.
+     */
+    public AliasTable(double []weights){
+        int n = weights.length;
+        if (n == 0) throw new IllegalArgumentException("AliasTable requires at least one weight");
+
+        double total = 0.0;
+        for(double w: weights){
+            if (w < 0.0 || Double.isNaN(w)) throw new IllegalArgumentException("AliasTable weights must be non-negative");
+            total += w;
+        }
+        if (total <= 0.0) throw new IllegalArgumentException("At least one AliasTable weight must be positive");
+
+        probability = new double[n];
+        alias = new int[n];
+
+        // scale the weights so that the average is 1, then pair each "small" column with a "large" one
+        double []scaled = new double[n];
+        int []small = new int[n];
+        int []large = new int[n];
+        int smallCount = 0;
+        int largeCount = 0;
+        for(int i=0; i < n; ++i){
+            scaled[i] = weights[i] * n / total;
+            if (scaled[i] < 1.0) small[smallCount++] = i; else large[largeCount++] = i;
+        }
+
+        while(smallCount > 0 && largeCount > 0){
+            int s = small[--smallCount];
+            int l = large[--largeCount];
+            probability[s] = scaled[s];
+            alias[s] = l;
+            scaled[l] = (scaled[l] + scaled[s]) - 1.0;
+            if (scaled[l] < 1.0) small[smallCount++] = l; else large[largeCount++] = l;
+        }
+
+        // whatever remains is 1.0 up to rounding error
+        while(largeCount > 0){
+            int l = large[--largeCount];
+            probability[l] = 1.0;
+            alias[l] = l;
+        }
+        while(smallCount > 0){
+            int s = small[--smallCount];
+            probability[s] = 1.0;
+            alias[s] = s;
+        }
+    }
+
+    /**
+     * @return an index in [0, number of weights), chosen with probability proportional to its weight
+     */
+    public int sample(){
+        double u = ThreadLocalRandom.current().nextDouble() * probability.length;
+        int i = (int) u;
+        return (u - i) < probability[i] ? i : alias[i];
+    }
+
+    public int size(){
+        return probability.length;
+    }
+}
@@ -0,0 +1,80 @@
+package hazelcast.platform.solutions.pipeline.dispatcher.internal;
+
+import com.hazelcast.map.IMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Removes map entries asynchronously, in batches.  Keys are queued by {@link #remove(Object)} and removed with a
+ * single IMap.submitToKeys call whenever "batchSize" keys have accumulated or "flushIntervalMs" has elapsed.
+ * Hazelcast splits each submitToKeys call into one operation per partition, so the number of remote operations
+ * is proportional to the number of partitions touched rather than to the number of keys.
+ * <p>
+ * This class is safe for concurrent access.
+ */
+public class BatchingEntryRemover<K,V> {
+    private static final Logger log = LoggerFactory.getLogger(BatchingEntryRemover.class);
+
+    private final IMap<K,V> map;
+
+    private final int batchSize;
+
+    private final ConcurrentLinkedQueue<K> queue;
+
+    private final AtomicInteger queued;
+
+    private final ScheduledFuture<?> flushTask;
+
+    private final DeleteEntryProcessor<K,V> deleteProcessor;
+
+    public BatchingEntryRemover(IMap<K,V> map, int batchSize, long flushIntervalMs, ScheduledExecutorService scheduler){
+        this.map = map;
+        this.batchSize = batchSize;
+        this.queue = new ConcurrentLinkedQueue<>();
+        this.queued = new AtomicInteger();
+        this.deleteProcessor = new DeleteEntryProcessor<>();
+        this.flushTask = scheduler.scheduleWithFixedDelay(this::flush, flushIntervalMs, flushIntervalMs,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queues a key for removal.  The calling thread only performs a remote call if this completes a batch.
+     */
+    public void remove(K key){
+        queue.add(key);
+        if (queued.incrementAndGet() >= batchSize) flush();
+    }
+
+    /**
+     * Removes all queued keys.
+     */
+    public void flush(){
+        while(queued.get() > 0){
+            Set<K> batch = new HashSet<>();
+            K key;
+            while(batch.size() < batchSize && (key = queue.poll()) != null) batch.add(key);
+            if (batch.isEmpty()) break;  // BREAK - another thread took the remaining keys
+
+            queued.addAndGet(-batch.size());
+            map.submitToKeys(batch, deleteProcessor).whenComplete((r, t) -> {
+                if (t != null) log.warn("Failed to remove {} entries from {}", batch.size(), map.getName(), t);
+            });
+        }
+    }
+
+    /**
+     * Stops the periodic flush and removes any keys that are still queued.
+     */
+    public void close(){
+        flushTask.cancel(false);
+        flush();
+    }
+}
@@ -0,0 +1,173 @@
+package hazelcast.platform.solutions.pipeline.dispatcher.internal;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads the requests in a capture file written by TrafficRecorder, in the order in which they were captured.  A
+ * record that was cut short, for example because the dispatcher stopped while writing it, ends the file.
+ * TrafficRecorder truncates such a record before it appends to the file, see {@link #completeLength}.
+ */
+public class CaptureFileReader implements AutoCloseable {
+
+    /**
+     * A captured request
+     */
+    public static final class CapturedRequest {
+        private final String serviceName;
+        private final long timeMicros;
+        private final byte []request;
+
+        CapturedRequest(String serviceName, long timeMicros, byte []request){
+            this.serviceName = serviceName;
+            this.timeMicros = timeMicros;
+            this.request = request;
+        }
+
+        public String getServiceName() {
+            return serviceName;
+        }
+
+        /**
+         * @return the time at which the request was sent, in microseconds since the epoch
+         */
+        public long getTimeMicros() {
+            return timeMicros;
+        }
+
+        /**
+         * @return the request in Hazelcast serialized form
+         */
+        public byte[] getRequest() {
+            return request;
+        }
+    }
+
+    private final CountingInputStream counter;
+
+    private final DataInputStream in;
+
+    private final long fileLength;
+
+    private final Map<Short, String> serviceNames;
+
+    // the end of the last complete record
+    private long position;
+
+    public CaptureFileReader(String fileName) throws IOException {
+        this.fileLength = new File(fileName).length();
+        this.counter = new CountingInputStream(new BufferedInputStream(new FileInputStream(fileName)));
+        this.in = new DataInputStream(counter);
+        this.serviceNames = new HashMap<>();
+
+        if (in.readInt() != TrafficRecorder.MAGIC){
+            in.close();
+            throw new IOException(fileName + " is not a capture file");  // THROW
+        }
+
+        int version = in.readInt();
+        if (version != TrafficRecorder.FORMAT_VERSION){
+            in.close();
+            throw new IOException(fileName + " has an unsupported capture format version: " + version);  // THROW
+        }
+        this.position = counter.count;
+    }
+
+    /**
+     * Reads the whole file and returns the length of the part that can be read, which ends with the last complete
+     * and well formed record.
+     *
+     * @throws IOException if the file cannot be read or is not a capture file of the current version
+     */
+    public static long completeLength(String fileName) throws IOException {
+        try(CaptureFileReader reader = new CaptureFileReader(fileName)){
+            try {
+                while(reader.next() != null);
+            } catch(IOException x){
+                // a malformed record, everything before it can be read
+            }
+            return reader.position;
+        }
+    }
+
+    /**
+     * @return the next request, or null at the end of the file
+     */
+    public CapturedRequest next() throws IOException {
+        try {
+            while(true){
+                int tag = in.read();
+                if (tag < 0) return null;  // RETURN
+
+                short id = in.readShort();
+                if (tag == TrafficRecorder.SERVICE_RECORD){
+                    serviceNames.put(id, in.readUTF());
+                    position = counter.count;
+                    continue;  // CONTINUE
+                }
+
+                if (tag != TrafficRecorder.REQUEST_RECORD)
+                    throw new IOException("Unknown record type " + tag);  // THROW
+
+                String serviceName = serviceNames.get(id);
+                if (serviceName == null) throw new IOException("Undefined service id " + id);  // THROW
+
+                long timeMicros = in.readLong();
+                int length = in.readInt();
+                if (length < 0) throw new IOException("Invalid request length " + length);  // THROW
+
+                // a length beyond the end of the file belongs to a record that was cut short
+                if (counter.count + length > fileLength) return null;  // RETURN
+
+                byte []request = new byte[length];
+                in.readFully(request);
+                position = counter.count;
+                return new CapturedRequest(serviceName, timeMicros, request);
+            }
+        } catch(EOFException x){
+            return null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in){
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) ++count;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package hazelcast.platform.solutions.pipeline.dispatcher.internal;
+
+import hazelcast.platform.solutions.pipeline.dispatcher.ResponseChunk;
+
+import java.util.ArrayDeque;
+import java.util.TreeMap;
+import java.util.concurrent.Flow;
+
+/**
+ * Delivers the chunks of one streamed response to a single subscriber, in order and no faster than it requests them.
+ * <p>
+ * Chunks may arrive out of order, so chunks that arrive before their predecessors are held until the gap is filled.
+ * Chunks that have arrived but have not been requested yet are buffered.  The pipeline cannot be slowed down, so
+ * the number of buffered chunks is bounded by maxBufferedChunks: a subscriber that falls further behind fails with
+ * the overflow exception and the rest of the stream is discarded.  Chunks that arrive before the subscriber
+ * subscribes are buffered the same way.
+ * <p>
+ * offer is called by the thread that delivers responses.  The subscriber is signalled on whichever thread makes
+ * progress possible, the one delivering a chunk or the one requesting more, but never concurrently.
+ */
+public class ChunkStream<T> implements Flow.Publisher<T>, Flow.Subscription {
+
+    private final int maxBufferedChunks;
+
+    private final RuntimeException overflow;
+
+    // chunks that arrived before one of their predecessors, by index
+    private final TreeMap<Integer, ResponseChunk<T>> early;
+
+    // values in order, waiting for demand
+    private final ArrayDeque<T> ready;
+
+    private Flow.Subscriber<? super T> subscriber;
+
+    // the index of the next chunk to move to ready
+    private int nextIndex;
+
+    // the index of the last chunk, -1 until it has arrived
+    private int lastIndex = -1;
+
+    // the number of chunks that have arrived, including discarded ones
+    private int received;
+
+    private long demand;
+
+    private Throwable failure;
+
+    // chunks are counted but no longer kept, because the stream failed or was cancelled
+    private boolean discarding;
+
+    private boolean cancelled;
+
+    // onComplete or onError has been signalled
+    private boolean terminated;
+
+    // a thread is signalling the subscriber
+    private boolean emitting;
+
+    public ChunkStream(int maxBufferedChunks, RuntimeException overflow){
+        this.maxBufferedChunks = maxBufferedChunks;
+        this.overflow = overflow;
+        this.early = new TreeMap<>();
+        this.ready = new ArrayDeque<>();
+    }
+
+    /**
+     * Adds a chunk that has arrived from the pipeline.
+     *
+     * @return true if all of the chunks of the response, including the last one, have now arrived
+     */
+    public boolean offer(ResponseChunk<T> chunk){
+        synchronized(this){
+            ++received;
+            if (chunk.isLast()) lastIndex = chunk.getIndex();
+
+            if (!discarding){
+                if (chunk.getIndex() == nextIndex){
+                    append(chunk);
+                    for(ResponseChunk<T> next = early.remove(nextIndex); next != null; next = early.remove(nextIndex))
+                        append(next);
+                } else if (chunk.getIndex() > nextIndex){
+                    early.put(chunk.getIndex(), chunk);
+                }
+
+                if (ready.size() + early.size() > maxBufferedChunks) failLocked(overflow);
+            }
+        }
+        drain();
+
+        synchronized(this){
+            // duplicates can only be recognized while chunks are kept
+            return lastIndex >= 0 && (discarding ? received > lastIndex : nextIndex > lastIndex);
+        }
+    }
+
+    private void append(ResponseChunk<T> chunk){
+        if (chunk.getValue() != null) ready.add(chunk.getValue());
+        ++nextIndex;
+    }
+
+    /**
+     * Ends the stream with an error, unless it has already ended.  Buffered chunks are discarded.
+     */
+    public void fail(Throwable t){
+        synchronized(this){
+            failLocked(t);
+        }
+        drain();
+    }
+
+    private void failLocked(Throwable t){
+        if (terminated || failure != null) return;  // RETURN
+
+        failure = t;
+        discarding = true;
+        early.clear();
+        ready.clear();
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> s) {
+        boolean first;
+        synchronized(this){
+            first = subscriber == null;
+            if (first) subscriber = s;
+        }
+
+        if (!first){
+            s.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            s.onError(new IllegalStateException("A streamed response can only be subscribed to once"));
+            return;  // RETURN
+        }
+
+        s.onSubscribe(this);
+        drain();
+    }
+
+    @Override
+    public void request(long n) {
+        synchronized(this){
+            if (n <= 0){
+                failLocked(new IllegalArgumentException("The number of chunks requested must be positive"));
+            } else {
+                demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+            }
+        }
+        drain();
+    }
+
+    @Override
+    public void cancel() {
+        synchronized(this){
+            cancelled = true;
+            discarding = true;
+            early.clear();
+            ready.clear();
+        }
+    }
+
+    /*
+     * Signals the subscriber, outside of the lock, for as long as there is something to signal.  The emitting flag
+     * stops a reentrant or concurrent call from signalling at the same time, it leaves the work to the thread that is
+     * already emitting.
+     */
+    private void drain(){
+        Flow.Subscriber<? super T> s;
+        synchronized(this){
+            if (emitting || subscriber == null) return;  // RETURN
+
+            emitting = true;
+            s = subscriber;
+        }
+
+        while(true){
+            T value = null;
+            Throwable error = null;
+            boolean complete = false;
+            synchronized(this){
+                if (cancelled || terminated){
+                    emitting = false;
+                    return;  // RETURN
+                }
+
+                if (failure != null){
+                    error = failure;
+                    terminated = true;
+                } else if (demand > 0 && !ready.isEmpty()){
+                    value = ready.poll();
+                    if (demand != Long.MAX_VALUE) --demand;
+                } else if (ready.isEmpty() && lastIndex >= 0 && nextIndex > lastIndex){
+                    complete = true;
+                    terminated = true;
+                } else {
+                    emitting = false;
+                    return;  // RETURN
+                }
+            }
+
+            if (error != null)
+                s.onError(error);
+            else if (complete)
+                s.onComplete();
+            else
+                s.onNext(value);
+        }
+    }
+}
@@ -1,16 +1,22 @@
 package hazelcast.platform.solutions.pipeline.dispatcher.internal;
 
+import com.hazelcast.core.HazelcastInstance;
+import hazelcast.platform.solutions.pipeline.dispatcher.RequestRoute;
 import hazelcast.platform.solutions.pipeline.dispatcher.RequestRouter;
 
 public class DefaultRequestRouter implements RequestRouter {
 
-    private final  String requestMapName;
-    public DefaultRequestRouter(String name){
-        this.requestMapName = name + "_request";
+    private final RequestRoute route;
+    public DefaultRequestRouter(String name, HazelcastInstance hz){
+        this.route = new RequestRoute(hz, name, null);
+    }
+
+    public DefaultRequestRouter(String name, HazelcastInstance hz, TransportConfig transport){
+        this.route = transport.newRoute(hz, name, null);
     }
 
     @Override
-    public String getRequestMapName() {
-        return requestMapName;
+    public RequestRoute route() {
+        return route;
     }
 }
@@ -0,0 +1,20 @@
+package hazelcast.platform.solutions.pipeline.dispatcher.internal;
+
+import com.hazelcast.map.EntryProcessor;
+
+import java.util.Map;
+
+/**
+ * Deletes the entries it is applied to.  Used with IMap.submitToKeys to remove many entries with one
+ * operation per partition.
+ * <p>
+ * This class must be on the classpath of the cluster members.
+ */
+public class DeleteEntryProcessor<K,V> implements EntryProcessor<K,V,Void> {
+
+    @Override
+    public Void process(Map.Entry<K, V> entry) {
+        entry.setValue(null);
+        return null;
+    }
+}
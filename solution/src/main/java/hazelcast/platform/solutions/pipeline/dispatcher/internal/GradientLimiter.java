@@ -0,0 +1,123 @@
+package hazelcast.platform.solutions.pipeline.dispatcher.internal;
+
+import hazelcast.platform.solutions.pipeline.dispatcher.LimiterMode;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A limiter that compares recent round trip times with their long term average.  See {@link LimiterMode#GRADIENT}.
+ * <p>
+ * Samples are only added to counters on the request path.  Once per window, the first thread to complete a request
+ * after the window has ended recomputes the limit:
+ * <pre>
+ *     gradient = clamp(TOLERANCE * longRtt / windowRtt, 0.5, 1.0)
+ *     target   = limit * gradient + sqrt(limit)
+ *     limit    = limit + SMOOTHING * (target - limit)
+ * </pre>
+ * The sqrt(limit) term lets the limit grow while latency is stable.  It is left out if less than half of the limit
+ * was used during the window.  If any request timed out during the window, the limit is multiplied by the backoff
+ * ratio instead.
+ */
+public class GradientLimiter extends StaticLimiter {
+
+    // how much the recent round trip time may exceed the long term average before the limit shrinks
+    private static final double TOLERANCE = 1.5;
+
+    private static final double SMOOTHING = 0.2;
+
+    private static final double LONG_RTT_SMOOTHING = 0.05;
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final double backoffRatio;
+
+    private final long windowNanos;
+
+    private final LongAdder rttSum;
+
+    private final LongAdder samples;
+
+    private final LongAdder drops;
+
+    private final LongAccumulator maxInFlight;
+
+    private final AtomicLong nextUpdateNanos;
+
+    // the long term average round trip time, 0 until the first window with samples
+    private volatile double longRttNanos;
+
+    public GradientLimiter(int initialLimit, int minLimit, int maxLimit, double backoffRatio, long windowMs){
+        super(Math.max(minLimit, Math.min(maxLimit, initialLimit)));
+        if (minLimit <= 0 || maxLimit < minLimit)
+            throw new RuntimeException("The concurrency limiter requires 0 < min limit <= max limit");  // THROW
+
+        if (backoffRatio <= 0.0 || backoffRatio >= 1.0)
+            throw new RuntimeException("The concurrency limiter backoff ratio must be in (0.0, 1.0)");  // THROW
+
+        if (windowMs <= 0) throw new RuntimeException("The concurrency limiter window must be positive");
+
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+        this.rttSum = new LongAdder();
+        this.samples = new LongAdder();
+        this.drops = new LongAdder();
+        this.maxInFlight = new LongAccumulator(Math::max, 0);
+        this.nextUpdateNanos = new AtomicLong(System.nanoTime() + windowNanos);
+    }
+
+    @Override
+    protected void onSample(long rttNanos, boolean dropped, int inFlight) {
+        if (dropped){
+            drops.increment();
+        } else {
+            rttSum.add(rttNanos);
+            samples.increment();
+        }
+        maxInFlight.accumulate(inFlight);
+
+        long now = System.nanoTime();
+        long next = nextUpdateNanos.get();
+        if (now - next >= 0 && nextUpdateNanos.compareAndSet(next, now + windowNanos)) update();
+    }
+
+    private void update(){
+        long n = samples.sumThenReset();
+        long sum = rttSum.sumThenReset();
+        long dropCount = drops.sumThenReset();
+        long used = maxInFlight.getThenReset();
+        int current = limit.get();
+
+        double target;
+        if (dropCount > 0){
+            target = current * backoffRatio;
+        } else if (n > 0){
+            double windowRtt = Math.max(1.0, (double) sum / n);
+            double longRtt = longRttNanos == 0.0 ? windowRtt :
+                    longRttNanos + LONG_RTT_SMOOTHING * (windowRtt - longRttNanos);
+
+            // after a period of overload the long term average is inflated, let it come down quickly
+            if (longRtt > 2.0 * windowRtt) longRtt *= 0.95;
+            longRttNanos = longRtt;
+
+            double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longRtt / windowRtt));
+            double growth = used * 2 < current ? 0.0 : Math.sqrt(current);
+            target = current + SMOOTHING * (current * gradient + growth - current);
+        } else {
+            return;  // RETURN
+        }
+
+        limit.set((int) Math.max(minLimit, Math.min(maxLimit, Math.round(target))));
+    }
+
+    @Override
+    public LimiterMode getMode() {
+        return LimiterMode.GRADIENT;
+    }
+}
@@ -0,0 +1,119 @@
+package hazelcast.platform.solutions.pipeline.dispatcher.internal;
+
+import hazelcast.platform.solutions.pipeline.dispatcher.metrics.LatencyHistogram;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides when a request that has not received a response is hedged, i.e. sent a second time, and whether the
+ * hedge budget allows it.
+ * <p>
+ * The hedge delay is either fixed or follows a percentile of the observed latency.  In the latter case, latencies are
+ * recorded into a histogram that is summarized and cleared once per second, and no request is hedged until the
+ * first summary is available.
+ * <p>
+ * The budget is a token bucket.  Each request that is sent adds "budget" tokens and each hedge takes one, so over
+ * time at most that fraction of requests is hedged.  The bucket holds at most budget * maxPendingRequests tokens,
+ * which bounds the number of hedges in a burst to the same fraction of the dispatcher's capacity.
+ * <p>
+ * Only record may be called concurrently.  The other methods must be called from a single thread.
+ */
+public class HedgingPolicy {
+
+    private static final long SUMMARY_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    // fewer samples than this in an interval do not change the delay
+    private static final long MIN_SAMPLES = 100;
+
+    private final long fixedDelayNanos;
+
+    private final double percentile;
+
+    private final double budget;
+
+    private final double maxTokens;
+
+    private final LatencyHistogram recent;
+
+    private long delayNanos;
+
+    private long nextSummary;
+
+    private double tokens;
+
+    private long lastRequestCount;
+
+    private volatile long hedgeCount;
+
+    /**
+     * @param delayMs the fixed hedge delay, 0 to use the given percentile of the observed latency instead
+     * @param percentile in (0, 100)
+     * @param budget the largest fraction of requests that may be hedged, in [0, 1]
+     */
+    public HedgingPolicy(long delayMs, double percentile, double budget, int maxPendingRequests){
+        if (delayMs < 0 || percentile <= 0.0 || percentile >= 100.0 || budget < 0.0 || budget > 1.0){
+            throw new RuntimeException("Invalid hedging configuration.  delay_ms must be at least 0, " +
+                    "percentile must be in (0,100) and budget must be in [0,1]");
+        }
+
+        this.fixedDelayNanos = TimeUnit.MILLISECONDS.toNanos(delayMs);
+        this.percentile = percentile;
+        this.budget = budget;
+        this.maxTokens = Math.max(1.0, budget * maxPendingRequests);
+        this.recent = new LatencyHistogram();
+        this.delayNanos = delayMs > 0 ? fixedDelayNanos : Long.MAX_VALUE;
+        this.nextSummary = System.nanoTime() + SUMMARY_INTERVAL_NANOS;
+    }
+
+    /**
+     * Records the latency of a request that was not hedged.
+     */
+    public void record(long latencyNanos){
+        if (fixedDelayNanos == 0) recent.record(latencyNanos);
+    }
+
+    /**
+     * Adds tokens for the requests sent since the last call and, once per second, recomputes the delay.
+     *
+     * @param requestCount the total number of requests sent so far, not counting hedges
+     * @return the current hedge delay in nanoseconds, Long.MAX_VALUE if requests are not to be hedged yet
+     */
+    public long update(long now, long requestCount){
+        tokens = Math.min(maxTokens, tokens + budget * (requestCount - lastRequestCount));
+        lastRequestCount = requestCount;
+
+        if (fixedDelayNanos == 0 && now - nextSummary >= 0){
+            nextSummary = now + SUMMARY_INTERVAL_NANOS;
+            if (recent.getCount() >= MIN_SAMPLES){
+                delayNanos = Math.max(1, recent.getValueAtPercentile(percentile));
+                recent.reset();
+            }
+        }
+        return delayNanos;
+    }
+
+    /**
+     * Takes a token for a hedge.
+     *
+     * @return false if the budget is exhausted
+     */
+    public boolean tryAcquire(){
+        if (tokens < 1.0) return false;  // RETURN
+
+        tokens -= 1.0;
+        ++hedgeCount;
+        return true;
+    }
+
+    /**
+     * Returns a token that was taken for a hedge that was not sent after all.
+     */
+    public void release(){
+        tokens += 1.0;
+        --hedgeCount;
+    }
+
+    public long getHedgeCount(){
+        return hedgeCount;
+    }
+}
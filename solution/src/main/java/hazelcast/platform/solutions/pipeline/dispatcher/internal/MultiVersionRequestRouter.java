@@ -1,24 +1,36 @@
 package hazelcast.platform.solutions.pipeline.dispatcher.internal;
 
+import com.hazelcast.core.HazelcastInstance;
+import hazelcast.platform.solutions.pipeline.dispatcher.RequestRoute;
 import hazelcast.platform.solutions.pipeline.dispatcher.RequestRouter;
 
-import java.util.Random;
+import java.util.List;
 
 public class MultiVersionRequestRouter implements RequestRouter {
 
-    private final Random rand;
-    private final MultiVersionRequestRouterConfig config;
-    private final String name;
+    private final RequestRoute []routes;
 
-    public MultiVersionRequestRouter(String name, MultiVersionRequestRouterConfig config){
-        rand = new Random();
-        this.config = config;
-        this.name = name;
+    private final AliasTable aliasTable;
+
+    public MultiVersionRequestRouter(String name, MultiVersionRequestRouterConfig config, HazelcastInstance hz){
+        config.check();
+        List<String> versions = config.getVersions();
+        List<Float> percentages = config.getPercentages();
+
+        // the configuration holds cumulative percentages, the alias table needs the weight of each version
+        routes = new RequestRoute[versions.size()];
+        double []weights = new double[versions.size()];
+        float prev = 0.0f;
+        for(int i=0; i < routes.length; ++i){
+            routes[i] = new RequestRoute(hz, name, versions.get(i));
+            weights[i] = percentages.get(i) - prev;
+            prev = percentages.get(i);
+        }
+        aliasTable = new AliasTable(weights);
     }
 
     @Override
-    public String getRequestMapName() {
-        String version = config.getVersion(rand.nextFloat());
-        return name + "_" + version + "_request";
+    public RequestRoute route() {
+        return routes.length == 1 ? routes[0] : routes[aliasTable.sample()];
     }
 }
@@ -0,0 +1,158 @@
+package hazelcast.platform.solutions.pipeline.dispatcher.internal;
+
+import hazelcast.platform.solutions.pipeline.dispatcher.RequestPriority;
+import hazelcast.platform.solutions.pipeline.dispatcher.RequestRoute;
+import hazelcast.platform.solutions.pipeline.dispatcher.metrics.VersionMetrics;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A request that has been sent and is waiting for its response.  See PendingRequestRegistry.
+ */
+public class PendingRequest<P> {
+
+    private final long sequence;
+
+    private final long startNanos;
+
+    private final CompletableFuture<P> result;
+
+    // the route returned by the router, the request was written to the lane of its priority
+    private final RequestRoute route;
+
+    private final RequestPriority priority;
+
+    private final VersionMetrics versionMetrics;
+
+    private final ResponseCache.Key cacheKey;
+
+    private final Object request;
+
+    private final PendingRequest<P> primary;
+
+    private final ChunkStream<?> stream;
+
+    private final RequestTrace trace;
+
+    // the start time, or for a streamed response the arrival time of the latest chunk, used to time requests out
+    private volatile long lastActivityNanos;
+
+    // streamed responses only, the time from the start to the first chunk, 0 until the first chunk arrives
+    private long firstChunkNanos;
+
+    /**
+     * @param cacheKey the key under which the response is cached, null if responses of this service are not cached
+     * @param request the request, kept so that it can be hedged.  null if requests of this service are not hedged.
+     * @param primary if this is a hedge, the request that it duplicates, otherwise null
+     * @param stream receives the chunks of a streamed response, null if the response is not streamed.  The result of
+     *               a streamed response completes when the last chunk has arrived.
+     * @param trace the times recorded for a traced request, null if the request is not traced
+     */
+    public PendingRequest(long sequence, CompletableFuture<P> result, RequestRoute route, RequestPriority priority,
+                          VersionMetrics versionMetrics, ResponseCache.Key cacheKey, Object request,
+                          PendingRequest<P> primary, ChunkStream<?> stream, RequestTrace trace){
+        this.sequence = sequence;
+        this.startNanos = System.nanoTime();
+        this.result = result;
+        this.route = route;
+        this.priority = priority;
+        this.versionMetrics = versionMetrics;
+        this.cacheKey = cacheKey;
+        this.request = request;
+        this.primary = primary;
+        this.stream = stream;
+        this.trace = trace;
+        this.lastActivityNanos = startNanos;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return the value of System.nanoTime() when the request was created
+     */
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    public CompletableFuture<P> getResult() {
+        return result;
+    }
+
+    public RequestRoute getRoute() {
+        return route;
+    }
+
+    public RequestPriority getPriority() {
+        return priority;
+    }
+
+    public VersionMetrics getVersionMetrics() {
+        return versionMetrics;
+    }
+
+    public ResponseCache.Key getCacheKey() {
+        return cacheKey;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <R> R getRequest() {
+        return (R) request;
+    }
+
+    /**
+     * @return the request that this hedge duplicates, or null if this is not a hedge
+     */
+    public PendingRequest<P> getPrimary() {
+        return primary;
+    }
+
+    public boolean isHedge() {
+        return primary != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> ChunkStream<T> getStream() {
+        return (ChunkStream<T>) stream;
+    }
+
+    /**
+     * @return the times recorded for a traced request, null if the request is not traced
+     */
+    public RequestTrace getTrace() {
+        return trace;
+    }
+
+    public long getLastActivityNanos() {
+        return lastActivityNanos;
+    }
+
+    /**
+     * Records the arrival of a chunk of a streamed response.  Chunks of one response are delivered by one thread.
+     *
+     * @return true if this is the first chunk
+     */
+    public boolean onChunk(long now){
+        lastActivityNanos = now;
+        if (firstChunkNanos != 0) return false;  // RETURN
+
+        firstChunkNanos = Math.max(1, now - startNanos);
+        return true;
+    }
+
+    /**
+     * @return the time from the start of a streamed response to its first chunk
+     */
+    public long getFirstChunkNanos() {
+        return firstChunkNanos;
+    }
+
+    /**
+     * @return the value of System.nanoTime() when the caller sent the request, which for a hedge is the start time
+     * of the request it duplicates
+     */
+    public long getCallerStartNanos() {
+        return primary != null ? primary.startNanos : startNanos;
+    }
+}
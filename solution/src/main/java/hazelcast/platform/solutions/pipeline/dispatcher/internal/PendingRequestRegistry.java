@@ -0,0 +1,152 @@
+package hazelcast.platform.solutions.pipeline.dispatcher.internal;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+
+/**
+ * Tracks requests that have been sent to a pipeline but have not yet received a response.  Entries are keyed by
+ * the primitive request sequence number and are removed when the request completes, times out or fails.  This
+ * class is safe for concurrent access.
+ * <p>
+ * Entries are stored in a fixed size table indexed by the low order bits of the sequence number.  Since sequence
+ * numbers are issued in increasing order, consecutive requests always land in different slots.  The registry takes
+ * the sequence number when it registers a request, and skips sequence numbers whose slot is still occupied by a much
+ * older request, so a registration is only refused if the registry already holds "capacity" entries.
+ *
+ * @param <P> the response type
+ */
+public class PendingRequestRegistry<P> {
+
+    public static final int MAX_CAPACITY = 1 << 28;
+
+    private final int capacity;
+
+    private final int mask;
+
+    private final AtomicReferenceArray<PendingRequest<P>> slots;
+
+    private final AtomicInteger inFlight;
+
+    public PendingRequestRegistry(int capacity){
+        if (capacity <= 0 || capacity > MAX_CAPACITY){
+            throw new IllegalArgumentException("PendingRequestRegistry capacity must be in [1," + MAX_CAPACITY + "]");
+        }
+
+        // use a table at least twice the size of the capacity, rounded up to a power of 2, so that a single slow
+        // request does not immediately block the slot needed by a much newer request
+        int tableSize = Integer.highestOneBit(capacity * 2 - 1) << 1;
+
+        this.capacity = capacity;
+        this.mask = tableSize - 1;
+        this.slots = new AtomicReferenceArray<>(tableSize);
+        this.inFlight = new AtomicInteger();
+    }
+
+    /**
+     * Registers a pending request under the next sequence number whose slot is free.  Sequence numbers whose slot is
+     * occupied are skipped, they are never used.  Since the table holds at most half as many entries as it has
+     * slots, a free slot is usually found at the first or second attempt.
+     *
+     * @param sequences issues the sequence numbers
+     * @param factory creates the request for a sequence number.  It may be called more than once if another thread
+     *                takes the slot first.
+     * @return the registered request, or null if the registry is full.  If null is returned, the caller should not
+     * send the request.
+     */
+    public PendingRequest<P> register(AtomicLong sequences, LongFunction<PendingRequest<P>> factory){
+        if (inFlight.incrementAndGet() > capacity){
+            inFlight.decrementAndGet();
+            return null;  // RETURN
+        }
+
+        // there are fewer entries than slots, so this only fails if other threads keep taking the free slots
+        for(int attempt=0; attempt < slots.length(); ++attempt){
+            long sequence = sequences.getAndIncrement();
+            int i = indexOf(sequence);
+            if (slots.get(i) != null) continue;  // CONTINUE
+
+            PendingRequest<P> request = factory.apply(sequence);
+            if (slots.compareAndSet(i, null, request)) return request;  // RETURN
+        }
+
+        inFlight.decrementAndGet();
+        return null;
+    }
+
+    /**
+     * Removes the pending request with the given sequence number.
+     *
+     * @return the request registered for the sequence number, or null if there is none.  This will be the case
+     * if the request has already been completed, timed out or removed for some other reason.
+     */
+    public PendingRequest<P> remove(long sequence){
+        int i = indexOf(sequence);
+        PendingRequest<P> request = slots.get(i);
+        if (request == null || request.getSequence() != sequence || !slots.compareAndSet(i, request, null)){
+            return null;  // RETURN
+        }
+
+        inFlight.decrementAndGet();
+        return request;
+    }
+
+    /**
+     * @return the request registered for the given sequence number without removing it, or null if there is none
+     */
+    public PendingRequest<P> get(long sequence){
+        PendingRequest<P> request = slots.get(indexOf(sequence));
+        return request != null && request.getSequence() == sequence ? request : null;
+    }
+
+    /**
+     * @return the number of requests currently in flight
+     */
+    public int getInFlightCount(){
+        return inFlight.get();
+    }
+
+    /**
+     * Returns the age of the oldest request that is currently in flight.  This method scans the whole table and
+     * is intended for monitoring, not for use on the request path.
+     *
+     * @return the age in milliseconds of the oldest in flight request or 0 if there are no requests in flight
+     */
+    public long getOldestAgeMs(){
+        long now = System.nanoTime();
+        long oldest = now;
+        for(int i=0; i < slots.length(); ++i){
+            PendingRequest<P> request = slots.get(i);
+            if (request != null && request.getStartNanos() - oldest < 0) oldest = request.getStartNanos();
+        }
+        return (now - oldest) / 1_000_000L;
+    }
+
+    /**
+     * Removes every request that has been inactive since before the deadline and passes it to the consumer.  A request
+     * is active when it starts and, if its response is streamed, whenever a chunk arrives.  This method scans the
+     * whole table.  It is called periodically to time out requests, which avoids scheduling a timer per request.
+     *
+     * @param deadlineNanos a value of System.nanoTime()
+     */
+    public void removeInactiveSince(long deadlineNanos, Consumer<PendingRequest<P>> consumer){
+        for(int i=0; i < slots.length(); ++i){
+            PendingRequest<P> request = slots.get(i);
+            if (request != null && request.getLastActivityNanos() - deadlineNanos < 0
+                    && slots.compareAndSet(i, request, null)){
+                inFlight.decrementAndGet();
+                consumer.accept(request);
+            }
+        }
+    }
+
+    public int getCapacity(){
+        return capacity;
+    }
+
+    private int indexOf(long sequence){
+        return (int) (sequence & mask);
+    }
+}
@@ -0,0 +1,91 @@
+package hazelcast.platform.solutions.pipeline.dispatcher.internal;
+
+import com.hazelcast.internal.nio.DataReader;
+import com.hazelcast.internal.nio.DataWriter;
+import com.hazelcast.internal.serialization.Data;
+import com.hazelcast.internal.serialization.SerializationService;
+import com.hazelcast.map.EntryProcessor;
+import com.hazelcast.map.ExtendedMapEntry;
+import com.hazelcast.nio.ObjectDataInput;
+import com.hazelcast.nio.ObjectDataOutput;
+import com.hazelcast.nio.serialization.DataSerializable;
+import com.hazelcast.spi.impl.SerializationServiceSupport;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes entries, each with its own time-to-live.  Used with IMap.submitToKeys to write many entries of one partition
+ * with one operation, which putAllAsync can do as well, but without a time-to-live.
+ * <p>
+ * Keys and values are carried in serialized form, so they are only serialized once by the caller.  On the member,
+ * the keys are deserialized once per operation to find the value of each entry.  The values are stored as they are.
+ * <p>
+ * This class must be on the classpath of the cluster members.
+ */
+public class PutWithTtlEntryProcessor<K,V> implements EntryProcessor<K,V,Void>, DataSerializable {
+
+    private Data []keys;
+
+    private Data []values;
+
+    // in milliseconds, with the meaning of the ttl argument of IMap.put
+    private long []ttls;
+
+    // member side only, the position of each key in the arrays, built on first use
+    private transient SerializationService serializationService;
+
+    private transient Map<Object, Integer> index;
+
+    public PutWithTtlEntryProcessor(){
+    }
+
+    public PutWithTtlEntryProcessor(List<Data> keys, List<Data> values, long []ttls){
+        this.keys = keys.toArray(new Data[0]);
+        this.values = values.toArray(new Data[0]);
+        this.ttls = ttls;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Void process(Map.Entry<K, V> entry) {
+        if (index == null){
+            index = new HashMap<>(keys.length * 2);
+            for(int i=0; i < keys.length; ++i) index.put(serializationService.toObject(keys[i]), i);
+        }
+
+        Integer i = index.get(entry.getKey());
+        if (i == null) return null;  // RETURN
+
+        // the member stores a serialized value without serializing it again
+        ((ExtendedMapEntry<K,V>) entry).setValue((V) values[i], ttls[i], TimeUnit.MILLISECONDS);
+        return null;
+    }
+
+    @Override
+    public void writeData(ObjectDataOutput out) throws IOException {
+        out.writeInt(keys.length);
+        for(int i=0; i < keys.length; ++i){
+            ((DataWriter) out).writeData(keys[i]);
+            ((DataWriter) out).writeData(values[i]);
+            out.writeLong(ttls[i]);
+        }
+    }
+
+    @Override
+    public void readData(ObjectDataInput in) throws IOException {
+        serializationService = ((SerializationServiceSupport) in).getSerializationService();
+        int n = in.readInt();
+        keys = new Data[n];
+        values = new Data[n];
+        ttls = new long[n];
+        for(int i=0; i < n; ++i){
+            keys[i] = ((DataReader) in).readData();
+            values[i] = ((DataReader) in).readData();
+            ttls[i] = in.readLong();
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package hazelcast.platform.solutions.pipeline.dispatcher.internal;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.internal.serialization.Data;
+import com.hazelcast.internal.serialization.SerializationService;
+import com.hazelcast.map.IMap;
+import com.hazelcast.partition.PartitionService;
+import com.hazelcast.spi.impl.SerializationServiceSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Coalesces request map writes from concurrent callers into bulk writes.
+ * <p>
+ * While few writes are outstanding, each write is sent immediately with putAsync so that latency does not suffer
+ * under light load.  Once "bypassThreshold" writes are outstanding, writes are queued instead.  A dedicated flusher
+ * thread collects queued writes for at most "maxDelayMicros" or until "maxItems" have been queued, groups them by
+ * map and by partition, and sends each group with a single submitToKeys of a PutWithTtlEntryProcessor, so batched
+ * entries keep their own time-to-live.  Each key is serialized once, for both the partition lookup and the write.
+ * The outcome of each write is reported to its own caller.
+ * <p>
+ * Like the DeleteEntryProcessor used to remove responses, PutWithTtlEntryProcessor must be on the classpath of the
+ * cluster members.
+ * <p>
+ * This class is safe for concurrent access.
+ */
+public class RequestBatcher<K,V> {
+    private static final Logger log = LoggerFactory.getLogger(RequestBatcher.class);
+
+    private static final class Write<K,V> {
+        final IMap<K,V> map;
+        final K key;
+        final V value;
+        final long ttlMs;
+        final Consumer<Throwable> onFailure;
+
+        Write(IMap<K, V> map, K key, V value, long ttlMs, Consumer<Throwable> onFailure) {
+            this.map = map;
+            this.key = key;
+            this.value = value;
+            this.ttlMs = ttlMs;
+            this.onFailure = onFailure;
+        }
+    }
+
+    private final PartitionService partitionService;
+
+    private final SerializationService serializationService;
+
+    private final int maxItems;
+
+    private final long maxDelayNanos;
+
+    private final int bypassThreshold;
+
+    private final ConcurrentLinkedQueue<Write<K,V>> queue;
+
+    // the number of writes in the queue
+    private final AtomicInteger queued;
+
+    // the number of writes that have been sent but not yet acknowledged
+    private final AtomicInteger outstanding;
+
+    private final Thread flusher;
+
+    private volatile boolean running;
+
+    public RequestBatcher(HazelcastInstance hz, String name, int maxItems, long maxDelayMicros, int bypassThreshold){
+        this.partitionService = hz.getPartitionService();
+        this.serializationService = ((SerializationServiceSupport) hz).getSerializationService();
+        this.maxItems = maxItems;
+        this.maxDelayNanos = TimeUnit.MICROSECONDS.toNanos(maxDelayMicros);
+        this.bypassThreshold = bypassThreshold;
+        this.queue = new ConcurrentLinkedQueue<>();
+        this.queued = new AtomicInteger();
+        this.outstanding = new AtomicInteger();
+
+        this.running = true;
+        this.flusher = new Thread(this::runFlusher, "pipeline-dispatcher-batcher-" + name);
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Writes an entry to the given map, either immediately or as part of a batch.
+     *
+     * @param ttlMs the time-to-live of the entry, with the meaning of the ttl argument of IMap.put
+     * @param onFailure called if the write fails
+     */
+    public void put(IMap<K,V> map, K key, V value, long ttlMs, Consumer<Throwable> onFailure){
+        if (queued.get() == 0 && outstanding.get() < bypassThreshold){
+            outstanding.incrementAndGet();
+            map.putAsync(key, value, ttlMs, TimeUnit.MILLISECONDS).whenComplete((v, t) -> {
+                outstanding.decrementAndGet();
+                if (t != null) onFailure.accept(t);
+            });
+            return;  // RETURN
+        }
+
+        queue.add(new Write<>(map, key, value, ttlMs, onFailure));
+        int n = queued.incrementAndGet();
+        if (n == 1 || n >= maxItems) LockSupport.unpark(flusher);
+    }
+
+    /**
+     * @return the number of writes that have been sent but have not been acknowledged yet
+     */
+    public int getOutstandingCount(){
+        return outstanding.get();
+    }
+
+    /**
+     * Stops the flusher thread after sending any queued writes.
+     */
+    public void close(){
+        running = false;
+        LockSupport.unpark(flusher);
+    }
+
+    private void runFlusher(){
+        while(running){
+            if (queued.get() == 0){
+                LockSupport.park(this);
+                continue;  // CONTINUE
+            }
+
+            // the batch window starts when the first write is seen
+            long deadline = System.nanoTime() + maxDelayNanos;
+            long remaining;
+            while(running && queued.get() < maxItems && (remaining = deadline - System.nanoTime()) > 0){
+                LockSupport.parkNanos(this, remaining);
+            }
+
+            try {
+                flush();
+            } catch(RuntimeException x){
+                log.error("Unexpected error while sending a batch of requests", x);
+            }
+        }
+        flush();
+    }
+
+    private void flush(){
+        while(queued.get() > 0){
+            List<Write<K,V>> batch = new ArrayList<>(maxItems);
+            Write<K,V> write;
+            while(batch.size() < maxItems && (write = queue.poll()) != null) batch.add(write);
+            if (batch.isEmpty()) break;  // BREAK
+
+            queued.addAndGet(-batch.size());
+            send(batch);
+        }
+    }
+
+    private void send(List<Write<K,V>> batch){
+        // group by map, then by partition.  The partition of a serialized key is looked up without serializing it again.
+        Map<IMap<K,V>, Map<Integer, PartitionGroup<K,V>>> groups = new HashMap<>();
+        for(Write<K,V> write: batch){
+            Data key = serializationService.toData(write.key);
+            int partitionId = partitionService.getPartition(key).getPartitionId();
+            groups.computeIfAbsent(write.map, k -> new HashMap<>())
+                    .computeIfAbsent(partitionId, k -> new PartitionGroup<>())
+                    .add(key, serializationService.toData(write.value), write);
+        }
+
+        for(Map.Entry<IMap<K,V>, Map<Integer, PartitionGroup<K,V>>> mapGroup: groups.entrySet()){
+            IMap<K,V> map = mapGroup.getKey();
+            for(PartitionGroup<K,V> partitionGroup: mapGroup.getValue().values()) send(map, partitionGroup);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void send(IMap<K,V> map, PartitionGroup<K,V> group){
+        List<Write<K,V>> writes = group.writes;
+        long []ttls = new long[writes.size()];
+        for(int i=0; i < ttls.length; ++i) ttls[i] = writes.get(i).ttlMs;
+
+        // the proxy passes serialized keys through as they are
+        outstanding.addAndGet(writes.size());
+        map.submitToKeys((Set<K>) (Set<?>) new HashSet<>(group.keys),
+                new PutWithTtlEntryProcessor<>(group.keys, group.values, ttls)).whenComplete((v, t) -> {
+            outstanding.addAndGet(-writes.size());
+            if (t != null){
+                for(Write<K,V> write: writes) write.onFailure.accept(t);
+            }
+        });
+    }
+
+    private static final class PartitionGroup<K,V> {
+        final List<Data> keys = new ArrayList<>();
+        final List<Data> values = new ArrayList<>();
+        final List<Write<K,V>> writes = new ArrayList<>();
+
+        void add(Data key, Data value, Write<K,V> write){
+            keys.add(key);
+            values.add(value);
+            writes.add(write);
+        }
+    }
+}
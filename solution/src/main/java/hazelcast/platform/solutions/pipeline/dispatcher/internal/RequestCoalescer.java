@@ -0,0 +1,90 @@
+package hazelcast.platform.solutions.pipeline.dispatcher.internal;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.internal.serialization.Data;
+import com.hazelcast.internal.serialization.SerializationService;
+import com.hazelcast.spi.impl.SerializationServiceSupport;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces identical requests to one service.  A request whose serialized form equals that of a request that is
+ * already in flight does not get sent.  It joins the request in flight (the "flight") and completes with the same
+ * response or error.  Only the first request of a flight is routed, so all of its callers receive the response of
+ * the version it was routed to.
+ * <p>
+ * Each caller receives its own copy of the flight's future, so callers that cancel their future do not affect the
+ * others.
+ */
+public class RequestCoalescer<R,P> {
+
+    private final SerializationService serializationService;
+
+    private final ConcurrentHashMap<Data, CompletableFuture<P>> flights;
+
+    private final LongAdder coalesced;
+
+    public RequestCoalescer(HazelcastInstance hz){
+        this.serializationService = ((SerializationServiceSupport) hz).getSerializationService();
+        this.flights = new ConcurrentHashMap<>();
+        this.coalesced = new LongAdder();
+    }
+
+    public Data toData(R request){
+        return serializationService.toData(request);
+    }
+
+    /**
+     * Joins the flight for the given request, starting a new flight if there is none.
+     *
+     * @param request the serialized request
+     * @param dispatch called to send the request if a new flight is started.  The future it returns must
+     *                 eventually complete, including when the request times out.
+     * @return a future that completes with the response of the flight
+     */
+    public CompletableFuture<P> send(Data request, Supplier<CompletableFuture<P>> dispatch){
+        CompletableFuture<P> flight = flights.get(request);
+        if (flight == null){
+            CompletableFuture<P> started = new CompletableFuture<>();
+            flight = flights.putIfAbsent(request, started);
+            if (flight == null){
+                CompletableFuture<P> sent;
+                try {
+                    sent = dispatch.get();
+                } catch(RuntimeException x){
+                    // otherwise the flight would never complete and every identical request would join it
+                    flights.remove(request, started);
+                    started.completeExceptionally(x);
+                    return started.copy();  // RETURN
+                }
+
+                sent.whenComplete((value, t) -> {
+                    // remove first, so that no caller joins a flight that has already completed
+                    flights.remove(request, started);
+                    if (t != null) started.completeExceptionally(t); else started.complete(value);
+                });
+                return started.copy();  // RETURN
+            }
+        }
+
+        coalesced.increment();
+        return flight.copy();
+    }
+
+    /**
+     * @return the number of requests that joined a flight instead of being sent
+     */
+    public long getCoalescedCount(){
+        return coalesced.sum();
+    }
+
+    /**
+     * @return the number of flights currently in progress
+     */
+    public int getFlightCount(){
+        return flights.size();
+    }
+}
@@ -1,9 +1,8 @@
 package hazelcast.platform.solutions.pipeline.dispatcher.internal;
 
+import hazelcast.platform.solutions.pipeline.dispatcher.RequestKey;
 import org.springframework.stereotype.Component;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicLong;
 
 
 /**
@@ -11,29 +10,45 @@ import java.util.concurrent.atomic.AtomicLong;
  */
 @Component
 public class RequestKeyFactory {
-    private final ConcurrentHashMap<String, AtomicLong> requestIdMap;
 
-    public RequestKeyFactory(){
-        requestIdMap = new ConcurrentHashMap<>();
+    /**
+     * Builds a request key from a client id and a sequence number that has been allocated by the caller.  The
+     * caller is responsible for never re-using a sequence number with the same client id.
+     */
+    public RequestKey newRequestKey(UUID clientID, long sequence){
+        return new RequestKey(clientID.getMostSignificantBits(), clientID.getLeastSignificantBits(), sequence,
+                0, System.currentTimeMillis());
+    }
+
+    /**
+     * Like {@link #newRequestKey(UUID, long)}, but also stamps the key with a deadline timeoutMs milliseconds from
+     * now, see {@link RequestKey#getDeadline()}.
+     */
+    public RequestKey newRequestKey(UUID clientID, long sequence, long timeoutMs){
+        return newRequestKey(clientID, sequence, timeoutMs, 0);
     }
 
-    public String newRequestKey(String clientID){
-        AtomicLong nextId = requestIdMap.computeIfAbsent(clientID, k -> new AtomicLong());
-        return clientID + "|" + nextId.getAndIncrement();
+    /**
+     * Like {@link #newRequestKey(UUID, long, long)}, with the given flags, see {@link RequestKey#getFlags()}.
+     */
+    public RequestKey newRequestKey(UUID clientID, long sequence, long timeoutMs, int flags){
+        long now = System.currentTimeMillis();
+        return new RequestKey(clientID.getMostSignificantBits(), clientID.getLeastSignificantBits(), sequence,
+                flags, now, now + timeoutMs);
     }
 
     /**
      * A client must provide a unique client id with all of its requests.  The client should
      * generate or obtain the unique id once and then re-use if for every request thereafter.
      *
-     * This is a utility method for generating a random client id.  Client ids can be any
-     * unique string.  They do not have to be generated by this method but they do need
-     * to be unique across all clients connected to one cluster.
+     * This is a utility method for generating a random client id.  Client ids do not have to
+     * be generated by this method but they do need to be unique across all clients connected
+     * to one cluster.
      *
      * @return a new, randomly generated client id
      */
-    public String newRandomClientId(){
-        return UUID.randomUUID().toString();
+    public UUID newRandomClientId(){
+        return UUID.randomUUID();
     }
 
 }
@@ -0,0 +1,55 @@
+package hazelcast.platform.solutions.pipeline.dispatcher.internal;
+
+import com.hazelcast.nio.serialization.FieldKind;
+import com.hazelcast.nio.serialization.compact.CompactReader;
+import com.hazelcast.nio.serialization.compact.CompactSerializer;
+import com.hazelcast.nio.serialization.compact.CompactWriter;
+import hazelcast.platform.solutions.pipeline.dispatcher.RequestKey;
+
+/**
+ * Compact serializer for RequestKey.  The field names match the names of the RequestKey fields so that a cluster
+ * member which has the RequestKey class but has not registered this serializer can still read and query keys
+ * using zero configuration Compact serialization.
+ */
+public class RequestKeySerializer implements CompactSerializer<RequestKey> {
+
+    @Override
+    public RequestKey read(CompactReader reader) {
+        return new RequestKey(
+                reader.readInt64("clientIdHigh"),
+                reader.readInt64("clientIdLow"),
+                reader.readInt64("sequence"),
+                reader.readInt32("flags"),
+                reader.readInt64("timestamp"),
+                // keys written by dispatchers that predate deadlines or tracing do not have these fields
+                readOptionalInt64(reader, "deadline"),
+                readOptionalInt64(reader, "ingestMicros"),
+                readOptionalInt64(reader, "emitMicros"));
+    }
+
+    private static long readOptionalInt64(CompactReader reader, String fieldName){
+        return reader.getFieldKind(fieldName) == FieldKind.INT64 ? reader.readInt64(fieldName) : 0;
+    }
+
+    @Override
+    public void write(CompactWriter writer, RequestKey key) {
+        writer.writeInt64("clientIdHigh", key.getClientIdHigh());
+        writer.writeInt64("clientIdLow", key.getClientIdLow());
+        writer.writeInt64("sequence", key.getSequence());
+        writer.writeInt32("flags", key.getFlags());
+        writer.writeInt64("timestamp", key.getTimestamp());
+        writer.writeInt64("deadline", key.getDeadline());
+        writer.writeInt64("ingestMicros", key.getIngestMicros());
+        writer.writeInt64("emitMicros", key.getEmitMicros());
+    }
+
+    @Override
+    public String getTypeName() {
+        return RequestKey.TYPE_NAME;
+    }
+
+    @Override
+    public Class<RequestKey> getCompactClass() {
+        return RequestKey.class;
+    }
+}
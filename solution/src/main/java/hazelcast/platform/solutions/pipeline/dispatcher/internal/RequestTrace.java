@@ -0,0 +1,71 @@
+package hazelcast.platform.solutions.pipeline.dispatcher.internal;
+
+import hazelcast.platform.solutions.pipeline.dispatcher.RequestKey;
+import hazelcast.platform.solutions.pipeline.dispatcher.RequestTracing;
+import hazelcast.platform.solutions.pipeline.dispatcher.metrics.TraceStage;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The times that the dispatcher records for a traced request.  Together with the times that the pipeline stamps on
+ * the key of the response, they give the duration of each {@link TraceStage}.  See RequestTracing.
+ */
+public class RequestTrace {
+
+    private final long sendNanos;
+
+    private final long sendMicros;
+
+    // written by the thread that completes the write of the request, 0 until then
+    private volatile long ackNanos;
+
+    /**
+     * Records the current time as the time at which the request is written
+     */
+    public RequestTrace(){
+        this.sendNanos = System.nanoTime();
+        this.sendMicros = RequestTracing.currentTimeMicros();
+    }
+
+    public void onAck(){
+        ackNanos = System.nanoTime();
+    }
+
+    /**
+     * @return the time at which the request was written, in microseconds since the epoch
+     */
+    public long getSendMicros() {
+        return sendMicros;
+    }
+
+    /**
+     * The receipt time is converted to wall clock time using the monotonic clock, so only the clock of the member
+     * affects the stages that span the dispatcher and the member.  A stage that appears to take negative time
+     * because of a clock difference is reported as 0.
+     *
+     * @param responseKey the key of the response, stamped by the pipeline
+     * @return the duration of each stage in nanoseconds, indexed by {@link TraceStage#ordinal()}, -1 if the stage
+     * was not measured
+     */
+    public long []stages(RequestKey responseKey, long receiptNanos, long completeNanos){
+        long []result = new long[TraceStage.values().length];
+        Arrays.fill(result, -1);
+
+        long ack = ackNanos;
+        if (ack != 0) result[TraceStage.ACK.ordinal()] = Math.max(0, ack - sendNanos);
+
+        long ingest = responseKey.getIngestMicros();
+        long emit = responseKey.getEmitMicros();
+        long receiptMicros = sendMicros + TimeUnit.NANOSECONDS.toMicros(receiptNanos - sendNanos);
+        if (ingest != 0) result[TraceStage.INGEST.ordinal()] = microsToNanos(ingest - sendMicros);
+        if (ingest != 0 && emit != 0) result[TraceStage.PROCESS.ordinal()] = microsToNanos(emit - ingest);
+        if (emit != 0) result[TraceStage.REPLY.ordinal()] = microsToNanos(receiptMicros - emit);
+        result[TraceStage.COMPLETE.ordinal()] = Math.max(0, completeNanos - receiptNanos);
+        return result;
+    }
+
+    private static long microsToNanos(long micros){
+        return TimeUnit.MICROSECONDS.toNanos(Math.max(0, micros));
+    }
+}
@@ -0,0 +1,291 @@
+package hazelcast.platform.solutions.pipeline.dispatcher.internal;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.hazelcast.config.MapConfig;
+import com.hazelcast.config.NearCacheConfig;
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.internal.serialization.Data;
+import com.hazelcast.internal.serialization.SerializationService;
+import com.hazelcast.map.IMap;
+import com.hazelcast.spi.impl.SerializationServiceSupport;
+import hazelcast.platform.solutions.pipeline.dispatcher.PipelineDispatcherFactory;
+import hazelcast.platform.solutions.pipeline.dispatcher.PipelineDispatcherSettings;
+import hazelcast.platform.solutions.pipeline.dispatcher.RequestRoute;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caches the responses of one service in the dispatcher, for services whose responses depend only on the request.
+ * Entries are keyed by the serialized request and the version it was routed to, so different versions never share
+ * responses.  The local tier is a Caffeine cache, which uses W-TinyLFU eviction.  It is bounded by entry count or,
+ * if configured, by the approximate serialized size of keys and values, and entries expire after a time-to-live.
+ * <p>
+ * The optional shared tier is a Hazelcast map named SERVICE_NAME_response_cache, so a response computed for one
+ * dispatcher instance can be used by all of them.  Its keys are the version, a digest of the routing configuration
+ * and a SHA-256 digest of the serialized request.  A near cache on this map keeps hot entries local.
+ * <p>
+ * Local entries carry the generation they were stored in and entries of an earlier generation are ignored, so a response that was in flight during an invalidation is never returned, even if
+ * it is stored after the invalidation.  The shared tier is invalidated by the change of the routing configuration
+ * digest.  Every dispatcher computes the same digest, so entries written by a peer that has not processed the change
+ * yet are not read by the ones that have, and they expire after the time-to-live.
+ */
+public class ResponseCache<R,P> {
+    private static final Logger log = LoggerFactory.getLogger(ResponseCache.class);
+
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException x) {
+            throw new RuntimeException(x);  // THROW
+        }
+    });
+
+    private final SerializationService serializationService;
+
+    private final Cache<Key, Entry<P>> local;
+
+    // whether entries are weighed, which requires serializing the response
+    private final boolean weighed;
+
+    private final IMap<String, P> shared;
+
+    private final IMap<String, String> routerConfig;
+
+    private final String serviceName;
+
+    private final long ttlMs;
+
+    private volatile int generation;
+
+    // the digest of the routing configuration, part of the shared keys, null while it is being read
+    private volatile String epoch;
+
+    public ResponseCache(HazelcastInstance hz, String serviceName, PipelineDispatcherSettings settings){
+        this.serializationService = ((SerializationServiceSupport) hz).getSerializationService();
+        this.serviceName = serviceName;
+        this.ttlMs = TimeUnit.SECONDS.toMillis(settings.getCacheTtlSeconds());
+        this.weighed = settings.getCacheMaxBytes() > 0;
+
+        Caffeine<Object, Object> builder = Caffeine.newBuilder().recordStats();
+        if (ttlMs > 0) builder.expireAfterWrite(Duration.ofMillis(ttlMs));
+        if (weighed){
+            this.local = builder.maximumWeight(settings.getCacheMaxBytes())
+                    .<Key, Entry<P>>weigher((k, v) -> v.weight)
+                    .build();
+        } else {
+            this.local = builder.maximumSize(settings.getCacheMaxEntries()).build();
+        }
+
+        if (settings.isCacheShared()){
+            String mapName = sharedMapName(serviceName);
+            configureSharedMap(hz, mapName, settings.getCacheTtlSeconds());
+            this.shared = hz.getMap(mapName);
+            this.routerConfig = hz.getMap(PipelineDispatcherFactory.ROUTER_CONFIG_MAP);
+            refreshEpoch(generation);
+        } else {
+            this.shared = null;
+            this.routerConfig = null;
+        }
+    }
+
+    public static String sharedMapName(String serviceName){
+        return serviceName + "_response_cache";
+    }
+
+    /*
+     * Members keep a near cache of the shared map.  Clients configure their near cache in the client configuration,
+     * see HazelcastUtil.  An existing, conflicting configuration for the map takes precedence.
+     */
+    private static void configureSharedMap(HazelcastInstance hz, String mapName, int ttlSeconds){
+        try {
+            hz.getConfig().addMapConfig(new MapConfig(mapName)
+                    .setTimeToLiveSeconds(ttlSeconds)
+                    .setNearCacheConfig(new NearCacheConfig(mapName)));
+        } catch(RuntimeException x){
+            log.warn("Could not configure {}.  The existing configuration will be used.", mapName, x);
+        }
+    }
+
+    /**
+     * Builds the cache key of a request.  This serializes the request.
+     */
+    public Key keyFor(RequestRoute route, R request){
+        return new Key(route.getVersion(), serializationService.toData(request), generation, epoch);
+    }
+
+    /**
+     * @return the response from the local tier, or null if there is none or it was stored before an invalidation
+     */
+    public P getLocal(Key key){
+        Entry<P> entry = local.getIfPresent(key);
+        if (entry == null) return null;  // RETURN
+
+        if (entry.generation != generation){
+            local.invalidate(key);
+            return null;  // RETURN
+        }
+
+        return entry.response;
+    }
+
+    public boolean hasSharedTier(){
+        return shared != null;
+    }
+
+    /**
+     * Looks the key up in the shared tier.  A hit is also added to the local tier.
+     *
+     * @return a stage that completes with the response, or with null if there is none or the lookup failed
+     */
+    public CompletionStage<P> getShared(Key key){
+        // while the digest of a new routing configuration is being read, the shared tier is not used
+        if (shared == null || key.epoch == null) return CompletableFuture.completedFuture(null);  // RETURN
+
+        return shared.getAsync(sharedKey(key)).handle((value, t) -> {
+            if (t != null){
+                log.warn("Could not read from the shared response cache", t);
+                return null;  // RETURN
+            }
+            if (value != null) putLocal(key, value);
+            return value;
+        });
+    }
+
+    /**
+     * Stores a response in both tiers, unless the cache has been invalidated since the key was created.
+     */
+    public void put(Key key, P response){
+        if (key.generation != generation) return;  // RETURN
+
+        putLocal(key, response);
+        if (shared != null && key.epoch != null)
+            shared.setAsync(sharedKey(key), response, ttlMs, TimeUnit.MILLISECONDS);
+    }
+
+    /*
+     * The entry carries the generation of the key, so if an invalidation happens after the check in put, the entry
+     * is ignored by getLocal rather than returned.
+     */
+    private void putLocal(Key key, P response){
+        int weight = weighed ? key.request.totalSize() + serializationService.toData(response).totalSize() : 1;
+        local.put(key, new Entry<>(response, key.generation, weight));
+    }
+
+    /**
+     * Invalidates every entry of both tiers.  Responses to requests that are in flight will not be stored.  This does
+     * not block: shared entries are left to expire and the digest of the new routing configuration is read
+     * asynchronously.
+     */
+    public void invalidateAll(){
+        int current = ++generation;
+        local.invalidateAll();
+        if (shared != null){
+            epoch = null;
+            refreshEpoch(current);
+        }
+    }
+
+    /*
+     * Reads the routing configuration and makes its digest the epoch, unless another invalidation happened in the
+     * meantime, in which case that invalidation sets the epoch.
+     */
+    private void refreshEpoch(int forGeneration){
+        routerConfig.getAsync(serviceName).whenComplete((config, t) -> {
+            if (t != null){
+                log.warn("Could not read the routing configuration of {}.  The shared response cache will not be used"
+                        + " until it changes.", serviceName, t);
+                return;  // RETURN
+            }
+            if (forGeneration == generation) epoch = digest(config == null ? "" : config);
+        });
+    }
+
+    public CacheStats getStats(){
+        return local.stats();
+    }
+
+    private static String sharedKey(Key key){
+        return key.version + ":" + key.epoch + ":" + digest(key.request.toByteArray());
+    }
+
+    private static String digest(String s){
+        return digest(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String digest(byte []bytes){
+        MessageDigest digest = SHA256.get();
+        digest.reset();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(digest.digest(bytes));
+    }
+
+    private static class Entry<P> {
+        private final P response;
+
+        private final int generation;
+
+        // only used if the cache is bounded by size in bytes
+        private final int weight;
+
+        Entry(P response, int generation, int weight){
+            this.response = response;
+            this.generation = generation;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * Identifies a cached response by version and serialized request.  Two keys are equal if their serialized
+     * requests are byte for byte equal, so a hash collision cannot return the wrong response.
+     */
+    public static class Key {
+        private final String version;
+
+        private final Data request;
+
+        private final int generation;
+
+        private final String epoch;
+
+        private final int hash;
+
+        Key(String version, Data request, int generation, String epoch){
+            this.version = version == null ? "" : version;
+            this.request = request;
+            this.generation = generation;
+            this.epoch = epoch;
+            this.hash = 31 * this.version.hashCode() + request.hashCode();
+        }
+
+        /**
+         * @return the serialized request
+         */
+        public Data getRequest(){
+            return request;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;  // RETURN
+            if (!(o instanceof Key)) return false;  // RETURN
+
+            Key other = (Key) o;
+            return hash == other.hash && version.equals(other.version) && request.equals(other.request);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
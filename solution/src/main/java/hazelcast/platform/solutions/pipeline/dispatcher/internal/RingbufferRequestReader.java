@@ -0,0 +1,244 @@
+package hazelcast.platform.solutions.pipeline.dispatcher.internal;
+
+import com.hazelcast.jet.core.Processor;
+import com.hazelcast.jet.core.metrics.Metrics;
+import com.hazelcast.jet.datamodel.Tuple2;
+import com.hazelcast.jet.pipeline.JournalInitialPosition;
+import com.hazelcast.jet.pipeline.SourceBuilder;
+import com.hazelcast.logging.ILogger;
+import com.hazelcast.ringbuffer.ReadResultSet;
+import com.hazelcast.ringbuffer.Ringbuffer;
+import hazelcast.platform.solutions.pipeline.dispatcher.CompressedPayload;
+import hazelcast.platform.solutions.pipeline.dispatcher.RequestKey;
+import hazelcast.platform.solutions.pipeline.dispatcher.RequestPriority;
+import hazelcast.platform.solutions.pipeline.dispatcher.RequestRoute;
+import hazelcast.platform.solutions.pipeline.dispatcher.RequestTracing;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * The state of one processor of the request ring buffer source, see RequestSources.readRingbufferRequests.
+ * <p>
+ * The ring buffers of a service version are divided among the processors of the source.  Each processor keeps one
+ * readManyAsync call outstanding per ring buffer, so a read waits on the member that owns the ring buffer until at
+ * least one request is available and fillBufferFn never blocks.  The state saved in a snapshot is the next sequence
+ * to read from each ring buffer, which makes the source fault tolerant even if the number of processors changes.
+ * <p>
+ * A source for a service with priority lanes reads the ring buffers of every lane.  If the lanes have weights, each
+ * call of fill emits requests from the lanes by deficit round robin: a lane may emit up to its weight times QUANTUM
+ * requests, plus whatever it did not use in previous calls while it had requests waiting.  A lane without requests
+ * waiting gives up its turn, so a single busy lane still gets the whole throughput of the pipeline.  Requests that a
+ * lane may not emit yet stay in the result of their read, and the next read of that ring buffer only starts once
+ * they have been emitted, so a lane that falls behind leaves its backlog in its ring buffers.
+ * <p>
+ * Requests that were overwritten before they were read are counted in the "lostRequests" Jet user metric.  Compressed
+ * requests are decompressed and the keys of traced requests are stamped before they are emitted.
+ */
+public class RingbufferRequestReader<R> {
+
+    public static final String LOST_REQUESTS_METRIC = "lostRequests";
+
+    // the largest number of requests taken from one ring buffer in a single read
+    private static final int MAX_BATCH = 128;
+
+    // the number of requests a lane of weight 1 may emit per call of fill
+    private static final int QUANTUM = 16;
+
+    private final ILogger logger;
+
+    // the ring buffers read by this processor, identified by lane index * partition count + partition
+    private final int []channels;
+
+    // the index of the lane of each ring buffer
+    private final int []lanes;
+
+    // requests may be compressed, see CompressedPayload
+    private final Ringbuffer<Map.Entry<RequestKey, Object>> []ringbuffers;
+
+    // the next sequence to read from each ring buffer
+    private final long []sequences;
+
+    // the outstanding read of each ring buffer, null if there is none
+    private final CompletableFuture<ReadResultSet<Map.Entry<RequestKey, Object>>> []reads;
+
+    // the result of the last read of each ring buffer while it still has requests to emit, otherwise null
+    private final ReadResultSet<Map.Entry<RequestKey, Object>> []results;
+
+    // the index of the next request to emit from each result
+    private final int []positions;
+
+    // the weight of each lane, null if the lanes are not weighted
+    private final int []weights;
+
+    // the number of requests each lane may still emit
+    private final int []credits;
+
+    public RingbufferRequestReader(Processor.Context context, String serviceName, String version, int partitionCount,
+                                   JournalInitialPosition initialPosition){
+        this(context, serviceName, version, partitionCount, initialPosition,
+                new RequestPriority[]{RequestPriority.NORMAL}, null);
+    }
+
+    /**
+     * @param priorities the lanes to read
+     * @param weights the weight of each lane, in the same order, or null to emit everything that has been read
+     */
+    @SuppressWarnings("unchecked")
+    public RingbufferRequestReader(Processor.Context context, String serviceName, String version, int partitionCount,
+                                   JournalInitialPosition initialPosition, RequestPriority []priorities,
+                                   int []weights){
+        this.logger = context.logger();
+        this.weights = weights;
+        this.credits = new int[priorities.length];
+
+        List<Integer> mine = new ArrayList<>();
+        for(int lane=0; lane < priorities.length; ++lane){
+            for(int p = context.globalProcessorIndex(); p < partitionCount; p += context.totalParallelism())
+                mine.add(lane * partitionCount + p);
+        }
+
+        this.channels = mine.stream().mapToInt(Integer::intValue).toArray();
+        this.lanes = new int[channels.length];
+        this.ringbuffers = (Ringbuffer<Map.Entry<RequestKey, Object>>[]) new Ringbuffer<?>[channels.length];
+        this.sequences = new long[channels.length];
+        this.reads = (CompletableFuture<ReadResultSet<Map.Entry<RequestKey, Object>>>[])
+                new CompletableFuture<?>[channels.length];
+        this.results = (ReadResultSet<Map.Entry<RequestKey, Object>>[]) new ReadResultSet<?>[channels.length];
+        this.positions = new int[channels.length];
+        for(int i=0; i < channels.length; ++i){
+            lanes[i] = channels[i] / partitionCount;
+            ringbuffers[i] = context.hazelcastInstance().getRingbuffer(RequestRoute.requestRingbufferName(
+                    serviceName, version, priorities[lanes[i]], channels[i] % partitionCount));
+            sequences[i] = initialPosition == JournalInitialPosition.START_FROM_OLDEST ?
+                    ringbuffers[i].headSequence() : ringbuffers[i].tailSequence() + 1;
+        }
+    }
+
+    public void fill(SourceBuilder.SourceBuffer<Map.Entry<RequestKey, R>> buffer){
+        for(int i=0; i < channels.length; ++i) poll(i);
+
+        if (weights == null){
+            for(int i=0; i < channels.length; ++i) emit(i, Integer.MAX_VALUE, buffer);
+            return;  // RETURN
+        }
+
+        for(int lane=0; lane < credits.length; ++lane){
+            credits[lane] += weights[lane] * QUANTUM;
+            boolean waiting = false;
+            for(int i=0; i < channels.length && credits[lane] > 0; ++i){
+                if (lanes[i] != lane) continue;  // CONTINUE
+
+                credits[lane] -= emit(i, credits[lane], buffer);
+                waiting |= results[i] != null;
+            }
+
+            // a lane that has emitted everything it read does not save up credit
+            if (!waiting) credits[lane] = 0;
+        }
+    }
+
+    /*
+     * Starts a read of the ring buffer if it has nothing left to emit, or takes the result of the read if it is done
+     */
+    private void poll(int i){
+        if (results[i] != null) return;  // RETURN
+
+        if (reads[i] == null){
+            reads[i] = read(i);
+            return;  // RETURN
+        }
+
+        if (!reads[i].isDone()) return;  // RETURN
+
+        ReadResultSet<Map.Entry<RequestKey, Object>> result;
+        try {
+            result = reads[i].join();
+        } catch(CompletionException x){
+            // most likely the ring buffer was destroyed and recreated, so the sequence is ahead of it
+            logger.warning("Could not read from " + ringbuffers[i].getName() + ", skipping to the tail", x);
+            sequences[i] = ringbuffers[i].tailSequence() + 1;
+            reads[i] = read(i);
+            return;  // RETURN
+        }
+
+        // a read that starts before the head of the ring buffer starts at the head instead
+        long lost = result.getNextSequenceToReadFrom() - result.readCount() - sequences[i];
+        if (lost > 0) Metrics.metric(LOST_REQUESTS_METRIC).increment(lost);
+
+        sequences[i] = result.getNextSequenceToReadFrom();
+        if (result.readCount() > 0){
+            results[i] = result;
+            positions[i] = 0;
+            reads[i] = null;
+        } else {
+            reads[i] = read(i);
+        }
+    }
+
+    /*
+     * Emits up to max requests from the result of the ring buffer and starts the next read once all of them have
+     * been emitted.  Returns the number of requests emitted.
+     */
+    private int emit(int i, int max, SourceBuilder.SourceBuffer<Map.Entry<RequestKey, R>> buffer){
+        ReadResultSet<Map.Entry<RequestKey, Object>> result = results[i];
+        if (result == null) return 0;  // RETURN
+
+        int end = (int) Math.min(result.readCount(), (long) positions[i] + max);
+        int count = end - positions[i];
+        for(; positions[i] < end; ++positions[i]) buffer.add(toRequest(result.get(positions[i])));
+
+        if (positions[i] == result.readCount()){
+            results[i] = null;
+            reads[i] = read(i);
+        }
+        return count;
+    }
+
+    /*
+     * Decompresses the request and stamps the key of a traced request, the entry is reused if neither applies
+     */
+    @SuppressWarnings("unchecked")
+    private Map.Entry<RequestKey, R> toRequest(Map.Entry<RequestKey, Object> entry){
+        RequestKey key = RequestTracing.ingested(entry.getKey());
+        if (key != entry.getKey() || entry.getValue() instanceof CompressedPayload)
+            return Tuple2.tuple2(key, CompressedPayload.decompress(entry.getValue()));  // RETURN
+
+        return (Map.Entry<RequestKey, R>) (Map.Entry<?, ?>) entry;
+    }
+
+    private CompletableFuture<ReadResultSet<Map.Entry<RequestKey, Object>>> read(int i){
+        return ringbuffers[i].readManyAsync(sequences[i], 1, MAX_BATCH, null).toCompletableFuture();
+    }
+
+    /*
+     * A read that is outstanding has not emitted anything, so its requests are read again after a restore, as are
+     * the requests of a result that have not been emitted yet.
+     */
+    public HashMap<Integer, Long> snapshot(){
+        HashMap<Integer, Long> result = new HashMap<>();
+        for(int i=0; i < channels.length; ++i)
+            result.put(channels[i], results[i] != null ? results[i].getSequence(positions[i]) : sequences[i]);
+        return result;
+    }
+
+    /*
+     * Each processor receives the snapshots of all processors and picks the sequences of its own ring buffers.
+     */
+    public void restore(List<HashMap<Integer, Long>> snapshots){
+        for(HashMap<Integer, Long> snapshot: snapshots){
+            for(int i=0; i < channels.length; ++i){
+                Long sequence = snapshot.get(channels[i]);
+                if (sequence != null){
+                    sequences[i] = sequence;
+                    reads[i] = null;
+                    results[i] = null;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package hazelcast.platform.solutions.pipeline.dispatcher.internal;
+
+import hazelcast.platform.solutions.pipeline.dispatcher.ConcurrencyLimiter;
+import hazelcast.platform.solutions.pipeline.dispatcher.LimiterMode;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A ConcurrencyLimiter with a fixed limit.  It is also the base class of the adaptive limiters, which change
+ * the limit from {@link #onSample(long, boolean, int)}.
+ */
+public class StaticLimiter implements ConcurrencyLimiter {
+
+    private final AtomicInteger inFlight;
+
+    protected final AtomicInteger limit;
+
+    public StaticLimiter(int limit){
+        if (limit <= 0) throw new RuntimeException("The concurrency limit must be positive");
+
+        this.inFlight = new AtomicInteger();
+        this.limit = new AtomicInteger(limit);
+    }
+
+    @Override
+    public boolean tryAcquire() {
+        while(true){
+            int current = inFlight.get();
+            if (current >= limit.get()) return false;  // RETURN
+
+            if (inFlight.compareAndSet(current, current + 1)) return true;  // RETURN
+        }
+    }
+
+    @Override
+    public void onSuccess(long rttNanos) {
+        onSample(rttNanos, false, inFlight.getAndDecrement());
+    }
+
+    @Override
+    public void onDropped() {
+        onSample(0, true, inFlight.getAndDecrement());
+    }
+
+    @Override
+    public void onIgnore() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * Called once for each completed request that says something about the pipeline.  The default does nothing.
+     *
+     * @param rttNanos the round trip time, 0 if dropped is true
+     * @param dropped true if the request timed out
+     * @param inFlight the number of requests in flight when the request completed, including itself
+     */
+    protected void onSample(long rttNanos, boolean dropped, int inFlight){
+    }
+
+    @Override
+    public int getLimit() {
+        return limit.get();
+    }
+
+    @Override
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    @Override
+    public LimiterMode getMode() {
+        return LimiterMode.STATIC;
+    }
+
+    @Override
+    public String toString() {
+        return getMode() + "{limit=" + limit.get() + ", inFlight=" + inFlight.get() + '}';
+    }
+}
@@ -0,0 +1,248 @@
+package hazelcast.platform.solutions.pipeline.dispatcher.internal;
+
+import com.hazelcast.core.HazelcastInstance;
+import com.hazelcast.internal.serialization.SerializationService;
+import com.hazelcast.spi.impl.SerializationServiceSupport;
+import hazelcast.platform.solutions.pipeline.dispatcher.RequestTracing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Appends a sample of the requests sent by all dispatchers to a capture file, to be replayed with TrafficReplayTool.
+ * <p>
+ * Callers only serialize a sampled request and queue it, a single writer thread appends to the file.  A request is
+ * not captured, and is counted as dropped, if the queue is full or the file has reached its maximum size.  An
+ * existing capture file is appended to.  If a previous run was interrupted and left an incomplete record at the end
+ * of the file, the file is first truncated to its last complete record, so that the appended records can be read.
+ * <p>
+ * The file is written with DataOutputStream.  It starts with MAGIC and FORMAT_VERSION, followed by records that each
+ * start with a tag byte:
+ * <ul>
+ *     <li>SERVICE_RECORD: short id, UTF name.  Defines the id of a service, written before its first request.</li>
+ *     <li>REQUEST_RECORD: short service id, long time in microseconds since the epoch, int length, then the request
+ *     in Hazelcast serialized form.</li>
+ * </ul>
+ * See CaptureFileReader.  This class is safe for concurrent access.
+ */
+public class TrafficRecorder {
+    private static final Logger log = LoggerFactory.getLogger(TrafficRecorder.class);
+
+    public static final int MAGIC = 0x50445452;
+
+    public static final int FORMAT_VERSION = 1;
+
+    public static final byte SERVICE_RECORD = 1;
+
+    public static final byte REQUEST_RECORD = 2;
+
+    private static final int QUEUE_CAPACITY = 65536;
+
+    private static final class Capture {
+        final String serviceName;
+        final long timeMicros;
+        final byte []request;
+
+        Capture(String serviceName, long timeMicros, byte []request){
+            this.serviceName = serviceName;
+            this.timeMicros = timeMicros;
+            this.request = request;
+        }
+    }
+
+    private final SerializationService serializationService;
+
+    private final String fileName;
+
+    private final double sampleRate;
+
+    private final long maxBytes;
+
+    private final ArrayBlockingQueue<Capture> queue;
+
+    private final LongAdder captured;
+
+    private final LongAdder dropped;
+
+    private final Thread writer;
+
+    // only accessed by the writer thread
+    private final DataOutputStream out;
+
+    private final Map<String, Short> serviceIds;
+
+    // the size of the file, only written by the writer thread
+    private volatile long size;
+
+    private volatile boolean running;
+
+    /**
+     * @param sampleRate the fraction of requests that are captured
+     * @param maxBytes the size at which the file stops growing
+     */
+    public TrafficRecorder(HazelcastInstance hz, String fileName, double sampleRate, long maxBytes) throws IOException {
+        this.serializationService = ((SerializationServiceSupport) hz).getSerializationService();
+        this.fileName = fileName;
+        this.sampleRate = sampleRate;
+        this.maxBytes = maxBytes;
+        this.queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        this.captured = new LongAdder();
+        this.dropped = new LongAdder();
+        this.serviceIds = new HashMap<>();
+
+        File file = new File(fileName);
+        this.size = file.length();
+        if (size > 0) size = truncateIncompleteRecord(file);
+
+        this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+        if (size == 0){
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            size = 8;
+        }
+
+        this.running = true;
+        this.writer = new Thread(this::runWriter, "pipeline-dispatcher-capture");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /*
+     * Reads the existing file, which must be a capture file of the current version, and removes whatever follows its
+     * last complete record.  Returns the new length.
+     */
+    private static long truncateIncompleteRecord(File file) throws IOException {
+        long length;
+        try {
+            length = CaptureFileReader.completeLength(file.getPath());
+        } catch(IOException x){
+            throw new IOException(file + " exists and is not a capture file of version " + FORMAT_VERSION, x);
+        }
+
+        if (length < file.length()){
+            log.warn("Removing an incomplete record of " + (file.length() - length) + " bytes from the end of " + file);
+            try(RandomAccessFile raf = new RandomAccessFile(file, "rw")){
+                raf.setLength(length);
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Captures the request if it is sampled.  Never blocks and never throws.
+     */
+    public void record(String serviceName, Object request){
+        if (sampleRate < 1.0 && ThreadLocalRandom.current().nextDouble() >= sampleRate) return;  // RETURN
+
+        if (size >= maxBytes){
+            dropped.increment();
+            return;  // RETURN
+        }
+
+        byte []bytes;
+        try {
+            bytes = serializationService.toData(request).toByteArray();
+        } catch(RuntimeException x){
+            dropped.increment();
+            return;  // RETURN
+        }
+
+        if (queue.offer(new Capture(serviceName, RequestTracing.currentTimeMicros(), bytes)))
+            captured.increment();
+        else
+            dropped.increment();
+    }
+
+    private void runWriter(){
+        try {
+            while(running || !queue.isEmpty()){
+                Capture capture = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (capture == null){
+                    out.flush();
+                    continue;  // CONTINUE
+                }
+
+                write(capture);
+                if (queue.isEmpty()) out.flush();
+            }
+            out.flush();
+        } catch(InterruptedException x){
+            Thread.currentThread().interrupt();
+        } catch(IOException | RuntimeException x){
+            // capturing is best effort, it must never affect requests
+            running = false;
+            log.error("Could not write to the capture file " + fileName + ", capture has stopped", x);
+        } finally {
+            try {
+                out.close();
+            } catch(IOException x){
+                log.warn("Could not close the capture file " + fileName, x);
+            }
+        }
+    }
+
+    /*
+     * The size is counted here because DataOutputStream.size stops counting at 2 GB
+     */
+    private void write(Capture capture) throws IOException {
+        long written = 0;
+        Short id = serviceIds.get(capture.serviceName);
+        if (id == null){
+            id = (short) serviceIds.size();
+            serviceIds.put(capture.serviceName, id);
+            out.writeByte(SERVICE_RECORD);
+            out.writeShort(id);
+            out.writeUTF(capture.serviceName);
+            written += 5 + capture.serviceName.getBytes(StandardCharsets.UTF_8).length;
+        }
+
+        out.writeByte(REQUEST_RECORD);
+        out.writeShort(id);
+        out.writeLong(capture.timeMicros);
+        out.writeInt(capture.request.length);
+        out.write(capture.request);
+        written += 15 + capture.request.length;
+        size += written;
+    }
+
+    /**
+     * @return the number of requests that have been captured
+     */
+    public long getCapturedCount(){
+        return captured.sum();
+    }
+
+    /**
+     * @return the number of sampled requests that were not captured because the queue or the file was full, or
+     * because they could not be serialized
+     */
+    public long getDroppedCount(){
+        return dropped.sum();
+    }
+
+    /**
+     * Writes the requests that are still queued and closes the file.
+     */
+    public void close(){
+        running = false;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch(InterruptedException x){
+            Thread.currentThread().interrupt();
+        }
+        log.info("Captured " + captured.sum() + " requests to " + fileName + ", dropped " + dropped.sum());
+    }
+}
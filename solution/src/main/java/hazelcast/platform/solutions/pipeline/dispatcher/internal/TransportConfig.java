@@ -0,0 +1,107 @@
+package hazelcast.platform.solutions.pipeline.dispatcher.internal;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hazelcast.core.HazelcastInstance;
+import hazelcast.platform.solutions.pipeline.dispatcher.RequestRoute;
+import hazelcast.platform.solutions.pipeline.dispatcher.RequestTransport;
+
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * The request transport of a service.  It is read from the "transport" and "partitions" fields of the routing
+ * configuration of the service, whatever kind of router that configuration is for.  For example:
+ * <pre>
+ * {"transport": "RINGBUFFER", "partitions": 8, "v1": 9, "v2": 1}
+ * </pre>
+ * "priority_lanes": true gives each RequestPriority its own request map or ring buffers.  A configuration with no
+ * versions, e.g. {"transport": "RINGBUFFER"}, selects the transport of a service that does not have multiple
+ * versions.  A service without a routing configuration uses the MAP transport.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class TransportConfig {
+
+    public static final TransportConfig DEFAULT = new TransportConfig();
+
+    // routing configuration fields that are not version names
+    public static final Set<String> FIELDS = Set.of("transport", "partitions", "priority_lanes");
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    @JsonProperty("transport")
+    private RequestTransport transport = RequestTransport.MAP;
+
+    // the number of request ring buffers per version, must match the pipelines, see RequestSources
+    @JsonProperty("partitions")
+    private int partitions = 8;
+
+    // whether each priority has its own request map or ring buffers, see RequestPriority
+    @JsonProperty("priority_lanes")
+    private boolean priorityLanes = false;
+
+    /**
+     * @param json a routing configuration, may be null
+     */
+    public static TransportConfig parse(String json){
+        if (json == null) return DEFAULT;  // RETURN
+
+        TransportConfig result;
+        try {
+            result = MAPPER.readValue(json, TransportConfig.class);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException(e);   // THROW
+        }
+
+        if (result.transport == null) result.transport = RequestTransport.MAP;
+        if (result.transport == RequestTransport.RINGBUFFER && result.partitions <= 0){
+            throw new RuntimeException("Error while creating transport configuration.  partitions must be positive");
+        }
+        return result;
+    }
+
+    /**
+     * @return true if the routing configuration only selects a transport and does not name any versions
+     */
+    public static boolean isTransportOnly(String json){
+        try {
+            JsonNode node = MAPPER.readTree(json);
+            if (!node.isObject()) return false;  // RETURN
+
+            for(Iterator<String> names = node.fieldNames(); names.hasNext();)
+                if (!FIELDS.contains(names.next())) return false;  // RETURN
+
+            return true;
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException(e);   // THROW
+        }
+    }
+
+    public RequestRoute newRoute(HazelcastInstance hz, String serviceName, String version){
+        return new RequestRoute(hz, serviceName, version, transport, partitions, priorityLanes);
+    }
+
+    public RequestTransport getTransport() {
+        return transport;
+    }
+
+    public int getPartitions() {
+        return partitions;
+    }
+
+    public boolean isPriorityLanes() {
+        return priorityLanes;
+    }
+
+    @Override
+    public String toString() {
+        return "TransportConfig{" +
+                "transport=" + transport +
+                ", partitions=" + partitions +
+                ", priorityLanes=" + priorityLanes +
+                '}';
+    }
+}
@@ -0,0 +1,24 @@
+package hazelcast.platform.solutions.pipeline.dispatcher.metrics;
+
+import java.util.function.IntSupplier;
+
+/**
+ * A pluggable facade for the metrics recorded by PipelineDispatchers.
+ * <p>
+ * PipelineDispatcherFactory uses a DispatcherMetrics bean from the application context if there is one.  Otherwise,
+ * it uses {@link MicrometerDispatcherMetrics} if Micrometer is on the classpath and there is a MeterRegistry bean,
+ * and {@link SimpleDispatcherMetrics} if not.
+ * <p>
+ * Implementations must make the recording methods of ServiceMetrics and VersionMetrics cheap, thread safe and
+ * allocation free because they are called for every request.  The lookup methods are called rarely and the
+ * dispatcher caches their results.
+ */
+public interface DispatcherMetrics {
+
+    /**
+     * Called once when a dispatcher is created for a service.
+     *
+     * @param inFlight supplies the number of requests currently in flight for the service
+     */
+    ServiceMetrics forService(String serviceName, IntSupplier inFlight);
+}
@@ -0,0 +1,123 @@
+package hazelcast.platform.solutions.pipeline.dispatcher.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A concurrent, fixed size histogram of latencies in nanoseconds.  Like HdrHistogram, it uses log-linear buckets:
+ * each power of 2 range is divided into 32 equal sub-buckets, so every recorded value is accurate to within about 3%.
+ * Recording a value is a few arithmetic operations and one atomic increment and never allocates.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    private static final int SUB_BUCKET_MASK = SUB_BUCKET_COUNT - 1;
+
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts;
+
+    private final LongAdder totalCount;
+
+    private final LongAdder totalNanos;
+
+    private final LongAccumulator maxNanos;
+
+    public LatencyHistogram(){
+        counts = new AtomicLongArray(BUCKET_COUNT);
+        totalCount = new LongAdder();
+        totalNanos = new LongAdder();
+        maxNanos = new LongAccumulator(Math::max, 0);
+    }
+
+    public void record(long nanos){
+        if (nanos < 0) nanos = 0;
+        counts.incrementAndGet(indexOf(nanos));
+        totalCount.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+    }
+
+    /**
+     * Adds all values recorded by another histogram to this one.  This is intended for combining histograms for
+     * reporting, not for use on the request path.
+     */
+    public void add(LatencyHistogram other){
+        for(int i=0; i < BUCKET_COUNT; ++i){
+            long n = other.counts.get(i);
+            if (n != 0) counts.addAndGet(i, n);
+        }
+        totalCount.add(other.totalCount.sum());
+        totalNanos.add(other.totalNanos.sum());
+        maxNanos.accumulate(other.maxNanos.get());
+    }
+
+    /**
+     * Discards all recorded values.  Values recorded concurrently with a reset may be partially discarded, so
+     * callers that reuse a histogram should stop recording into it first.
+     */
+    public void reset(){
+        for(int i=0; i < BUCKET_COUNT; ++i) counts.set(i, 0);
+        totalCount.reset();
+        totalNanos.reset();
+        maxNanos.reset();
+    }
+
+    public long getCount(){
+        return totalCount.sum();
+    }
+
+    public long getMaxNanos(){
+        return maxNanos.get();
+    }
+
+    public double getMeanNanos(){
+        long n = totalCount.sum();
+        return n == 0 ? 0.0 : (double) totalNanos.sum() / n;
+    }
+
+    /**
+     * Returns the value at the given percentile.  This scans the whole histogram and is intended for reporting,
+     * not for use on the request path.  Because recording continues concurrently, the result is approximate.
+     *
+     * @param percentile in [0.0, 100.0]
+     * @return the highest value in the bucket that contains the given percentile, 0 if nothing has been recorded
+     */
+    public long getValueAtPercentile(double percentile){
+        long n = 0;
+        long []snapshot = new long[BUCKET_COUNT];
+        for(int i=0; i < BUCKET_COUNT; ++i){
+            snapshot[i] = counts.get(i);
+            n += snapshot[i];
+        }
+        if (n == 0) return 0;  // RETURN
+
+        long target = Math.max(1, (long) Math.ceil(n * Math.min(percentile, 100.0) / 100.0));
+        long seen = 0;
+        for(int i=0; i < BUCKET_COUNT; ++i){
+            seen += snapshot[i];
+            if (seen >= target) return Math.min(highestValueAt(i), getMaxNanos());  // RETURN
+        }
+        return getMaxNanos();
+    }
+
+    static int indexOf(long value){
+        if (value < SUB_BUCKET_COUNT) return (int) value;  // RETURN
+
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKET_COUNT + (int) ((value >>> shift) & SUB_BUCKET_MASK);
+    }
+
+    static long highestValueAt(int index){
+        if (index < SUB_BUCKET_COUNT) return index;  // RETURN
+
+        int shift = index / SUB_BUCKET_COUNT - 1;
+        long lowest = (long) (SUB_BUCKET_COUNT + index % SUB_BUCKET_COUNT) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
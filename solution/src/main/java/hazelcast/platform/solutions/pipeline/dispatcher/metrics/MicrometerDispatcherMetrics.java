@@ -0,0 +1,150 @@
+package hazelcast.platform.solutions.pipeline.dispatcher.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+/**
+ * Publishes dispatcher metrics to a Micrometer MeterRegistry.  All meters are registered when a service or version
+ * is first seen, so recording only touches pre-built meters.
+ * <p>
+ * The following meters are registered, each one tagged with "service".
+ * <ul>
+ *     <li>pipeline.dispatcher.latency - a timer with a percentile histogram, also tagged with "version"</li>
+ *     <li>pipeline.dispatcher.stage_latency - a timer with a percentile histogram of each stage of traced requests,
+ *     also tagged with "version" and "stage", registered when the first traced request of a version completes</li>
+ *     <li>pipeline.dispatcher.in_flight - a gauge</li>
+ *     <li>pipeline.dispatcher.timeouts, pipeline.dispatcher.late_responses, pipeline.dispatcher.orphan_responses,
+ *     pipeline.dispatcher.send_failures, pipeline.dispatcher.rejected, pipeline.dispatcher.hedges - counters</li>
+ * </ul>
+ * <p>
+ * Micrometer is an optional dependency.  This class must only be loaded if Micrometer is on the classpath.
+ */
+public class MicrometerDispatcherMetrics implements DispatcherMetrics {
+
+    public static final String MICROMETER_REGISTRY_CLASS = "io.micrometer.core.instrument.MeterRegistry";
+
+    private final MeterRegistry registry;
+
+    public MicrometerDispatcherMetrics(MeterRegistry registry){
+        this.registry = registry;
+    }
+
+    @Override
+    public ServiceMetrics forService(String serviceName, IntSupplier inFlight) {
+        Gauge.builder("pipeline.dispatcher.in_flight", inFlight, IntSupplier::getAsInt)
+                .tag("service", serviceName)
+                .strongReference(true)
+                .register(registry);
+
+        return new Service(serviceName);
+    }
+
+    private class Service implements ServiceMetrics {
+        private final String name;
+        private final ConcurrentHashMap<String, VersionMetrics> versions;
+        private final Counter timeouts;
+        private final Counter lateResponses;
+        private final Counter orphanResponses;
+        private final Counter sendFailures;
+        private final Counter rejected;
+        private final Counter hedges;
+
+        Service(String name){
+            this.name = name;
+            this.versions = new ConcurrentHashMap<>();
+            this.timeouts = counter("pipeline.dispatcher.timeouts");
+            this.lateResponses = counter("pipeline.dispatcher.late_responses");
+            this.orphanResponses = counter("pipeline.dispatcher.orphan_responses");
+            this.sendFailures = counter("pipeline.dispatcher.send_failures");
+            this.rejected = counter("pipeline.dispatcher.rejected");
+            this.hedges = counter("pipeline.dispatcher.hedges");
+        }
+
+        private Counter counter(String meterName){
+            return Counter.builder(meterName).tag("service", name).register(registry);
+        }
+
+        @Override
+        public VersionMetrics forVersion(String version) {
+            return versions.computeIfAbsent(version, k -> new Version(name, k));
+        }
+
+        @Override
+        public void recordTimeout() {
+            timeouts.increment();
+        }
+
+        @Override
+        public void recordLateResponse() {
+            lateResponses.increment();
+        }
+
+        @Override
+        public void recordOrphanResponse() {
+            orphanResponses.increment();
+        }
+
+        @Override
+        public void recordSendFailure() {
+            sendFailures.increment();
+        }
+
+        @Override
+        public void recordRejected() {
+            rejected.increment();
+        }
+
+        @Override
+        public void recordHedge() {
+            hedges.increment();
+        }
+    }
+
+    private class Version implements VersionMetrics {
+        private final String serviceName;
+        private final String name;
+        private final Timer latency;
+
+        // registered on first use, most versions are never traced
+        private volatile Timer []stages;
+
+        Version(String serviceName, String name){
+            this.serviceName = serviceName;
+            this.name = name;
+            this.latency = timer("pipeline.dispatcher.latency").register(registry);
+        }
+
+        private Timer.Builder timer(String meterName){
+            return Timer.builder(meterName)
+                    .tag("service", serviceName)
+                    .tag("version", name)
+                    .publishPercentileHistogram();
+        }
+
+        @Override
+        public void recordLatency(long nanos) {
+            latency.record(nanos, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public void recordStage(TraceStage stage, long nanos) {
+            Timer []timers = stages;
+            if (timers == null){
+                // registering the same meter twice returns the existing one, so a race is harmless
+                timers = new Timer[TraceStage.values().length];
+                for(TraceStage s: TraceStage.values())
+                    timers[s.ordinal()] = timer("pipeline.dispatcher.stage_latency")
+                            .tag("stage", s.name().toLowerCase())
+                            .register(registry);
+                stages = timers;
+            }
+            timers[stage.ordinal()].record(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package hazelcast.platform.solutions.pipeline.dispatcher.metrics;
+
+import java.util.function.IntSupplier;
+
+/**
+ * A DispatcherMetrics that discards everything.
+ */
+public class NoopDispatcherMetrics implements DispatcherMetrics, ServiceMetrics, VersionMetrics {
+
+    public static final NoopDispatcherMetrics INSTANCE = new NoopDispatcherMetrics();
+
+    @Override
+    public ServiceMetrics forService(String serviceName, IntSupplier inFlight) {
+        return this;
+    }
+
+    @Override
+    public VersionMetrics forVersion(String version) {
+        return this;
+    }
+
+    @Override
+    public void recordTimeout() {
+    }
+
+    @Override
+    public void recordLateResponse() {
+    }
+
+    @Override
+    public void recordOrphanResponse() {
+    }
+
+    @Override
+    public void recordSendFailure() {
+    }
+
+    @Override
+    public void recordRejected() {
+    }
+
+    @Override
+    public void recordHedge() {
+    }
+
+    @Override
+    public void recordLatency(long nanos) {
+    }
+}
@@ -0,0 +1,83 @@
+package hazelcast.platform.solutions.pipeline.dispatcher.metrics;
+
+import hazelcast.platform.solutions.pipeline.dispatcher.RequestKey;
+import io.opentelemetry.api.GlobalOpenTelemetry;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exports traced requests to OpenTelemetry.  Each request becomes a span named after the service, with one child
+ * span per measured stage.  The spans are created after the fact, with the recorded start and end times, and are
+ * not linked to any trace of the caller.
+ * <p>
+ * OpenTelemetry is an optional dependency.  This class must only be loaded if the OpenTelemetry API is on the
+ * classpath.
+ */
+public class OpenTelemetryTraceExporter implements TraceExporter {
+
+    public static final String OPENTELEMETRY_CLASS = "io.opentelemetry.api.GlobalOpenTelemetry";
+
+    public static final String INSTRUMENTATION_NAME = "hazelcast-pipeline-dispatcher";
+
+    // the stages that follow each other, ACK runs alongside INGEST
+    private static final TraceStage []SEQUENTIAL_STAGES = {
+            TraceStage.INGEST, TraceStage.PROCESS, TraceStage.REPLY, TraceStage.COMPLETE};
+
+    private final Tracer tracer;
+
+    /**
+     * Uses the globally registered OpenTelemetry instance, see GlobalOpenTelemetry
+     */
+    public OpenTelemetryTraceExporter(){
+        this(GlobalOpenTelemetry.getTracer(INSTRUMENTATION_NAME));
+    }
+
+    public OpenTelemetryTraceExporter(Tracer tracer){
+        this.tracer = tracer;
+    }
+
+    @Override
+    public void export(String serviceName, String version, RequestKey key, long sendMicros, long []stageNanos) {
+        long start = TimeUnit.MICROSECONDS.toNanos(sendMicros);
+        Span request = tracer.spanBuilder(serviceName)
+                .setNoParent()
+                .setSpanKind(SpanKind.CLIENT)
+                .setStartTimestamp(start, TimeUnit.NANOSECONDS)
+                .setAttribute("pipeline.service", serviceName)
+                .setAttribute("pipeline.version", version)
+                .setAttribute("pipeline.request", key.toString())
+                .startSpan();
+        Context parent = Context.root().with(request);
+
+        long end = start;
+        long ack = stageNanos[TraceStage.ACK.ordinal()];
+        if (ack >= 0) end = stage(parent, TraceStage.ACK, start, ack);
+
+        long next = start;
+        for(TraceStage stage: SEQUENTIAL_STAGES){
+            long nanos = stageNanos[stage.ordinal()];
+            if (nanos < 0) continue;  // CONTINUE
+
+            next = stage(parent, stage, next, nanos);
+        }
+
+        request.end(Math.max(end, next), TimeUnit.NANOSECONDS);
+    }
+
+    /*
+     * Returns the end of the stage
+     */
+    private long stage(Context parent, TraceStage stage, long start, long nanos){
+        long end = start + nanos;
+        tracer.spanBuilder(stage.name().toLowerCase())
+                .setParent(parent)
+                .setStartTimestamp(start, TimeUnit.NANOSECONDS)
+                .startSpan()
+                .end(end, TimeUnit.NANOSECONDS);
+        return end;
+    }
+}
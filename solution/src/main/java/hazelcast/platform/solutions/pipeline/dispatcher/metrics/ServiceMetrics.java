@@ -0,0 +1,50 @@
+package hazelcast.platform.solutions.pipeline.dispatcher.metrics;
+
+/**
+ * Metrics for one service.  See {@link DispatcherMetrics}.
+ */
+public interface ServiceMetrics {
+
+    /**
+     * The version name used for services that are not routed to a specific version.
+     */
+    String DEFAULT_VERSION = "default";
+
+    /**
+     * @param version a version name, never null
+     * @return the metrics for one version of the service
+     */
+    VersionMetrics forVersion(String version);
+
+    /**
+     * A request timed out before its response arrived.
+     */
+    void recordTimeout();
+
+    /**
+     * A response arrived for a request that had already timed out or failed.
+     */
+    void recordLateResponse();
+
+    /**
+     * A response arrived for a request that this dispatcher never sent, for example because it is left over
+     * from a previous instance with the same client id.
+     */
+    void recordOrphanResponse();
+
+    /**
+     * A request could not be written to the cluster.
+     */
+    void recordSendFailure();
+
+    /**
+     * A request was rejected before being sent, for example because too many requests were pending.
+     */
+    void recordRejected();
+
+    /**
+     * A request that had not received a response after the hedge delay was sent a second time.
+     */
+    default void recordHedge(){
+    }
+}
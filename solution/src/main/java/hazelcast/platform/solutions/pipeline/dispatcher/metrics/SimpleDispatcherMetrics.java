@@ -0,0 +1,173 @@
+package hazelcast.platform.solutions.pipeline.dispatcher.metrics;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * A self-contained DispatcherMetrics implementation that keeps latency histograms and counters in memory.  It is
+ * used when no other implementation is available.  The recorded values can be read with {@link #getServices()}.
+ */
+public class SimpleDispatcherMetrics implements DispatcherMetrics {
+
+    private final ConcurrentHashMap<String, Service> services;
+
+    public SimpleDispatcherMetrics(){
+        services = new ConcurrentHashMap<>();
+    }
+
+    @Override
+    public ServiceMetrics forService(String serviceName, IntSupplier inFlight) {
+        return services.computeIfAbsent(serviceName, k -> new Service(k, inFlight));
+    }
+
+    /**
+     * @return the metrics of every service, by service name
+     */
+    public Map<String, Service> getServices(){
+        return Collections.unmodifiableMap(services);
+    }
+
+    public static class Service implements ServiceMetrics {
+        private final String name;
+        private final IntSupplier inFlight;
+        private final LatencyHistogram latency;
+        private final ConcurrentHashMap<String, Version> versions;
+        private final LongAdder timeouts;
+        private final LongAdder lateResponses;
+        private final LongAdder orphanResponses;
+        private final LongAdder sendFailures;
+        private final LongAdder rejected;
+        private final LongAdder hedges;
+
+        Service(String name, IntSupplier inFlight){
+            this.name = name;
+            this.inFlight = inFlight;
+            this.latency = new LatencyHistogram();
+            this.versions = new ConcurrentHashMap<>();
+            this.timeouts = new LongAdder();
+            this.lateResponses = new LongAdder();
+            this.orphanResponses = new LongAdder();
+            this.sendFailures = new LongAdder();
+            this.rejected = new LongAdder();
+            this.hedges = new LongAdder();
+        }
+
+        @Override
+        public VersionMetrics forVersion(String version) {
+            return versions.computeIfAbsent(version, k -> new Version(this));
+        }
+
+        @Override
+        public void recordTimeout() {
+            timeouts.increment();
+        }
+
+        @Override
+        public void recordLateResponse() {
+            lateResponses.increment();
+        }
+
+        @Override
+        public void recordOrphanResponse() {
+            orphanResponses.increment();
+        }
+
+        @Override
+        public void recordSendFailure() {
+            sendFailures.increment();
+        }
+
+        @Override
+        public void recordRejected() {
+            rejected.increment();
+        }
+
+        @Override
+        public void recordHedge() {
+            hedges.increment();
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getInFlight(){
+            return inFlight.getAsInt();
+        }
+
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+
+        /**
+         * @return the latency histogram of each version, by version name
+         */
+        public Map<String, LatencyHistogram> getVersionLatencies(){
+            Map<String, LatencyHistogram> result = new TreeMap<>();
+            for(Map.Entry<String, Version> entry: versions.entrySet()) result.put(entry.getKey(), entry.getValue().latency);
+            return result;
+        }
+
+        /**
+         * @return the latency histogram of each stage of the traced requests of a version, empty if none were traced
+         */
+        public Map<TraceStage, LatencyHistogram> getStageLatencies(String version){
+            Version v = versions.get(version);
+            return v == null ? Collections.emptyMap() : Collections.unmodifiableMap(new EnumMap<>(v.stages));
+        }
+
+        public long getTimeouts() {
+            return timeouts.sum();
+        }
+
+        public long getLateResponses() {
+            return lateResponses.sum();
+        }
+
+        public long getOrphanResponses() {
+            return orphanResponses.sum();
+        }
+
+        public long getSendFailures() {
+            return sendFailures.sum();
+        }
+
+        public long getRejected() {
+            return rejected.sum();
+        }
+
+        public long getHedges() {
+            return hedges.sum();
+        }
+    }
+
+    private static class Version implements VersionMetrics {
+        private final Service service;
+        private final LatencyHistogram latency;
+
+        // created on first use, most versions are never traced
+        private final ConcurrentHashMap<TraceStage, LatencyHistogram> stages;
+
+        Version(Service service){
+            this.service = service;
+            this.latency = new LatencyHistogram();
+            this.stages = new ConcurrentHashMap<>();
+        }
+
+        @Override
+        public void recordLatency(long nanos) {
+            latency.record(nanos);
+            service.latency.record(nanos);
+        }
+
+        @Override
+        public void recordStage(TraceStage stage, long nanos) {
+            stages.computeIfAbsent(stage, k -> new LatencyHistogram()).record(nanos);
+        }
+    }
+}
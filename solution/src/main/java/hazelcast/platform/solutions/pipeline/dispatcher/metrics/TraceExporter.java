@@ -0,0 +1,22 @@
+package hazelcast.platform.solutions.pipeline.dispatcher.metrics;
+
+import hazelcast.platform.solutions.pipeline.dispatcher.RequestKey;
+
+/**
+ * Receives the stages of every traced request, for example to export them to a tracing system.
+ * <p>
+ * PipelineDispatcherFactory uses a TraceExporter bean from the application context if there is one.  Otherwise, it
+ * uses {@link OpenTelemetryTraceExporter} if the OpenTelemetry API is on the classpath.  Exporters are called on the
+ * thread that delivers responses, so they must not block.
+ */
+public interface TraceExporter {
+
+    /**
+     * @param version the version the request was routed to, {@link ServiceMetrics#DEFAULT_VERSION} if there is none
+     * @param key the key of the response, with the times stamped by the pipeline
+     * @param sendMicros the time at which the request was written, in microseconds since the epoch
+     * @param stageNanos the duration of each stage, indexed by {@link TraceStage#ordinal()}, -1 if the stage was not
+     *                   measured
+     */
+    void export(String serviceName, String version, RequestKey key, long sendMicros, long []stageNanos);
+}
@@ -0,0 +1,36 @@
+package hazelcast.platform.solutions.pipeline.dispatcher.metrics;
+
+/**
+ * The stages of a traced request, see {@link VersionMetrics#recordStage}.  ACK and INGEST both start when the request
+ * is written and the other stages follow INGEST, one after the other.  INGEST and REPLY span the dispatcher and a
+ * cluster member, so they include the difference between their clocks.
+ */
+public enum TraceStage {
+
+    /**
+     * From the write of the request to its acknowledgement by the cluster.  Not measured for batched writes.
+     */
+    ACK,
+
+    /**
+     * From the write of the request until the pipeline reads it, mostly event journal or ring buffer ingestion
+     */
+    INGEST,
+
+    /**
+     * From the read of the request to the write of the response by the pipeline, mostly the business logic
+     */
+    PROCESS,
+
+    /**
+     * From the write of the response until the dispatcher receives it, which includes the map write and the
+     * delivery of the listener event or topic message
+     */
+    REPLY,
+
+    /**
+     * From the receipt of the response until the result has been completed, which includes the callbacks of the
+     * caller, such as the dispatch of a DeferredResult by the servlet container
+     */
+    COMPLETE
+}
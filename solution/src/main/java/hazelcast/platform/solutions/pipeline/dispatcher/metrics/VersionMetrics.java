@@ -0,0 +1,20 @@
+package hazelcast.platform.solutions.pipeline.dispatcher.metrics;
+
+/**
+ * Metrics for one version of a service.  See {@link DispatcherMetrics}.
+ */
+public interface VersionMetrics {
+
+    /**
+     * Records the end-to-end latency of a request that was routed to this version.  The latency is also
+     * included in the latency of the service.
+     */
+    void recordLatency(long nanos);
+
+    /**
+     * Records the duration of one stage of a traced request, see {@link TraceStage}.  Only a sample of requests is
+     * traced, so this is called much less often than recordLatency.
+     */
+    default void recordStage(TraceStage stage, long nanos){
+    }
+}
@@ -0,0 +1,66 @@
+package hazelcast.platform.solutions.pipeline.dispatcher.internal;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AimdLimiterTest {
+
+    @Test
+    public void rejectsRequestsAboveTheLimit(){
+        AimdLimiter limiter = new AimdLimiter(2, 1, 10, 0.5, 0);
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+
+        limiter.onIgnore();
+        assertEquals(1, limiter.getInFlight());
+        assertEquals(2, limiter.getLimit());
+        assertTrue(limiter.tryAcquire());
+    }
+
+    @Test
+    public void growsOnlyWhileTheLimitIsUsed(){
+        AimdLimiter limiter = new AimdLimiter(4, 1, 10, 0.5, 0);
+
+        // one request in flight out of 4 does not use the limit
+        limiter.tryAcquire();
+        limiter.onSuccess(1);
+        assertEquals(4, limiter.getLimit());
+
+        for(int i=0; i < 4; ++i) limiter.tryAcquire();
+        limiter.onSuccess(1);
+        assertEquals(5, limiter.getLimit());
+    }
+
+    @Test
+    public void backsOffOnTimeoutsAndSlowResponses(){
+        AimdLimiter limiter = new AimdLimiter(8, 2, 10, 0.5, 100);
+
+        limiter.tryAcquire();
+        limiter.onDropped();
+        assertEquals(4, limiter.getLimit());
+
+        limiter.tryAcquire();
+        limiter.onSuccess(TimeUnit.MILLISECONDS.toNanos(200));
+        assertEquals(2, limiter.getLimit());
+
+        // never below the minimum
+        limiter.tryAcquire();
+        limiter.onDropped();
+        assertEquals(2, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void neverGrowsAboveTheMaximum(){
+        AimdLimiter limiter = new AimdLimiter(3, 1, 3, 0.5, 0);
+        for(int i=0; i < 3; ++i) limiter.tryAcquire();
+        limiter.onSuccess(1);
+        assertEquals(3, limiter.getLimit());
+    }
+}
@@ -0,0 +1,39 @@
+package hazelcast.platform.solutions.pipeline.dispatcher.internal;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class AliasTableTest {
+
+    @Test
+    public void samplesInProportionToTheWeights(){
+        double []weights = {1.0, 0.0, 3.0, 6.0};
+        AliasTable table = new AliasTable(weights);
+        assertEquals(weights.length, table.size());
+
+        int samples = 1_000_000;
+        int []counts = new int[weights.length];
+        for(int i=0; i < samples; ++i) ++counts[table.sample()];
+
+        // the standard deviation of each share is below 0.0005, so this does not fail by chance
+        assertEquals(0, counts[1]);
+        assertEquals(0.1, counts[0] / (double) samples, 0.005);
+        assertEquals(0.3, counts[2] / (double) samples, 0.005);
+        assertEquals(0.6, counts[3] / (double) samples, 0.005);
+    }
+
+    @Test
+    public void alwaysSamplesASingleWeight(){
+        AliasTable table = new AliasTable(new double[]{0.0, 2.5, 0.0});
+        for(int i=0; i < 10_000; ++i) assertEquals(1, table.sample());
+    }
+
+    @Test
+    public void rejectsInvalidWeights(){
+        assertThrows(IllegalArgumentException.class, () -> new AliasTable(new double[0]));
+        assertThrows(IllegalArgumentException.class, () -> new AliasTable(new double[]{0.0, 0.0}));
+        assertThrows(IllegalArgumentException.class, () -> new AliasTable(new double[]{1.0, -1.0}));
+    }
+}
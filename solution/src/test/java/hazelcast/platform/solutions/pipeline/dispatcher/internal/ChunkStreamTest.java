@@ -0,0 +1,144 @@
+package hazelcast.platform.solutions.pipeline.dispatcher.internal;
+
+import hazelcast.platform.solutions.pipeline.dispatcher.ResponseChunk;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Flow;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ChunkStreamTest {
+
+    private static final RuntimeException OVERFLOW = new RuntimeException("overflow");
+
+    private static class Collector implements Flow.Subscriber<String> {
+        final List<String> values = new ArrayList<>();
+        Flow.Subscription subscription;
+        Throwable error;
+        boolean complete;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(String item) {
+            values.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            complete = true;
+        }
+    }
+
+    @Test
+    public void deliversChunksInIndexOrder(){
+        ChunkStream<String> stream = new ChunkStream<>(10, OVERFLOW);
+        Collector collector = new Collector();
+        stream.subscribe(collector);
+        collector.subscription.request(Long.MAX_VALUE);
+
+        assertFalse(stream.offer(new ResponseChunk<>(2, "c", true)));
+        assertFalse(stream.offer(new ResponseChunk<>(1, "b", false)));
+        assertTrue(collector.values.isEmpty());
+
+        assertTrue(stream.offer(new ResponseChunk<>(0, "a", false)));
+        assertEquals(Arrays.asList("a", "b", "c"), collector.values);
+        assertTrue(collector.complete);
+        assertNull(collector.error);
+    }
+
+    @Test
+    public void deliversNoFasterThanRequested(){
+        ChunkStream<String> stream = new ChunkStream<>(10, OVERFLOW);
+        Collector collector = new Collector();
+        stream.subscribe(collector);
+        stream.offer(new ResponseChunk<>(0, "a", false));
+        stream.offer(new ResponseChunk<>(1, "b", true));
+        assertTrue(collector.values.isEmpty());
+
+        collector.subscription.request(1);
+        assertEquals(Arrays.asList("a"), collector.values);
+        assertFalse(collector.complete);
+
+        collector.subscription.request(1);
+        assertEquals(Arrays.asList("a", "b"), collector.values);
+        assertTrue(collector.complete);
+    }
+
+    @Test
+    public void buffersChunksThatArriveBeforeTheSubscriber(){
+        ChunkStream<String> stream = new ChunkStream<>(10, OVERFLOW);
+        stream.offer(new ResponseChunk<>(1, "b", false));
+        stream.offer(new ResponseChunk<>(0, "a", false));
+        stream.offer(ResponseChunk.end(2));
+
+        Collector collector = new Collector();
+        stream.subscribe(collector);
+        collector.subscription.request(Long.MAX_VALUE);
+
+        assertEquals(Arrays.asList("a", "b"), collector.values);
+        assertTrue(collector.complete);
+    }
+
+    @Test
+    public void failsWhenTheSubscriberFallsTooFarBehind(){
+        ChunkStream<String> stream = new ChunkStream<>(2, OVERFLOW);
+        Collector collector = new Collector();
+        stream.subscribe(collector);
+
+        stream.offer(new ResponseChunk<>(0, "a", false));
+        stream.offer(new ResponseChunk<>(1, "b", false));
+        assertNull(collector.error);
+
+        stream.offer(new ResponseChunk<>(2, "c", false));
+        assertSame(OVERFLOW, collector.error);
+        assertFalse(collector.complete);
+
+        // the rest of the stream is discarded but still counted
+        collector.subscription.request(Long.MAX_VALUE);
+        assertTrue(collector.values.isEmpty());
+        assertTrue(stream.offer(new ResponseChunk<>(3, "d", true)));
+    }
+
+    @Test
+    public void countsEarlyChunksTowardsTheBuffer(){
+        ChunkStream<String> stream = new ChunkStream<>(2, OVERFLOW);
+        Collector collector = new Collector();
+        stream.subscribe(collector);
+        collector.subscription.request(Long.MAX_VALUE);
+
+        // chunk 0 is missing, so nothing can be delivered
+        stream.offer(new ResponseChunk<>(1, "b", false));
+        stream.offer(new ResponseChunk<>(2, "c", false));
+        assertNull(collector.error);
+
+        stream.offer(new ResponseChunk<>(3, "d", false));
+        assertSame(OVERFLOW, collector.error);
+        assertTrue(collector.values.isEmpty());
+    }
+
+    @Test
+    public void allowsOnlyOneSubscriber(){
+        ChunkStream<String> stream = new ChunkStream<>(2, OVERFLOW);
+        stream.subscribe(new Collector());
+
+        Collector second = new Collector();
+        stream.subscribe(second);
+        assertTrue(second.error instanceof IllegalStateException);
+    }
+}
@@ -0,0 +1,146 @@
+package hazelcast.platform.solutions.pipeline.dispatcher.internal;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class PendingRequestRegistryTest {
+
+    private static PendingRequest<String> newRequest(long sequence){
+        return new PendingRequest<>(sequence, new CompletableFuture<>(), null, null, null, null, null, null, null,
+                null);
+    }
+
+    @Test
+    public void refusesRegistrationAtCapacityWithoutTakingASequence(){
+        PendingRequestRegistry<String> registry = new PendingRequestRegistry<>(2);
+        AtomicLong sequences = new AtomicLong();
+
+        assertNotNull(registry.register(sequences, PendingRequestRegistryTest::newRequest));
+        assertNotNull(registry.register(sequences, PendingRequestRegistryTest::newRequest));
+        assertNull(registry.register(sequences, PendingRequestRegistryTest::newRequest));
+
+        assertEquals(2, registry.getInFlightCount());
+        assertEquals(2, sequences.get());
+    }
+
+    @Test
+    public void skipsSequencesWhoseSlotIsOccupied(){
+        // a capacity of 2 gives a table of 4 slots
+        PendingRequestRegistry<String> registry = new PendingRequestRegistry<>(2);
+        AtomicLong sequences = new AtomicLong();
+        PendingRequest<String> old = registry.register(sequences, PendingRequestRegistryTest::newRequest);
+        assertEquals(0, old.getSequence());
+
+        // sequence 4 maps to the slot that sequence 0 still holds
+        sequences.set(4);
+        PendingRequest<String> next = registry.register(sequences, PendingRequestRegistryTest::newRequest);
+
+        assertEquals(5, next.getSequence());
+        assertEquals(6, sequences.get());
+        assertEquals(2, registry.getInFlightCount());
+        assertNull(registry.get(4));
+        assertSame(old, registry.get(0));
+        assertSame(next, registry.get(5));
+    }
+
+    @Test
+    public void ignoresStaleSequences(){
+        PendingRequestRegistry<String> registry = new PendingRequestRegistry<>(2);
+        AtomicLong sequences = new AtomicLong(4);
+        PendingRequest<String> request = registry.register(sequences, PendingRequestRegistryTest::newRequest);
+
+        // sequence 0 maps to the same slot as sequence 4
+        assertNull(registry.get(0));
+        assertNull(registry.remove(0));
+        assertEquals(1, registry.getInFlightCount());
+
+        assertSame(request, registry.remove(4));
+        assertNull(registry.remove(4));
+        assertEquals(0, registry.getInFlightCount());
+    }
+
+    @Test
+    public void removesInactiveRequests(){
+        PendingRequestRegistry<String> registry = new PendingRequestRegistry<>(4);
+        AtomicLong sequences = new AtomicLong();
+        registry.register(sequences, PendingRequestRegistryTest::newRequest);
+        registry.register(sequences, PendingRequestRegistryTest::newRequest);
+
+        AtomicInteger expired = new AtomicInteger();
+        registry.removeInactiveSince(System.nanoTime() + 1_000_000_000L, r -> expired.incrementAndGet());
+
+        assertEquals(2, expired.get());
+        assertEquals(0, registry.getInFlightCount());
+        assertNull(registry.remove(0));
+        assertEquals(0, registry.getInFlightCount());
+    }
+
+    @Test
+    public void removeAndSweepNeverBothTakeARequest() throws InterruptedException {
+        int count = 10_000;
+        for(int round=0; round < 20; ++round){
+            PendingRequestRegistry<String> registry = new PendingRequestRegistry<>(count);
+            AtomicLong sequences = new AtomicLong();
+            for(int i=0; i < count; ++i) registry.register(sequences, PendingRequestRegistryTest::newRequest);
+
+            AtomicInteger removed = new AtomicInteger();
+            AtomicInteger swept = new AtomicInteger();
+            CountDownLatch start = new CountDownLatch(1);
+            Thread remover = new Thread(() -> {
+                await(start);
+                for(long s=0; s < count; ++s) if (registry.remove(s) != null) removed.incrementAndGet();
+            });
+            Thread sweeper = new Thread(() -> {
+                await(start);
+                registry.removeInactiveSince(System.nanoTime() + 1_000_000_000L, r -> swept.incrementAndGet());
+            });
+            remover.start();
+            sweeper.start();
+            start.countDown();
+            remover.join();
+            sweeper.join();
+
+            assertEquals(count, removed.get() + swept.get());
+            assertEquals(0, registry.getInFlightCount());
+        }
+    }
+
+    @Test
+    public void concurrentRegistrationsRespectTheCapacity() throws InterruptedException {
+        int capacity = 100;
+        PendingRequestRegistry<String> registry = new PendingRequestRegistry<>(capacity);
+        AtomicLong sequences = new AtomicLong();
+        AtomicInteger registered = new AtomicInteger();
+        Thread []threads = new Thread[4];
+        for(int t=0; t < threads.length; ++t){
+            threads[t] = new Thread(() -> {
+                for(int i=0; i < capacity; ++i){
+                    if (registry.register(sequences, PendingRequestRegistryTest::newRequest) != null)
+                        registered.incrementAndGet();
+                }
+            });
+            threads[t].start();
+        }
+        for(Thread thread: threads) thread.join();
+
+        assertEquals(capacity, registered.get());
+        assertEquals(capacity, registry.getInFlightCount());
+    }
+
+    private static void await(CountDownLatch latch){
+        try {
+            latch.await();
+        } catch(InterruptedException x){
+            Thread.currentThread().interrupt();
+        }
+    }
+}